@@ -0,0 +1,84 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.helpers.Transform;
+
+/**
+ * Benchmark for escaping messages with and without markup, comparing
+ * {@link Transform#escapeTags(String)} with {@link HtmlEscaper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeTagsBenchmark {
+
+  @Param({ "plain", "markup" })
+  public String content;
+
+  private String message;
+
+  private IdobataLayout layout;
+
+  private StringBuilder buffer;
+
+  private ILoggingEvent event;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 32; i++) {
+      if ("markup".equals(content)) {
+        builder.append("<row id=\"").append(i).append("\">a < b && c > d</row>");
+      } else {
+        builder.append("row ").append(i).append(" has no markup at all ");
+      }
+    }
+    message = builder.toString();
+    buffer = new StringBuilder(message.length() * 2);
+
+    LoggerContext context = new LoggerContext();
+    layout = new IdobataLayout();
+    layout.setContext(context);
+    layout.start();
+    Logger logger = context.getLogger("com.example.xml.Parser");
+    event = new LoggingEvent(Logger.class.getName(), logger, Level.WARN, message, null, null);
+  }
+
+  @Benchmark
+  public String escapeTags() {
+    return Transform.escapeTags(message);
+  }
+
+  @Benchmark
+  public StringBuilder htmlEscaper() {
+    buffer.setLength(0);
+    HtmlEscaper.escape(message, buffer);
+    return buffer;
+  }
+
+  @Benchmark
+  public String doLayout() {
+    return layout.doLayout(event);
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEventVO;
+
+/**
+ * Benchmark for capturing an event before it is queued, compared with
+ * {@link ILoggingEvent#prepareForDeferredProcessing()} and serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSnapshotBenchmark {
+
+  private static final String[] MDC_KEYS = { "tenant" };
+
+  private Logger logger;
+
+  private Exception exception;
+
+  private Map<String, String> mdc;
+
+  @Setup
+  public void setUp() {
+    LoggerContext context = new LoggerContext();
+    logger = context.getLogger("com.example.billing.InvoiceService");
+    exception = new IllegalStateException("Invoice could not be sent");
+    mdc = new HashMap<String, String>();
+    for (int i = 0; i < 8; i++) {
+      mdc.put("key" + i, "value" + i);
+    }
+    mdc.put("tenant", "acme");
+  }
+
+  private LoggingEvent event() {
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR,
+        "Failed to send invoice {} to {}", exception, new Object[] { 42L, "customer@example.com" });
+    event.setMDCPropertyMap(mdc);
+    return event;
+  }
+
+  @Benchmark
+  public ILoggingEvent snapshot() {
+    return EventSnapshot.of(event(), MDC_KEYS);
+  }
+
+  @Benchmark
+  public ILoggingEvent prepareForDeferredProcessing() {
+    LoggingEvent event = event();
+    event.prepareForDeferredProcessing();
+    return event;
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(LoggingEventVO.build(event()));
+    out.close();
+    return bytes.toByteArray();
+  }
+}
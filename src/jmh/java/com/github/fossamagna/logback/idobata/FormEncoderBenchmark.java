@@ -0,0 +1,59 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Benchmark for encoding a rendered message into a request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormEncoderBenchmark {
+
+  private String message;
+
+  @Setup
+  public void setUp() {
+    LoggerContext context = new LoggerContext();
+    IdobataLayout layout = new IdobataLayout();
+    layout.setContext(context);
+    layout.start();
+    Logger logger = context.getLogger("com.example.service.OrderService");
+    message = layout.doLayout(new LoggingEvent(Logger.class.getName(), logger, Level.ERROR,
+        "Failed to process order", IdobataLayoutBenchmark.nested(8), null));
+  }
+
+  @Benchmark
+  public byte[] urlEncoder() throws UnsupportedEncodingException {
+    StringBuilder body = new StringBuilder();
+    body.append("format=html&");
+    body.append("source=").append(URLEncoder.encode(message, "UTF-8"));
+    return body.toString().getBytes("UTF-8");
+  }
+
+  @Benchmark
+  public byte[] formEncoder() {
+    return FormEncoder.encode("format=html&source=", message);
+  }
+}
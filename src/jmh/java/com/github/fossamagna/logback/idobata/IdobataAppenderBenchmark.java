@@ -0,0 +1,91 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Multi-threaded {@link IdobataAppender#doAppend(ILoggingEvent)} throughput
+ * against a local stub of the Idobata hook endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class IdobataAppenderBenchmark {
+
+  @Param({ "HttpURLConnectionTransport", "PooledHttpTransport" })
+  public String transport;
+
+  @Param({ "false", "true" })
+  public boolean async;
+
+  private StubIdobataServer server;
+
+  private IdobataAppender appender;
+
+  private ILoggingEvent event;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        // discard the body instead of recording it, the benchmark would run out of memory
+        read(exchange.getRequestBody());
+        respond(exchange, 200, "");
+      }
+    };
+    server.start();
+
+    LoggerContext context = new LoggerContext();
+    appender = new IdobataAppender();
+    appender.setContext(context);
+    appender.setName("benchmark");
+    appender.setEndpointUrl(server.getEndpointUrl());
+    appender.setTransport("PooledHttpTransport".equals(transport)
+        ? new PooledHttpTransport() : new HttpURLConnectionTransport());
+    appender.setAsync(async);
+    appender.setOverflowPolicy(OverflowPolicy.BLOCK);
+    appender.start();
+
+    Logger logger = context.getLogger("com.example.service.OrderService");
+    event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR,
+        "Failed to process order {}", null, new Object[] { 42 });
+  }
+
+  @TearDown
+  public void tearDown() {
+    appender.stop();
+    server.stop();
+  }
+
+  @Benchmark
+  public void doAppend() {
+    appender.doAppend(event);
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Benchmark for {@link IdobataLayout#doLayout(ILoggingEvent)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdobataLayoutBenchmark {
+
+  @Param({ "false", "true" })
+  public boolean stackTrace;
+
+  @Param({ "false", "true" })
+  public boolean systemProperties;
+
+  private IdobataLayout layout;
+
+  private ILoggingEvent event;
+
+  @Setup
+  public void setUp() {
+    LoggerContext context = new LoggerContext();
+    layout = new IdobataLayout();
+    layout.setContext(context);
+    layout.setOutputSystemProperties(systemProperties);
+    layout.start();
+
+    Logger logger = context.getLogger("com.example.service.OrderService");
+    Throwable throwable = stackTrace ? nested(8) : null;
+    event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR,
+        "Failed to process order {} for customer {}", throwable, new Object[] { 42, "alice" });
+  }
+
+  @Benchmark
+  public String doLayout() {
+    return layout.doLayout(event);
+  }
+
+  static Throwable nested(int depth) {
+    if (depth == 0) {
+      return new IllegalStateException("root cause");
+    }
+    return new RuntimeException("wrapped at depth " + depth, nested(depth - 1));
+  }
+}
@@ -0,0 +1,77 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for posts blocking on I/O run by virtual or platform threads.
+ *
+ * Throughput shows how many posts are kept in flight, run with {@code -prof gc}
+ * for the allocation per post. Virtual threads fall back to platform threads
+ * on runtimes without them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostExecutorBenchmark {
+
+  private static final int POSTS = 1024;
+
+  @Param({ "platform", "virtual" })
+  public String threads;
+
+  @Param({ "16", "256" })
+  public int maxInFlight;
+
+  @Param({ "1" })
+  public int latencyMillis;
+
+  private PostExecutor executor;
+
+  @Setup
+  public void setUp() {
+    executor = new PostExecutor("benchmark", maxInFlight, "virtual".equals(threads));
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown(10000);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(POSTS)
+  public void post() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(POSTS);
+    for (int i = 0; i < POSTS; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(latencyMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+  }
+}
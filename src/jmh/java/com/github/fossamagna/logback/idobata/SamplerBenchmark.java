@@ -0,0 +1,64 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Benchmark for the sampling decision of an event from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SamplerBenchmark {
+
+  private Sampler sampler;
+
+  private ILoggingEvent event;
+
+  @Setup
+  public void setUp() {
+    List<SamplingRule> rules = new ArrayList<SamplingRule>();
+    rules.add(rule(Level.INFO, 0.01, "com.example"));
+    rules.add(rule(Level.WARN, 0.1, "com.example"));
+    rules.add(rule(null, 0.001, "com.example.http"));
+    sampler = new Sampler(rules, 1024);
+    LoggerContext context = new LoggerContext();
+    event = new LoggingEvent("", context.getLogger("com.example.billing.InvoiceService"), Level.INFO,
+        "Invoice sent", null, null);
+  }
+
+  private static SamplingRule rule(Level level, double rate, String loggerPrefix) {
+    SamplingRule rule = new SamplingRule();
+    rule.setLevel(level);
+    rule.setRate(rate);
+    rule.addLoggerPrefix(loggerPrefix);
+    return rule;
+  }
+
+  @Benchmark
+  public boolean sample() {
+    return sampler.sample(event);
+  }
+}
@@ -0,0 +1,113 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Benchmark for posting a rendered event through each {@link Transport} to
+ * {@link StubHttp2Server}.
+ *
+ * The body is an error event with its stack trace and system properties, as
+ * posted by {@link IdobataAppender}. Throughput is measured with concurrent
+ * posters, and the bytes the server read per post, headers and framing included,
+ * are printed after each iteration. The HTTP/2 transports need Java 11 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class TransportBenchmark {
+
+  @Param({ "httpUrlConnection", "pooled", "http2", "http2Gzip" })
+  public String transport;
+
+  @Param({ "1" })
+  public int latencyMillis;
+
+  private StubHttp2Server server;
+
+  private TransportBase target;
+
+  private URL url;
+
+  private byte[] content;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = new StubHttp2Server();
+    server.setLatencyMillis(latencyMillis);
+    server.start();
+    url = server.getEndpointUrl();
+
+    LoggerContext context = new LoggerContext();
+    IdobataLayout layout = new IdobataLayout();
+    layout.setContext(context);
+    layout.setOutputSystemProperties(true);
+    layout.start();
+    Logger logger = context.getLogger("com.example.service.OrderService");
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, ch.qos.logback.classic.Level.ERROR,
+        "Failed to process order {} for customer {}", IdobataLayoutBenchmark.nested(8), new Object[] { 42, "alice" });
+    content = FormEncoder.encode("format=html&source=", layout.doLayout(event));
+
+    if ("pooled".equals(transport)) {
+      target = new PooledHttpTransport();
+    } else if (transport.startsWith("http2")) {
+      Http2Transport http2 = new Http2Transport();
+      if ("http2Gzip".equals(transport)) {
+        http2.setCompressionThreshold(1024);
+      }
+      target = http2;
+    } else {
+      target = new HttpURLConnectionTransport();
+    }
+    target.setContext(context);
+    target.start();
+    if (!target.isStarted()) {
+      throw new IllegalStateException(transport + " transport is not supported on this runtime");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    target.stop();
+    server.stop();
+  }
+
+  @TearDown(Level.Iteration)
+  public void reportBytes() {
+    final long received = server.getBytesReceived();
+    final int requests = server.getBodies().size();
+    System.out.println();
+    System.out.println(transport + ": " + content.length + " body bytes, "
+        + (requests > 0 ? received / requests : 0) + " bytes on the wire per post, "
+        + server.getConnectionCount() + " connections");
+  }
+
+  @Benchmark
+  public int post() throws IOException {
+    return target.post(url, content).getStatus();
+  }
+}
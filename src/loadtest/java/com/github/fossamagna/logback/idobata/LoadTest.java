@@ -0,0 +1,211 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.util.PropertySetter;
+import ch.qos.logback.core.joran.util.beans.BeanDescriptionCache;
+import ch.qos.logback.core.status.Status;
+
+/**
+ * End-to-end load test of {@link IdobataAppender} against {@link LoadTestServer}.
+ *
+ * Options are given as {@code name=value} arguments:
+ * <ul>
+ * <li>{@code threads}, {@code events} per thread and {@code rate} per thread and second, {@code 0} for no limit</li>
+ * <li>{@code latencyMillis}, {@code jitterMillis}, {@code errorRate}, {@code throttleRate} and
+ * {@code retryAfterSeconds} of the server</li>
+ * <li>{@code appender.<property>} any property of the appender, as in a logback configuration,
+ * for example {@code appender.async=true} or {@code appender.shutdownTimeout=30seconds}</li>
+ * </ul>
+ * The appender is stopped after the last event so that the pending messages are
+ * flushed, then the caller-thread latency percentiles, delivered and dropped
+ * counts, and heap and GC usage are reported.
+ * @author fossamagna
+ */
+public class LoadTest {
+
+  private static final String APPENDER_PREFIX = "appender.";
+
+  private final Map<String, String> options;
+
+  LoadTest(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<String, String>();
+    for (String arg : args) {
+      final int equals = arg.indexOf('=');
+      if (equals <= 0) {
+        System.err.println("Invalid option [" + arg + "], expected name=value");
+        System.exit(2);
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    new LoadTest(options).run();
+  }
+
+  void run() throws Exception {
+    final int threads = intOption("threads", 8);
+    final int events = intOption("events", 10000);
+    final int rate = intOption("rate", 0);
+
+    LoadTestServer server = new LoadTestServer();
+    server.setLatencyMillis(intOption("latencyMillis", 50));
+    server.setJitterMillis(intOption("jitterMillis", 0));
+    server.setErrorRate(doubleOption("errorRate", 0));
+    server.setThrottleRate(doubleOption("throttleRate", 0));
+    server.setRetryAfterSeconds(intOption("retryAfterSeconds", 1));
+    server.start();
+
+    LoggerContext context = new LoggerContext();
+    IdobataAppender appender = new IdobataAppender();
+    appender.setContext(context);
+    appender.setName("Idobata");
+    appender.setEndpointUrl(server.getEndpointUrl());
+    PropertySetter setter = new PropertySetter(new BeanDescriptionCache(context), appender);
+    setter.setContext(context);
+    for (Map.Entry<String, String> option : options.entrySet()) {
+      if (option.getKey().startsWith(APPENDER_PREFIX)) {
+        setter.setProperty(option.getKey().substring(APPENDER_PREFIX.length()), option.getValue());
+      }
+    }
+    appender.start();
+    if (!appender.isStarted()) {
+      printErrors(context);
+      server.stop();
+      System.exit(1);
+    }
+    Logger logger = context.getLogger("com.example.OrderService");
+    logger.setLevel(Level.INFO);
+    logger.addAppender(appender);
+
+    System.gc();
+    final GcUsage gcBefore = GcUsage.now();
+    resetPeakUsage();
+    final long start = System.nanoTime();
+    final long[] latencies = new LogGenerator(logger, threads, events, rate).run();
+    final long logged = System.nanoTime() - start;
+    appender.stop();
+    final long drained = System.nanoTime() - start - logged;
+    final GcUsage gc = GcUsage.now().minus(gcBefore);
+    server.stop();
+
+    final IdobataMetrics metrics = appender.getMetrics();
+    final long generated = (long) threads * events;
+    System.out.println("Load test: " + options);
+    System.out.printf(Locale.ENGLISH, "Generated      %,d events from %d threads in %,d ms (%,.0f events/s), drained in %,d ms%n",
+        generated, threads, millis(logged), generated * 1e9 / Math.max(1, logged), millis(drained));
+    System.out.printf(Locale.ENGLISH, "Caller latency p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+        micros(percentile(latencies, 0.5)), micros(percentile(latencies, 0.9)), micros(percentile(latencies, 0.99)),
+        micros(percentile(latencies, 0.999)), micros(latencies.length > 0 ? latencies[latencies.length - 1] : 0));
+    System.out.printf(Locale.ENGLISH, "Delivered      %,d events (%.2f%%) in %,d posts, %,d not delivered%n",
+        server.getDeliveredEvents(), 100.0 * server.getDeliveredEvents() / Math.max(1, generated),
+        server.getAcceptedCount(), generated - server.getDeliveredEvents());
+    System.out.printf(Locale.ENGLISH, "Dropped        %,d events: queue full %,d, rate limited %,d, circuit open %,d,"
+        + " spool full %,d, sampled %,d, lost at stop %,d%n", metrics.getDroppedCount(), metrics.getQueueFullCount(),
+        metrics.getRateLimitedCount(), metrics.getCircuitOpenDroppedCount(), metrics.getSpoolFullCount(),
+        metrics.getSampledCount(), appender.getLostCount());
+    System.out.printf(Locale.ENGLISH, "Responses      %,d accepted, %,d throttled (429), %,d failed (500), %,d failed posts%n",
+        server.getAcceptedCount(), server.getThrottledCount(), server.getFailedCount(), metrics.getFailedCount());
+    System.out.printf(Locale.ENGLISH, "Heap           peak %,d KB, used after %,d KB%n", peakHeapUsage() / 1024,
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024);
+    System.out.printf(Locale.ENGLISH, "GC             %,d collections, %,d ms%n", gc.count, gc.millis);
+  }
+
+  private int intOption(String name, int defaultValue) {
+    final String value = options.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  private double doubleOption(String name, double defaultValue) {
+    final String value = options.get(name);
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+
+  private static void printErrors(LoggerContext context) {
+    for (Status status : context.getStatusManager().getCopyOfStatusList()) {
+      if (status.getLevel() >= Status.WARN) {
+        System.err.println(status);
+      }
+    }
+  }
+
+  /**
+   * @param latencies sorted latencies
+   */
+  static long percentile(long[] latencies, double quantile) {
+    if (latencies.length == 0) {
+      return 0;
+    }
+    final int rank = (int) Math.ceil(quantile * latencies.length);
+    return latencies[Math.max(0, rank - 1)];
+  }
+
+  private static long millis(long nanos) {
+    return nanos / 1000000;
+  }
+
+  private static String micros(long nanos) {
+    return String.format(Locale.ENGLISH, "%,.1f us", nanos / 1e3);
+  }
+
+  private static void resetPeakUsage() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * @return the sum of the peaks of the heap pools, an upper bound of the peak heap usage
+   */
+  private static long peakHeapUsage() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /**
+   * Collections and time spent in GC.
+   */
+  private static final class GcUsage {
+
+    final long count;
+
+    final long millis;
+
+    GcUsage(long count, long millis) {
+      this.count = count;
+      this.millis = millis;
+    }
+
+    static GcUsage now() {
+      long count = 0;
+      long millis = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        count += Math.max(0, collector.getCollectionCount());
+        millis += Math.max(0, collector.getCollectionTime());
+      }
+      return new GcUsage(count, millis);
+    }
+
+    GcUsage minus(GcUsage other) {
+      return new GcUsage(count - other.count, millis - other.millis);
+    }
+  }
+}
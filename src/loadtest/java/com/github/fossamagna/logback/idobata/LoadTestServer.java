@@ -0,0 +1,119 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Stub webhook endpoint misbehaving like a production one under load.
+ *
+ * Each request is answered after {@code latencyMillis} plus a random jitter.
+ * A share {@code errorRate} of the requests fails with 500, and a share
+ * {@code throttleRate} with 429 and a {@code Retry-After} header. Bodies are not
+ * kept: the events of accepted requests are counted by the tag the generator
+ * puts in each message.
+ */
+class LoadTestServer extends StubIdobataServer {
+
+  private final Random random = new Random();
+
+  private final AtomicLong accepted = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  private final AtomicLong throttled = new AtomicLong();
+
+  private final AtomicLong deliveredEvents = new AtomicLong();
+
+  private volatile long latencyMillis;
+
+  private volatile long jitterMillis;
+
+  private volatile double errorRate;
+
+  private volatile double throttleRate;
+
+  private volatile int retryAfterSeconds = 1;
+
+  @Override
+  void handle(HttpExchange exchange) throws IOException {
+    final String body = read(exchange.getRequestBody());
+    final double outcome;
+    final long delay;
+    synchronized (random) {
+      outcome = random.nextDouble();
+      delay = latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0);
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (outcome < errorRate) {
+      failed.incrementAndGet();
+      respond(exchange, 500, "Internal Server Error");
+    } else if (outcome < errorRate + throttleRate) {
+      throttled.incrementAndGet();
+      exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+      respond(exchange, 429, "Too Many Requests");
+    } else {
+      accepted.incrementAndGet();
+      deliveredEvents.addAndGet(count(body, LogGenerator.TAG));
+      respond(exchange, 200, "");
+    }
+  }
+
+  private static int count(String text, String tag) {
+    int count = 0;
+    int i = text.indexOf(tag);
+    while (i >= 0) {
+      count++;
+      i = text.indexOf(tag, i + tag.length());
+    }
+    return count;
+  }
+
+  long getAcceptedCount() {
+    return accepted.get();
+  }
+
+  long getFailedCount() {
+    return failed.get();
+  }
+
+  long getThrottledCount() {
+    return throttled.get();
+  }
+
+  /**
+   * @return the number of generated events in the accepted requests
+   */
+  long getDeliveredEvents() {
+    return deliveredEvents.get();
+  }
+
+  void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  void setJitterMillis(long jitterMillis) {
+    this.jitterMillis = jitterMillis;
+  }
+
+  void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  void setThrottleRate(double throttleRate) {
+    this.throttleRate = throttleRate;
+  }
+
+  void setRetryAfterSeconds(int retryAfterSeconds) {
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+}
@@ -0,0 +1,114 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Logs events from several threads at once and records how long each logging call blocks.
+ *
+ * Most events are INFO, one in ten is WARN and one in a hundred an ERROR with a
+ * stack trace. Every message carries {@link #TAG} so that the server can count
+ * the events it received, whether posted alone or batched.
+ */
+class LogGenerator {
+
+  static final String TAG = "loadevent";
+
+  private final Logger logger;
+
+  private final int threads;
+
+  private final int eventsPerThread;
+
+  private final int ratePerThread;
+
+  /**
+   * @param ratePerThread events per second and thread, or {@code 0} to log as fast as possible
+   */
+  LogGenerator(Logger logger, int threads, int eventsPerThread, int ratePerThread) {
+    this.logger = logger;
+    this.threads = threads;
+    this.eventsPerThread = eventsPerThread;
+    this.ratePerThread = ratePerThread;
+  }
+
+  /**
+   * @return the duration of every logging call in nanoseconds, sorted
+   */
+  long[] run() throws InterruptedException {
+    final long[][] latencies = new long[threads][];
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int index = t;
+      workers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          latencies[index] = log(index);
+        }
+      }, "load-generator-" + t);
+      workers[t].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long[] merged = new long[threads * eventsPerThread];
+    int length = 0;
+    for (long[] latency : latencies) {
+      if (latency != null) {
+        System.arraycopy(latency, 0, merged, length, latency.length);
+        length += latency.length;
+      }
+    }
+    merged = Arrays.copyOf(merged, length);
+    Arrays.sort(merged);
+    return merged;
+  }
+
+  private long[] log(int thread) {
+    final long[] latencies = new long[eventsPerThread];
+    final long interval = ratePerThread > 0 ? 1000000000L / ratePerThread : 0;
+    final long begin = System.nanoTime();
+    MDC.put("tenant", "tenant-" + thread % 4);
+    try {
+      for (int i = 0; i < eventsPerThread; i++) {
+        if (interval > 0) {
+          final long wait = begin + i * interval - System.nanoTime();
+          if (wait > 0) {
+            sleep(wait);
+          }
+        }
+        final long start = System.nanoTime();
+        if (i % 100 == 99) {
+          logger.error(TAG + " order {} of thread {} failed", i, thread, new IllegalStateException("payment declined"));
+        } else if (i % 10 == 9) {
+          logger.warn(TAG + " order {} of thread {} is slow", i, thread);
+        } else {
+          logger.info(TAG + " order {} of thread {} processed", i, thread);
+        }
+        latencies[i] = System.nanoTime() - start;
+      }
+    } finally {
+      MDC.remove("tenant");
+    }
+    return latencies;
+  }
+
+  private static void sleep(long nanos) {
+    try {
+      Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
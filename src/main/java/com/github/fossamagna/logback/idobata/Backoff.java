@@ -0,0 +1,42 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Random;
+
+/**
+ * Capped exponential backoff with jitter.
+ *
+ * The delay doubles with each failed attempt up to the maximum, and a random
+ * value between half and all of it is used so that retries are spread out.
+ * @author fossamagna
+ */
+final class Backoff {
+
+  private final long initialMillis;
+
+  private final long maxMillis;
+
+  Backoff(long initialMillis, long maxMillis) {
+    this.initialMillis = Math.max(1, initialMillis);
+    this.maxMillis = Math.max(this.initialMillis, maxMillis);
+  }
+
+  /**
+   * @param attempts number of failed attempts, at least one
+   * @param random source of jitter
+   * @return delay in milliseconds before the next attempt
+   */
+  long delay(int attempts, Random random) {
+    final long cap = cap(attempts);
+    final long half = cap / 2;
+    return half + (long) (random.nextDouble() * (cap - half + 1));
+  }
+
+  long cap(int attempts) {
+    final int shift = Math.min(Math.max(attempts - 1, 0), 62);
+    final long delay = initialMillis << shift;
+    if (delay <= 0 || delay >> shift != initialMillis || delay > maxMillis) {
+      return maxMillis;
+    }
+    return delay;
+  }
+}
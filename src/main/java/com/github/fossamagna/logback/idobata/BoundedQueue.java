@@ -0,0 +1,119 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded multi-producer multi-consumer queue.
+ *
+ * Elements are held in a lock-free {@link ConcurrentLinkedQueue}, capacity and
+ * availability are tracked by two semaphores so that the uncontended path
+ * never takes a lock.
+ * @author fossamagna
+ */
+final class BoundedQueue<E> {
+
+  private final Queue<E> elements = new ConcurrentLinkedQueue<E>();
+
+  private final Semaphore space;
+
+  private final Semaphore available = new Semaphore(0);
+
+  private final int capacity;
+
+  BoundedQueue(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+    this.space = new Semaphore(capacity);
+  }
+
+  /**
+   * Inserts the element if space is immediately available.
+   * @return {@code true} if the element was added
+   */
+  boolean offer(E e) {
+    if (!space.tryAcquire()) {
+      return false;
+    }
+    enqueue(e);
+    return true;
+  }
+
+  /**
+   * Inserts the element, waiting up to the given time for space.
+   * @return {@code true} if the element was added
+   */
+  boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    if (!space.tryAcquire(timeout, unit)) {
+      return false;
+    }
+    enqueue(e);
+    return true;
+  }
+
+  /**
+   * Inserts the element, discarding the oldest element if the queue is full.
+   * @return the discarded element, or {@code null} if nothing was discarded
+   */
+  E offerEvictingOldest(E e) {
+    while (!space.tryAcquire()) {
+      if (available.tryAcquire()) {
+        E oldest = elements.poll();
+        // the slot of the discarded element is handed over to the new one
+        enqueue(e);
+        return oldest;
+      }
+    }
+    enqueue(e);
+    return null;
+  }
+
+  /**
+   * Retrieves and removes the head, waiting up to the given time for an element.
+   * @return the head of this queue, or {@code null} if the time elapsed
+   */
+  E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    if (!available.tryAcquire(timeout, unit)) {
+      return null;
+    }
+    return dequeue();
+  }
+
+  /**
+   * Retrieves and removes the head if an element is immediately available.
+   * @return the head of this queue, or {@code null} if this queue is empty
+   */
+  E poll() {
+    if (!available.tryAcquire()) {
+      return null;
+    }
+    return dequeue();
+  }
+
+  int size() {
+    return available.availablePermits();
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  private void enqueue(E e) {
+    elements.offer(e);
+    available.release();
+  }
+
+  private E dequeue() {
+    E e = elements.poll();
+    space.release();
+    return e;
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Thread-safe formatter of timestamps backed by a {@link DateFormat}.
+ *
+ * Each thread formats with its own clone of the prototype and remembers the
+ * last formatted millisecond, so events logged within the same millisecond
+ * reuse the text without touching the formatter.
+ * @author fossamagna
+ */
+final class CachingDateFormat {
+
+  private final DateFormat prototype;
+
+  private final ThreadLocal<Cache> caches = new ThreadLocal<Cache>() {
+    @Override
+    protected Cache initialValue() {
+      return new Cache((DateFormat) prototype.clone());
+    }
+  };
+
+  CachingDateFormat(DateFormat prototype) {
+    this.prototype = (DateFormat) prototype.clone();
+  }
+
+  String format(long timestamp) {
+    return caches.get().format(timestamp);
+  }
+
+  private static final class Cache {
+
+    private final DateFormat dateFormat;
+
+    private final Date date = new Date(0);
+
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private String lastText;
+
+    Cache(DateFormat dateFormat) {
+      this.dateFormat = dateFormat;
+    }
+
+    String format(long timestamp) {
+      if (timestamp != lastTimestamp || lastText == null) {
+        date.setTime(timestamp);
+        lastText = dateFormat.format(date);
+        lastTimestamp = timestamp;
+      }
+      return lastText;
+    }
+  }
+}
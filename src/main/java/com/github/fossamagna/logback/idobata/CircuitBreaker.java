@@ -0,0 +1,148 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops requests to an endpoint after consecutive failures.
+ *
+ * After {@code threshold} consecutive failures the circuit opens and refuses
+ * requests for the open time. Then a single trial request is let through,
+ * which closes the circuit on success or opens it again on failure.
+ *
+ * Each request allowed gets a ticket to report its result with. Results of
+ * requests started before the circuit last opened or closed are ignored, so a
+ * late answer cannot end the trial of another request, and a trial that ends
+ * without a result is released for the next request.
+ * @author fossamagna
+ */
+final class CircuitBreaker {
+
+  private final int threshold;
+
+  private final long openMillis;
+
+  private final AtomicInteger failures = new AtomicInteger();
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  /** last ticket issued before the circuit last opened or closed */
+  private volatile long since;
+
+  /** time until which the circuit is open, {@code 0} while closed */
+  private volatile long openUntil;
+
+  /** ticket of the trial request in progress, {@code 0} if none */
+  private volatile long trial;
+
+  CircuitBreaker(int threshold, long openMillis) {
+    this.threshold = threshold;
+    this.openMillis = openMillis;
+  }
+
+  /**
+   * @return the ticket of a request that may be sent now, or {@code 0} if none may be
+   */
+  long tryAcquire(long now) {
+    if (openUntil == 0) {
+      return sequence.incrementAndGet();
+    }
+    synchronized (this) {
+      final long until = openUntil;
+      if (until == 0) {
+        return sequence.incrementAndGet();
+      }
+      if (now < until || trial != 0) {
+        return 0;
+      }
+      trial = sequence.incrementAndGet();
+      return trial;
+    }
+  }
+
+  /**
+   * Records a successful request.
+   * @return {@code true} if this success closed the circuit
+   */
+  boolean onSuccess(long ticket) {
+    if (ticket <= since) {
+      return false;
+    }
+    if (openUntil == 0) {
+      failures.set(0);
+      return false;
+    }
+    synchronized (this) {
+      if (ticket != trial) {
+        return false;
+      }
+      trial = 0;
+      failures.set(0);
+      since = sequence.get();
+      openUntil = 0;
+      return true;
+    }
+  }
+
+  /**
+   * Records a failed request.
+   * @return {@code true} if this failure opened the circuit
+   */
+  boolean onFailure(long ticket, long now) {
+    if (ticket <= since) {
+      return false;
+    }
+    if (openUntil == 0) {
+      if (failures.incrementAndGet() < threshold) {
+        return false;
+      }
+      synchronized (this) {
+        if (openUntil != 0 || ticket <= since) {
+          return false;
+        }
+        open(now);
+        return true;
+      }
+    }
+    synchronized (this) {
+      if (ticket != trial) {
+        // answered after the circuit opened, no trial of its own
+        return false;
+      }
+      trial = 0;
+      open(now);
+      return false;
+    }
+  }
+
+  /**
+   * Ends the request without a result if none was recorded, letting the next one be the trial.
+   */
+  void release(long ticket) {
+    if (ticket == trial) {
+      synchronized (this) {
+        if (ticket == trial) {
+          trial = 0;
+        }
+      }
+    }
+  }
+
+  private void open(long now) {
+    failures.set(0);
+    since = sequence.get();
+    openUntil = now + openMillis;
+  }
+
+  /**
+   * @return milliseconds until a trial request is allowed, {@code 0} if the circuit is closed
+   */
+  long remainingOpenMillis(long now) {
+    final long until = openUntil;
+    return until == 0 ? 0 : Math.max(0, until - now);
+  }
+
+  boolean isOpen() {
+    return openUntil != 0;
+  }
+}
@@ -0,0 +1,239 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Renders the selected MDC entries and the markers of an event as badges or a table.
+ *
+ * Nothing is rendered, nor allocated, for an event without any of them. The
+ * fragment of each entry and marker is escaped once, along with its encoded
+ * length, and kept in an LRU cache, since tenants, services and markers repeat
+ * from one event to the next.
+ * @author fossamagna
+ */
+final class ContextRenderer {
+
+  private static final String TABLE_OPEN = "<table><tbody>";
+
+  private static final String TABLE_CLOSE = "</tbody></table>";
+
+  private static final int TABLE_LENGTH = FormEncoder.encodedLength(TABLE_OPEN + TABLE_CLOSE);
+
+  private static final String MARKER = "marker";
+
+  /**
+   * Markers referencing each other are not followed past this depth.
+   */
+  private static final int MAX_MARKER_DEPTH = 8;
+
+  private final String[] mdcKeys;
+
+  private final boolean markers;
+
+  private final ContextStyle style;
+
+  private final Map<Fragment, FragmentCache.Fragment> cache;
+
+  /**
+   * @param mdcKeys keys of the MDC entries to render, in this order
+   * @param markers whether to render the markers after the MDC entries
+   * @param style how the entries are rendered
+   * @param cacheSize maximum number of cached fragments, or {@code 0} to disable the cache
+   */
+  ContextRenderer(List<String> mdcKeys, boolean markers, ContextStyle style, final int cacheSize) {
+    this.mdcKeys = mdcKeys.toArray(new String[mdcKeys.size()]);
+    this.markers = markers;
+    this.style = style;
+    this.cache = cacheSize > 0 ? new LinkedHashMap<Fragment, FragmentCache.Fragment>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Fragment, FragmentCache.Fragment> eldest) {
+        return size() > cacheSize;
+      }
+    } : null;
+  }
+
+  /**
+   * @return {@code true} if nothing is ever rendered
+   */
+  boolean isEmpty() {
+    return mdcKeys.length == 0 && !markers;
+  }
+
+  void append(ILoggingEvent event, StringBuilder buffer) {
+    append(event, buffer, Long.MAX_VALUE);
+  }
+
+  /**
+   * Appends the entries and markers that fit in {@code remaining} bytes, in order.
+   * An entry is never cut, and the table is omitted when no entry fits.
+   * @return the encoded length appended
+   */
+  long append(ILoggingEvent event, StringBuilder buffer, long remaining) {
+    final List<FragmentCache.Fragment> fragments = collect(event);
+    if (fragments == null) {
+      return 0;
+    }
+    long length = style == ContextStyle.TABLE ? TABLE_LENGTH : 0;
+    int count = 0;
+    for (FragmentCache.Fragment fragment : fragments) {
+      final long separator = count > 0 && style == ContextStyle.BADGES ? 1 : 0;
+      if (length + separator + fragment.encodedLength > remaining) {
+        break;
+      }
+      length += separator + fragment.encodedLength;
+      count++;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    if (style == ContextStyle.TABLE) {
+      buffer.append(TABLE_OPEN);
+    }
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && style == ContextStyle.BADGES) {
+        buffer.append(' ');
+      }
+      buffer.append(fragments.get(i).html);
+    }
+    if (style == ContextStyle.TABLE) {
+      buffer.append(TABLE_CLOSE);
+    }
+    return length;
+  }
+
+  /**
+   * @return the fragments of the event in order, or {@code null} if it has none
+   */
+  private List<FragmentCache.Fragment> collect(ILoggingEvent event) {
+    List<FragmentCache.Fragment> fragments = null;
+    if (mdcKeys.length > 0) {
+      final Map<String, String> mdc = event.getMDCPropertyMap();
+      if (mdc != null && !mdc.isEmpty()) {
+        for (String key : mdcKeys) {
+          final String value = mdc.get(key);
+          if (value != null) {
+            fragments = add(fragments, fragment(false, key, value));
+          }
+        }
+      }
+    }
+    if (markers && event.getMarker() != null) {
+      fragments = addMarker(fragments, event.getMarker(), 0);
+    }
+    return fragments;
+  }
+
+  private List<FragmentCache.Fragment> addMarker(List<FragmentCache.Fragment> fragments, Marker marker, int depth) {
+    fragments = add(fragments, fragment(true, MARKER, marker.getName()));
+    if (depth < MAX_MARKER_DEPTH && marker.hasReferences()) {
+      final Iterator<Marker> references = marker.iterator();
+      while (references.hasNext()) {
+        fragments = addMarker(fragments, references.next(), depth + 1);
+      }
+    }
+    return fragments;
+  }
+
+  private static List<FragmentCache.Fragment> add(List<FragmentCache.Fragment> fragments,
+      FragmentCache.Fragment fragment) {
+    if (fragments == null) {
+      fragments = new ArrayList<FragmentCache.Fragment>(4);
+    }
+    fragments.add(fragment);
+    return fragments;
+  }
+
+  private FragmentCache.Fragment fragment(boolean marker, String name, String value) {
+    if (cache == null) {
+      return new FragmentCache.Fragment(render(marker, name, value));
+    }
+    final Fragment key = new Fragment(marker, name, value);
+    FragmentCache.Fragment rendered;
+    synchronized (cache) {
+      rendered = cache.get(key);
+    }
+    if (rendered == null) {
+      rendered = new FragmentCache.Fragment(render(marker, name, value));
+      synchronized (cache) {
+        cache.put(key, rendered);
+      }
+    }
+    return rendered;
+  }
+
+  private String render(boolean marker, String name, String value) {
+    StringBuilder buffer = new StringBuilder(32 + name.length() + value.length());
+    if (style == ContextStyle.TABLE) {
+      buffer.append("<tr><th>");
+      HtmlEscaper.escape(name, buffer);
+      buffer.append("</th><td>");
+      HtmlEscaper.escape(value, buffer);
+      buffer.append("</td></tr>");
+    } else if (marker) {
+      buffer.append("<span class=\"label\" style=\"background-color: steelblue; color: white;\">");
+      HtmlEscaper.escape(value, buffer);
+      buffer.append("</span>");
+    } else {
+      buffer.append("<span class=\"label\" style=\"background-color: lightgrey; color: black;\">");
+      HtmlEscaper.escape(name, buffer);
+      buffer.append(": ");
+      HtmlEscaper.escape(value, buffer);
+      buffer.append("</span>");
+    }
+    return buffer.toString();
+  }
+
+  int cacheSize() {
+    if (cache == null) {
+      return 0;
+    }
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Key of a cached fragment.
+   */
+  private static final class Fragment {
+
+    private final boolean marker;
+
+    private final String name;
+
+    private final String value;
+
+    Fragment(boolean marker, String name, String value) {
+      this.marker = marker;
+      this.name = name;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Fragment)) {
+        return false;
+      }
+      Fragment other = (Fragment) obj;
+      return marker == other.marker && name.equals(other.name) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * name.hashCode() + value.hashCode()) * 2 + (marker ? 1 : 0);
+    }
+  }
+}
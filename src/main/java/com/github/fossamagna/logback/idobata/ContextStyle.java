@@ -0,0 +1,18 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * How {@link IdobataLayout} renders the selected MDC entries and the markers of an event.
+ * @author fossamagna
+ */
+public enum ContextStyle {
+
+  /**
+   * Each entry and marker is a label, like the level of the event.
+   */
+  BADGES,
+
+  /**
+   * Each entry and marker is a row of a two column table.
+   */
+  TABLE
+}
@@ -0,0 +1,20 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * How {@link IdobataAppender} captures an event before it is rendered on a sender thread.
+ * @author fossamagna
+ */
+public enum DeferredProcessingPolicy {
+
+  /**
+   * The event is kept and {@link ch.qos.logback.classic.spi.ILoggingEvent#prepareForDeferredProcessing()}
+   * captures its message, thread name and the whole MDC.
+   */
+  FULL,
+
+  /**
+   * The event is replaced by an immutable snapshot of the timestamp, level, thread name,
+   * logger name, message, throwable, marker and the selected MDC entries.
+   */
+  SNAPSHOT
+}
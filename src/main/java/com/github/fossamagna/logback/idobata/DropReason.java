@@ -0,0 +1,33 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Reason why {@link IdobataAppender} discarded an event or a message.
+ * @author fossamagna
+ */
+public enum DropReason {
+
+  /**
+   * The asynchronous queue was full.
+   */
+  QUEUE_FULL,
+
+  /**
+   * The event exceeded the rate limit.
+   */
+  RATE_LIMITED,
+
+  /**
+   * The message was posted while the circuit breaker was open.
+   */
+  CIRCUIT_OPEN,
+
+  /**
+   * The spool reached its maximum size.
+   */
+  SPOOL_FULL,
+
+  /**
+   * The event was sampled out by a {@link SamplingRule}.
+   */
+  SAMPLED
+}
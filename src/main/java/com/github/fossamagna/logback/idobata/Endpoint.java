@@ -0,0 +1,47 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Destination of posts with its own circuit breaker and rate limiter and, for
+ * routes, its own queue of rendered messages.
+ * @author fossamagna
+ */
+final class Endpoint {
+
+  final Route route;
+
+  final URL url;
+
+  final CircuitBreaker circuitBreaker;
+
+  final TokenBucket rateLimiter;
+
+  final BoundedQueue<String> queue;
+
+  final AtomicLong droppedCount = new AtomicLong();
+
+  Thread[] senders;
+
+  PostExecutor executor;
+
+  volatile boolean draining;
+
+  Endpoint(URL url, CircuitBreaker circuitBreaker, TokenBucket rateLimiter) {
+    this(null, url, circuitBreaker, rateLimiter, null);
+  }
+
+  Endpoint(Route route, CircuitBreaker circuitBreaker, TokenBucket rateLimiter) {
+    this(route, route.getEndpointUrl(), circuitBreaker, rateLimiter, new BoundedQueue<String>(route.getQueueSize()));
+  }
+
+  private Endpoint(Route route, URL url, CircuitBreaker circuitBreaker, TokenBucket rateLimiter,
+      BoundedQueue<String> queue) {
+    this.route = route;
+    this.url = url;
+    this.circuitBreaker = circuitBreaker;
+    this.rateLimiter = rateLimiter;
+    this.queue = queue;
+  }
+}
@@ -0,0 +1,202 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Marker;
+import org.slf4j.helpers.MessageFormatter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.CallerData;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+
+/**
+ * Immutable copy of the parts of an event used by the layouts, taken on the logging thread.
+ *
+ * Only the selected MDC entries are copied. The message is formatted lazily when
+ * all of its arguments are immutable, and eagerly otherwise, since a mutable
+ * argument may have changed by the time the event is rendered.
+ * @author fossamagna
+ */
+final class EventSnapshot implements ILoggingEvent {
+
+  private final long timeStamp;
+
+  private final Level level;
+
+  private final String threadName;
+
+  private final String loggerName;
+
+  private final String message;
+
+  private final Object[] argumentArray;
+
+  private volatile String formattedMessage;
+
+  private final IThrowableProxy throwableProxy;
+
+  private final Marker marker;
+
+  private final StackTraceElement[] callerData;
+
+  private final LoggerContextVO loggerContextVO;
+
+  private final Map<String, String> mdc;
+
+  private EventSnapshot(ILoggingEvent event, String[] mdcKeys) {
+    this.timeStamp = event.getTimeStamp();
+    this.level = event.getLevel();
+    this.threadName = event.getThreadName();
+    this.loggerName = event.getLoggerName();
+    this.message = event.getMessage();
+    final Object[] arguments = event.getArgumentArray();
+    if (arguments == null || arguments.length == 0) {
+      this.argumentArray = null;
+      this.formattedMessage = message;
+    } else if (isImmutable(arguments)) {
+      this.argumentArray = arguments.clone();
+    } else {
+      this.argumentArray = null;
+      this.formattedMessage = event.getFormattedMessage();
+    }
+    this.throwableProxy = event.getThrowableProxy();
+    this.marker = event.getMarker();
+    this.callerData = event.hasCallerData() ? event.getCallerData() : CallerData.EMPTY_CALLER_DATA_ARRAY;
+    this.loggerContextVO = event.getLoggerContextVO();
+    this.mdc = select(event.getMDCPropertyMap(), mdcKeys);
+  }
+
+  /**
+   * @param mdcKeys keys of the MDC entries to copy
+   * @return the snapshot of the event
+   */
+  static ILoggingEvent of(ILoggingEvent event, String[] mdcKeys) {
+    if (event instanceof EventSnapshot) {
+      return event;
+    }
+    return new EventSnapshot(event, mdcKeys);
+  }
+
+  private static Map<String, String> select(Map<String, String> mdc, String[] keys) {
+    if (mdc == null || mdc.isEmpty() || keys.length == 0) {
+      return Collections.emptyMap();
+    }
+    if (keys.length == 1) {
+      final String value = mdc.get(keys[0]);
+      return value != null ? Collections.singletonMap(keys[0], value) : Collections.<String, String> emptyMap();
+    }
+    Map<String, String> selected = new HashMap<String, String>(keys.length * 2);
+    for (String key : keys) {
+      final String value = mdc.get(key);
+      if (value != null) {
+        selected.put(key, value);
+      }
+    }
+    return Collections.unmodifiableMap(selected);
+  }
+
+  private static boolean isImmutable(Object[] arguments) {
+    for (Object argument : arguments) {
+      if (argument != null && !(argument instanceof String || argument instanceof Integer
+          || argument instanceof Long || argument instanceof Boolean || argument instanceof Character
+          || argument instanceof Double || argument instanceof Float || argument instanceof Short
+          || argument instanceof Byte || argument instanceof BigInteger || argument instanceof BigDecimal
+          || argument instanceof Enum<?>)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String getThreadName() {
+    return threadName;
+  }
+
+  @Override
+  public Level getLevel() {
+    return level;
+  }
+
+  @Override
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public Object[] getArgumentArray() {
+    return argumentArray;
+  }
+
+  @Override
+  public String getFormattedMessage() {
+    String formatted = formattedMessage;
+    if (formatted == null) {
+      formatted = MessageFormatter.arrayFormat(message, argumentArray).getMessage();
+      formattedMessage = formatted;
+    }
+    return formatted;
+  }
+
+  @Override
+  public String getLoggerName() {
+    return loggerName;
+  }
+
+  @Override
+  public LoggerContextVO getLoggerContextVO() {
+    return loggerContextVO;
+  }
+
+  @Override
+  public IThrowableProxy getThrowableProxy() {
+    return throwableProxy;
+  }
+
+  @Override
+  public StackTraceElement[] getCallerData() {
+    return callerData;
+  }
+
+  @Override
+  public boolean hasCallerData() {
+    return callerData.length > 0;
+  }
+
+  @Override
+  public Marker getMarker() {
+    return marker;
+  }
+
+  @Override
+  public Map<String, String> getMDCPropertyMap() {
+    return mdc;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public Map<String, String> getMdc() {
+    return mdc;
+  }
+
+  @Override
+  public long getTimeStamp() {
+    return timeStamp;
+  }
+
+  @Override
+  public void prepareForDeferredProcessing() {
+    // a snapshot is already detached from the logging thread
+  }
+
+  @Override
+  public String toString() {
+    return "[" + level + "] " + getFormattedMessage();
+  }
+}
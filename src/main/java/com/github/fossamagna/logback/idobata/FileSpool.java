@@ -0,0 +1,427 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only spool of request bodies stored in segment files.
+ *
+ * Each record is written as its length, the number of events it holds, a CRC32
+ * of both and the payload.
+ * Records are read back in order, and a checkpoint file remembers the position
+ * after the last acknowledged record. On {@link #open()} torn records at the end
+ * of a segment are truncated and reading resumes at the checkpoint, so a crash
+ * replays unacknowledged records. Fully acknowledged segments are deleted.
+ * A segment is forced to disk when it is full and on close, and the checkpoint
+ * each time it is written, so a power loss can only lose the records of the
+ * segment being written, not those of full segments or their acknowledgment.
+ * @author fossamagna
+ */
+final class FileSpool {
+
+  private static final String SEGMENT_SUFFIX = ".spool";
+
+  private static final String CHECKPOINT = "checkpoint";
+
+  private static final int HEADER_SIZE = 12;
+
+  private final File directory;
+
+  private final long segmentSize;
+
+  private final long maxSize;
+
+  private final SpoolEvictionPolicy evictionPolicy;
+
+  private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+  private RandomAccessFile checkpoint;
+
+  private long readOffset;
+
+  private int peekedSize = -1;
+
+  private int peekedEvents;
+
+  private long totalSize;
+
+  private long evictedSegments;
+
+  FileSpool(File directory, long segmentSize, long maxSize, SpoolEvictionPolicy evictionPolicy) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maxSize = maxSize;
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  /**
+   * Opens the spool, recovering the segments left by a previous run.
+   */
+  synchronized void open() throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create spool directory " + directory);
+    }
+    checkpoint = new RandomAccessFile(new File(directory, CHECKPOINT), "rw");
+    long checkpointSegment = -1;
+    long checkpointOffset = 0;
+    if (checkpoint.length() >= 16) {
+      checkpoint.seek(0);
+      checkpointSegment = checkpoint.readLong();
+      checkpointOffset = checkpoint.readLong();
+    }
+    for (File file : segmentFiles()) {
+      final long id = segmentId(file);
+      if (id < checkpointSegment) {
+        delete(file);
+        continue;
+      }
+      Segment segment = new Segment(id, file);
+      segment.recover();
+      segments.add(segment);
+      totalSize += segment.size;
+    }
+    readOffset = 0;
+    if (!segments.isEmpty() && segments.getFirst().id == checkpointSegment) {
+      readOffset = Math.min(checkpointOffset, segments.getFirst().size);
+    }
+    if (segments.isEmpty()) {
+      segments.add(newSegment(Math.max(checkpointSegment, 0)));
+    }
+  }
+
+  /**
+   * Appends the payload to the spool.
+   * @param events number of events in the payload
+   * @return {@code false} if the payload was discarded for lack of space
+   */
+  synchronized boolean append(byte[] payload, int events) throws IOException {
+    ensureOpen();
+    final long recordSize = HEADER_SIZE + payload.length;
+    if (recordSize > maxSize) {
+      return false;
+    }
+    while (totalSize + recordSize > maxSize) {
+      if (evictionPolicy == SpoolEvictionPolicy.DROP_NEWEST) {
+        return false;
+      }
+      if (segments.size() < 2) {
+        // the segment being written is also the oldest one, roll it so that it can be evicted
+        roll();
+      }
+      Segment oldest = segments.removeFirst();
+      totalSize -= oldest.size;
+      oldest.delete();
+      evictedSegments++;
+      readOffset = 0;
+      peekedSize = -1;
+      writeCheckpoint(segments.getFirst().id, 0);
+    }
+    Segment active = segments.getLast();
+    if (active.size > 0 && active.size + recordSize > segmentSize) {
+      active = roll();
+    }
+    ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+    record.putInt(payload.length);
+    record.putInt(events);
+    record.putInt(checksum(events, payload));
+    record.put(payload);
+    record.flip();
+    active.write(record);
+    totalSize += recordSize;
+    notifyAll();
+    return true;
+  }
+
+  /**
+   * Returns the oldest unacknowledged payload without removing it.
+   * @return the payload, or {@code null} if the spool is empty
+   */
+  synchronized byte[] peek() throws IOException {
+    ensureOpen();
+    while (true) {
+      Segment segment = segments.getFirst();
+      if (readOffset >= segment.size) {
+        if (segment == segments.getLast()) {
+          return null;
+        }
+        removeFirst();
+        continue;
+      }
+      byte[] payload = segment.read(readOffset);
+      if (payload == null) {
+        // corrupted record, skip the rest of the segment
+        readOffset = segment.size;
+        continue;
+      }
+      peekedSize = HEADER_SIZE + payload.length;
+      peekedEvents = segment.events;
+      return payload;
+    }
+  }
+
+  /**
+   * @return the number of events in the payload returned by the last {@link #peek()}
+   */
+  synchronized int peekedEvents() {
+    return peekedEvents;
+  }
+
+  /**
+   * Waits up to the given time for a payload.
+   * @return the oldest unacknowledged payload, or {@code null} if none arrived in time
+   */
+  synchronized byte[] awaitNext(long timeoutMillis) throws IOException, InterruptedException {
+    byte[] payload = peek();
+    if (payload == null && timeoutMillis > 0) {
+      wait(timeoutMillis);
+      payload = peek();
+    }
+    return payload;
+  }
+
+  /**
+   * Removes the payload returned by the last {@link #peek()} and persists the position.
+   */
+  synchronized void acknowledge() throws IOException {
+    if (peekedSize < 0) {
+      return;
+    }
+    readOffset += peekedSize;
+    peekedSize = -1;
+    Segment segment = segments.getFirst();
+    if (readOffset >= segment.size && segment != segments.getLast()) {
+      removeFirst();
+    } else {
+      writeCheckpoint(segment.id, readOffset);
+    }
+  }
+
+  synchronized boolean isEmpty() throws IOException {
+    ensureOpen();
+    return segments.size() == 1 && readOffset >= segments.getFirst().size;
+  }
+
+  synchronized long size() {
+    return totalSize;
+  }
+
+  synchronized long getEvictedSegments() {
+    return evictedSegments;
+  }
+
+  synchronized void close() {
+    for (Segment segment : segments) {
+      segment.force();
+      segment.close();
+    }
+    segments.clear();
+    totalSize = 0;
+    if (checkpoint != null) {
+      try {
+        checkpoint.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      checkpoint = null;
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (checkpoint == null) {
+      throw new IOException("Spool " + directory + " is closed");
+    }
+  }
+
+  private void removeFirst() throws IOException {
+    Segment segment = segments.removeFirst();
+    totalSize -= segment.size;
+    segment.delete();
+    readOffset = 0;
+    writeCheckpoint(segments.getFirst().id, 0);
+  }
+
+  private void writeCheckpoint(long segmentId, long offset) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.putLong(segmentId);
+    buffer.putLong(offset);
+    buffer.flip();
+    FileChannel channel = checkpoint.getChannel();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, buffer.position());
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Forces the segment being written to disk and starts a new one.
+   */
+  private Segment roll() throws IOException {
+    Segment active = segments.getLast();
+    active.channel.force(false);
+    Segment next = newSegment(active.id + 1);
+    segments.add(next);
+    return next;
+  }
+
+  private Segment newSegment(long id) throws IOException {
+    return new Segment(id, new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX));
+  }
+
+  private List<File> segmentFiles() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX) && segmentId(file) >= 0;
+      }
+    });
+    List<File> sorted = new ArrayList<File>();
+    if (files != null) {
+      Collections.addAll(sorted, files);
+    }
+    Collections.sort(sorted, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long x = segmentId(a);
+        long y = segmentId(b);
+        return x < y ? -1 : (x == y ? 0 : 1);
+      }
+    });
+    return sorted;
+  }
+
+  private static long segmentId(File file) {
+    String name = file.getName();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static int checksum(int events, byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(4).putInt(events).array());
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private static void delete(File file) throws IOException {
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not delete spool segment " + file);
+    }
+  }
+
+  private static final class Segment {
+
+    final long id;
+
+    final File file;
+
+    final RandomAccessFile raf;
+
+    final FileChannel channel;
+
+    long size;
+
+    /** number of events of the record last read */
+    int events;
+
+    Segment(long id, File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.raf = new RandomAccessFile(file, "rw");
+      this.channel = raf.getChannel();
+      this.size = channel.size();
+    }
+
+    /**
+     * Truncates the segment after the last complete and valid record.
+     */
+    void recover() throws IOException {
+      long offset = 0;
+      while (offset < size) {
+        byte[] payload = read(offset);
+        if (payload == null) {
+          break;
+        }
+        offset += HEADER_SIZE + payload.length;
+      }
+      if (offset < size) {
+        channel.truncate(offset);
+        size = offset;
+      }
+    }
+
+    void write(ByteBuffer record) throws IOException {
+      long position = size;
+      while (record.hasRemaining()) {
+        position += channel.write(record, position);
+      }
+      size = position;
+    }
+
+    /**
+     * @return the payload at {@code offset}, or {@code null} if the record is incomplete or corrupted
+     */
+    byte[] read(long offset) throws IOException {
+      if (offset + HEADER_SIZE > size) {
+        return null;
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      readFully(header, offset);
+      final int length = header.getInt(0);
+      final int recordEvents = header.getInt(4);
+      final int checksum = header.getInt(8);
+      if (length < 0 || offset + HEADER_SIZE + length > size) {
+        return null;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(payload, offset + HEADER_SIZE);
+      if (checksum(recordEvents, payload.array()) != checksum) {
+        return null;
+      }
+      events = recordEvents;
+      return payload.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+        int count = channel.read(buffer, position + buffer.position());
+        if (count < 0) {
+          throw new IOException("Unexpected end of spool segment " + file);
+        }
+      }
+    }
+
+    void force() {
+      try {
+        channel.force(false);
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+
+    void close() {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+
+    void delete() throws IOException {
+      close();
+      FileSpool.delete(file);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Encodes characters as UTF-8 {@code application/x-www-form-urlencoded} bytes.
+ *
+ * The output is identical to {@link java.net.URLEncoder#encode(String, String)}
+ * with UTF-8, but it is written straight into a byte array, and its length is
+ * computed beforehand so the array never has to grow or be copied.
+ * @author fossamagna
+ */
+final class FormEncoder {
+
+  private static final byte[] HEX = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+  private static final boolean[] UNRESERVED = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    UNRESERVED['-'] = true;
+    UNRESERVED['_'] = true;
+    UNRESERVED['.'] = true;
+    UNRESERVED['*'] = true;
+  }
+
+  private FormEncoder() {
+  }
+
+  /**
+   * Encodes {@code value} and prepends {@code prefix}, which must be already encoded ASCII.
+   * @return the request body
+   */
+  static byte[] encode(String prefix, CharSequence value) {
+    final int prefixLength = prefix.length();
+    byte[] bytes = new byte[prefixLength + encodedLength(value)];
+    for (int i = 0; i < prefixLength; i++) {
+      bytes[i] = (byte) prefix.charAt(i);
+    }
+    encode(value, bytes, prefixLength);
+    return bytes;
+  }
+
+  /**
+   * @return the number of bytes {@link #encode(CharSequence, byte[], int)} writes for {@code value}
+   */
+  static int encodedLength(CharSequence value) {
+    return encodedLength(value, 0, value.length());
+  }
+
+  /**
+   * @return the number of bytes written for the characters of {@code value} from {@code from} to {@code to}
+   */
+  static int encodedLength(CharSequence value, int from, int to) {
+    int length = 0;
+    for (int i = from; i < to; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        length += UNRESERVED[c] || c == ' ' ? 1 : 3;
+      } else if (c < 0x800) {
+        length += 6;
+      } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 12;
+        i++;
+      } else if (isSurrogate(c)) {
+        // malformed, encoded as '?'
+        length += 3;
+      } else {
+        length += 9;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Finds the longest run of characters starting at {@code from} whose encoded length fits
+   * in {@code maxBytes}, without splitting a surrogate pair.
+   * @return the end index of the run, at most {@code to}
+   */
+  static int fit(CharSequence value, int from, int to, long maxBytes) {
+    long length = 0;
+    int i = from;
+    while (i < to) {
+      final char c = value.charAt(i);
+      final boolean pair = Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1));
+      final int width = pair ? 2 : 1;
+      length += encodedLength(value, i, i + width);
+      if (length > maxBytes) {
+        break;
+      }
+      i += width;
+    }
+    return i;
+  }
+
+  /**
+   * Encodes {@code value} into {@code bytes} starting at {@code offset}.
+   * @return the offset after the last byte written
+   */
+  static int encode(CharSequence value, byte[] bytes, int offset) {
+    int position = offset;
+    for (int i = 0, len = value.length(); i < len; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        if (UNRESERVED[c]) {
+          bytes[position++] = (byte) c;
+        } else if (c == ' ') {
+          bytes[position++] = '+';
+        } else {
+          position = escape(c, bytes, position);
+        }
+      } else if (c < 0x800) {
+        position = escape(0xC0 | (c >> 6), bytes, position);
+        position = escape(0x80 | (c & 0x3F), bytes, position);
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        position = escape(0xF0 | (codePoint >> 18), bytes, position);
+        position = escape(0x80 | ((codePoint >> 12) & 0x3F), bytes, position);
+        position = escape(0x80 | ((codePoint >> 6) & 0x3F), bytes, position);
+        position = escape(0x80 | (codePoint & 0x3F), bytes, position);
+      } else if (isSurrogate(c)) {
+        position = escape('?', bytes, position);
+      } else {
+        position = escape(0xE0 | (c >> 12), bytes, position);
+        position = escape(0x80 | ((c >> 6) & 0x3F), bytes, position);
+        position = escape(0x80 | (c & 0x3F), bytes, position);
+      }
+    }
+    return position;
+  }
+
+  private static boolean isSurrogate(char c) {
+    // Character.isSurrogate is not available on Java 6
+    return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+  }
+
+  private static int escape(int b, byte[] bytes, int position) {
+    bytes[position] = '%';
+    bytes[position + 1] = HEX[(b >> 4) & 0xF];
+    bytes[position + 2] = HEX[b & 0xF];
+    return position + 3;
+  }
+}
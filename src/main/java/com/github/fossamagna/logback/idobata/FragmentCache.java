@@ -0,0 +1,101 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-capped cache of the rendered fragments of recurring names, such as thread and logger names.
+ *
+ * Lookups do not lock. Once the cache holds more than {@code maxEntries}
+ * fragments or {@code maxChars} characters of names and fragments, the oldest
+ * entries are evicted, so names of short-lived threads cannot grow it without limit.
+ * @author fossamagna
+ */
+final class FragmentCache {
+
+  static final Fragment NULL = new Fragment("null");
+
+  private final int maxEntries;
+
+  private final long maxChars;
+
+  private final ConcurrentMap<String, Fragment> fragments = new ConcurrentHashMap<String, Fragment>();
+
+  private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<String>();
+
+  private final AtomicLong chars = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of cached fragments
+   * @param maxChars maximum number of characters of the cached names and fragments
+   */
+  FragmentCache(int maxEntries, long maxChars) {
+    this.maxEntries = maxEntries;
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * @return the escaped fragment of the name, {@link #NULL} for {@code null}
+   */
+  Fragment get(String name) {
+    if (name == null) {
+      return NULL;
+    }
+    Fragment fragment = fragments.get(name);
+    if (fragment == null) {
+      fragment = new Fragment(HtmlEscaper.escape(name));
+      final Fragment previous = fragments.putIfAbsent(name, fragment);
+      if (previous != null) {
+        return previous;
+      }
+      insertionOrder.offer(name);
+      chars.addAndGet(size(name, fragment));
+      evict();
+    }
+    return fragment;
+  }
+
+  private void evict() {
+    while (fragments.size() > maxEntries || chars.get() > maxChars) {
+      final String eldest = insertionOrder.poll();
+      if (eldest == null) {
+        return;
+      }
+      final Fragment removed = fragments.remove(eldest);
+      if (removed != null) {
+        chars.addAndGet(-size(eldest, removed));
+      }
+    }
+  }
+
+  private static long size(String name, Fragment fragment) {
+    // an unescaped fragment is the name itself
+    return fragment.html == name ? name.length() : name.length() + fragment.html.length();
+  }
+
+  int size() {
+    return fragments.size();
+  }
+
+  long chars() {
+    return chars.get();
+  }
+
+  /**
+   * Escaped markup along with its form encoded length.
+   */
+  static final class Fragment {
+
+    final String html;
+
+    final int encodedLength;
+
+    Fragment(String html) {
+      this.html = html;
+      this.encodedLength = FormEncoder.encodedLength(html);
+    }
+  }
+}
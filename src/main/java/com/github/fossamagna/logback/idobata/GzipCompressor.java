@@ -0,0 +1,135 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses request bodies to the gzip format with pooled {@link Deflater}s.
+ *
+ * A deflater holds native memory and is costly to create, so each one is reset
+ * and reused along with its output buffer instead of being allocated per request.
+ * At most {@code maxPooled} idle deflaters are kept, the others are ended.
+ * @author fossamagna
+ */
+final class GzipCompressor {
+
+  private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+  private static final int TRAILER_LENGTH = 8;
+
+  private final int level;
+
+  private final int maxPooled;
+
+  private final Queue<Compressed> pool = new ConcurrentLinkedQueue<Compressed>();
+
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  private volatile boolean closed;
+
+  /**
+   * @param level compression level of {@link Deflater}
+   * @param maxPooled maximum number of idle deflaters kept
+   */
+  GzipCompressor(int level, int maxPooled) {
+    this.level = level;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Compresses the content into a pooled buffer, which must be given back by
+   * {@link #release(Compressed)} once the request is sent.
+   */
+  Compressed compress(byte[] content) {
+    Compressed compressed = pool.poll();
+    if (compressed != null) {
+      pooled.decrementAndGet();
+    } else {
+      compressed = new Compressed(new Deflater(level, true));
+    }
+    compressed.compress(content);
+    return compressed;
+  }
+
+  void release(Compressed compressed) {
+    if (!closed) {
+      if (pooled.incrementAndGet() <= maxPooled) {
+        pool.offer(compressed);
+        return;
+      }
+      pooled.decrementAndGet();
+    }
+    compressed.deflater.end();
+  }
+
+  /**
+   * Ends the idle deflaters, and those released from now on.
+   */
+  void close() {
+    closed = true;
+    Compressed compressed;
+    while ((compressed = pool.poll()) != null) {
+      pooled.decrementAndGet();
+      compressed.deflater.end();
+    }
+  }
+
+  int pooled() {
+    return pooled.get();
+  }
+
+  /**
+   * Gzip data in {@code bytes} from {@code 0} to {@code length}.
+   */
+  static final class Compressed {
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    byte[] bytes = new byte[4096];
+
+    int length;
+
+    Compressed(Deflater deflater) {
+      this.deflater = deflater;
+    }
+
+    void compress(byte[] content) {
+      deflater.reset();
+      crc.reset();
+      crc.update(content, 0, content.length);
+      System.arraycopy(HEADER, 0, bytes, 0, HEADER.length);
+      length = HEADER.length;
+      deflater.setInput(content, 0, content.length);
+      deflater.finish();
+      while (!deflater.finished()) {
+        if (length == bytes.length) {
+          grow(bytes.length * 2);
+        }
+        length += deflater.deflate(bytes, length, bytes.length - length);
+      }
+      if (bytes.length - length < TRAILER_LENGTH) {
+        grow(length + TRAILER_LENGTH);
+      }
+      writeInt((int) crc.getValue());
+      writeInt(content.length);
+    }
+
+    private void grow(int capacity) {
+      byte[] grown = new byte[capacity];
+      System.arraycopy(bytes, 0, grown, 0, length);
+      bytes = grown;
+    }
+
+    private void writeInt(int value) {
+      bytes[length++] = (byte) value;
+      bytes[length++] = (byte) (value >>> 8);
+      bytes[length++] = (byte) (value >>> 16);
+      bytes[length++] = (byte) (value >>> 24);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with power of two buckets.
+ *
+ * Bucket {@code i} counts the values whose highest one bit is bit {@code i - 1},
+ * so percentiles are accurate within a factor of two, which is enough to spot
+ * latency regressions at a cost of a few atomic additions per value.
+ * @author fossamagna
+ */
+final class Histogram {
+
+  private static final int BUCKETS = 65;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  private final StripedCounter count = new StripedCounter();
+
+  private final StripedCounter sum = new StripedCounter();
+
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets.getAndIncrement(64 - Long.numberOfLeadingZeros(value));
+    count.increment();
+    sum.add(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  long getSum() {
+    return sum.sum();
+  }
+
+  long getMax() {
+    return max.get();
+  }
+
+  double getMean() {
+    final long count = getCount();
+    return count == 0 ? 0 : (double) getSum() / count;
+  }
+
+  /**
+   * @param quantile quantile between 0 and 1
+   * @return the upper bound of the bucket holding the quantile, capped by the maximum
+   */
+  long getPercentile(double quantile) {
+    long total = 0;
+    final long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        final long upper = i == 0 ? 0 : (i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+        return Math.min(upper, getMax());
+      }
+    }
+    return getMax();
+  }
+}
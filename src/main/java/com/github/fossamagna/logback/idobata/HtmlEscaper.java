@@ -0,0 +1,78 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Escapes text like {@link ch.qos.logback.core.helpers.Transform#escapeTags(String)}
+ * straight into the output buffer.
+ *
+ * A text without characters to escape, the common case, is checked in one scan
+ * and appended in bulk. Otherwise the runs between the escaped characters are
+ * appended as they are, without an intermediate copy of the text. Control
+ * characters other than tab and line breaks are replaced by U+FFFD, as
+ * Transform does.
+ * @author fossamagna
+ */
+final class HtmlEscaper {
+
+  private static final String[] REPLACEMENTS = new String[128];
+
+  static {
+    for (char c = 0; c < ' '; c++) {
+      if (c != '\t' && c != '\n' && c != '\r') {
+        REPLACEMENTS[c] = "\uFFFD";
+      }
+    }
+    REPLACEMENTS['&'] = "&amp;";
+    REPLACEMENTS['<'] = "&lt;";
+    REPLACEMENTS['>'] = "&gt;";
+    REPLACEMENTS['"'] = "&quot;";
+    REPLACEMENTS['\''] = "&#39;";
+  }
+
+  private HtmlEscaper() {
+  }
+
+  /**
+   * @return the escaped text, {@code text} itself if nothing needs escaping
+   */
+  static String escape(String text) {
+    if (text == null || indexOfUnsafe(text, 0) < 0) {
+      return text;
+    }
+    StringBuilder buffer = new StringBuilder(text.length() + 16);
+    escape(text, buffer);
+    return buffer.toString();
+  }
+
+  /**
+   * Appends the escaped text, or {@code "null"} for {@code null}.
+   */
+  static void escape(CharSequence text, StringBuilder buffer) {
+    if (text == null) {
+      buffer.append((String) null);
+      return;
+    }
+    int unsafe = indexOfUnsafe(text, 0);
+    if (unsafe < 0) {
+      buffer.append(text);
+      return;
+    }
+    final int length = text.length();
+    int runStart = 0;
+    while (unsafe >= 0) {
+      buffer.append(text, runStart, unsafe).append(REPLACEMENTS[text.charAt(unsafe)]);
+      runStart = unsafe + 1;
+      unsafe = indexOfUnsafe(text, runStart);
+    }
+    buffer.append(text, runStart, length);
+  }
+
+  private static int indexOfUnsafe(CharSequence text, int from) {
+    for (int i = from, length = text.length(); i < length; i++) {
+      final char c = text.charAt(i);
+      if (c < 128 && REPLACEMENTS[c] != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
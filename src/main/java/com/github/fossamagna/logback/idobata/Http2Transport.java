@@ -0,0 +1,290 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import ch.qos.logback.core.util.Duration;
+
+/**
+ * {@link Transport} using the HTTP client of Java 11 and later, which multiplexes
+ * concurrent posts as streams of a single HTTP/2 connection per host.
+ *
+ * HTTPS endpoints negotiate HTTP/2 with ALPN and plain HTTP endpoints are upgraded
+ * with h2c, endpoints without HTTP/2 are posted to with HTTP/1.1. Request bodies of
+ * at least {@code compressionThreshold} bytes are gzip compressed by pooled
+ * deflaters and sent with {@code Content-Encoding: gzip}.
+ * The client is looked up reflectively since this library runs on Java 6.
+ * @author fossamagna
+ */
+public class Http2Transport extends TransportBase {
+
+  private static final int MAX_IDLE_COMPRESSORS = 16;
+
+  private int compressionThreshold;
+
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  private HttpClientApi api;
+
+  private volatile Object client;
+
+  private Object requestTimeout;
+
+  private volatile GzipCompressor compressor;
+
+  /**
+   * @return {@code true} if the {@code java.net.http} client is available on this runtime
+   */
+  public static boolean isSupported() {
+    try {
+      Class.forName("java.net.http.HttpClient");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void start() {
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+      addError("Invalid compressionLevel [" + compressionLevel + "]");
+      return;
+    }
+    try {
+      api = new HttpClientApi();
+    } catch (Exception e) {
+      addError("Http2Transport requires the java.net.http client of Java 11 or later", e);
+      return;
+    }
+    try {
+      Object builder = invoke(api.newBuilder, null);
+      builder = invoke(api.builderVersion, builder, api.http2);
+      builder = invoke(api.builderConnectTimeout, builder, duration(getConnectTimeout()));
+      requestTimeout = duration(getReadTimeout());
+      client = invoke(api.builderBuild, builder);
+    } catch (IOException e) {
+      addError("Could not create the HTTP client", e);
+      return;
+    }
+    if (compressionThreshold > 0) {
+      compressor = new GzipCompressor(compressionLevel, MAX_IDLE_COMPRESSORS);
+    }
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    final Object client = this.client;
+    this.client = null;
+    if (client != null && api.shutdownNow != null) {
+      try {
+        invoke(api.shutdownNow, client);
+      } catch (IOException e) {
+        addWarn("Could not shut down the HTTP client", e);
+      }
+    }
+    final GzipCompressor compressor = this.compressor;
+    this.compressor = null;
+    if (compressor != null) {
+      compressor.close();
+    }
+  }
+
+  @Override
+  public TransportResponse post(URL url, byte[] content) throws IOException {
+    final Object client = this.client;
+    if (!isStarted() || client == null) {
+      throw new IOException("Transport is not started");
+    }
+    final GzipCompressor compressor = this.compressor;
+    GzipCompressor.Compressed compressed = null;
+    try {
+      Object builder = invoke(api.requestNewBuilder, null, url.toURI());
+      builder = invoke(api.requestTimeout, builder, requestTimeout);
+      builder = invoke(api.requestHeader, builder, "Content-Type", CONTENT_TYPE);
+      byte[] body = content;
+      int length = content.length;
+      if (compressor != null && content.length >= compressionThreshold) {
+        compressed = compressor.compress(content);
+        if (compressed.length < content.length) {
+          body = compressed.bytes;
+          length = compressed.length;
+          builder = invoke(api.requestHeader, builder, "Content-Encoding", "gzip");
+        }
+      }
+      builder = invoke(api.requestPost, builder, invoke(api.ofByteArray, null, body, 0, length));
+      // send() returns once the response is read, so the body buffer can be given back afterwards
+      final Object response = invoke(api.send, client, invoke(api.requestBuild, builder), api.ofString);
+      final int status = (Integer) invoke(api.statusCode, response);
+      final String responseBody = (String) invoke(api.body, response);
+      return new TransportResponse(status, responseBody != null ? responseBody : "",
+          headers(invoke(api.headersMap, invoke(api.headers, response))));
+    } catch (URISyntaxException e) {
+      throw new IOException("Invalid endpoint url [" + url + "]: " + e.getMessage());
+    } finally {
+      if (compressed != null) {
+        compressor.release(compressed);
+      }
+    }
+  }
+
+  private static Map<String, String> headers(Object map) {
+    Map<String, String> headers = new HashMap<String, String>();
+    for (Map.Entry<?, ?> field : ((Map<?, ?>) map).entrySet()) {
+      final String name = (String) field.getKey();
+      final List<?> values = (List<?>) field.getValue();
+      if (!name.startsWith(":") && values != null && !values.isEmpty()) {
+        headers.put(name, (String) values.get(0));
+      }
+    }
+    return headers;
+  }
+
+  private Object duration(Duration duration) throws IOException {
+    return invoke(api.ofMillis, null, duration.getMilliseconds());
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) throws IOException {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while posting");
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(String.valueOf(cause));
+    } catch (IllegalAccessException e) {
+      throw new IOException(e.toString());
+    }
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Sets the minimum size of the request bodies compressed with gzip, {@code 0} to disable compression.
+   * The endpoint must accept {@code Content-Encoding: gzip}.
+   * @param compressionThreshold minimum size in bytes
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Sets the compression level from {@code 1}, fastest, to {@code 9}, smallest,
+   * or {@code -1} for the default of {@link Deflater}.
+   * @param compressionLevel gzip compression level
+   */
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * Methods of the {@code java.net.http} client.
+   */
+  private static final class HttpClientApi {
+
+    final Method newBuilder;
+
+    final Method builderVersion;
+
+    final Method builderConnectTimeout;
+
+    final Method builderBuild;
+
+    final Object http2;
+
+    final Method shutdownNow;
+
+    final Method requestNewBuilder;
+
+    final Method requestTimeout;
+
+    final Method requestHeader;
+
+    final Method requestPost;
+
+    final Method requestBuild;
+
+    final Method ofByteArray;
+
+    final Object ofString;
+
+    final Method send;
+
+    final Method statusCode;
+
+    final Method body;
+
+    final Method headers;
+
+    final Method headersMap;
+
+    final Method ofMillis;
+
+    HttpClientApi() throws Exception {
+      final Class<?> durationClass = Class.forName("java.time.Duration");
+      final Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+      final Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+      final Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+      final Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+      final Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+      final Class<?> publisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+      final Class<?> publishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+      final Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+      final Class<?> handlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+      final Class<?> handlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+      ofMillis = durationClass.getMethod("ofMillis", long.class);
+      newBuilder = clientClass.getMethod("newBuilder");
+      builderVersion = clientBuilderClass.getMethod("version", versionClass);
+      builderConnectTimeout = clientBuilderClass.getMethod("connectTimeout", durationClass);
+      builderBuild = clientBuilderClass.getMethod("build");
+      http2 = versionClass.getField("HTTP_2").get(null);
+      shutdownNow = shutdownNow(clientClass);
+      requestNewBuilder = requestClass.getMethod("newBuilder", java.net.URI.class);
+      requestTimeout = requestBuilderClass.getMethod("timeout", durationClass);
+      requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+      requestPost = requestBuilderClass.getMethod("POST", publisherClass);
+      requestBuild = requestBuilderClass.getMethod("build");
+      ofByteArray = publishersClass.getMethod("ofByteArray", byte[].class, int.class, int.class);
+      ofString = handlersClass.getMethod("ofString").invoke(null);
+      send = clientClass.getMethod("send", requestClass, handlerClass);
+      statusCode = responseClass.getMethod("statusCode");
+      body = responseClass.getMethod("body");
+      headers = responseClass.getMethod("headers");
+      headersMap = Class.forName("java.net.http.HttpHeaders").getMethod("map");
+    }
+
+    /**
+     * @return {@code HttpClient.shutdownNow()} of Java 21 and later, or {@code null}
+     */
+    private static Method shutdownNow(Class<?> clientClass) {
+      try {
+        return clientClass.getMethod("shutdownNow");
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Transport} using {@link HttpURLConnection}.
+ *
+ * Connection reuse is left to the keep-alive cache of the JDK.
+ * @author fossamagna
+ */
+public class HttpURLConnectionTransport extends TransportBase {
+
+  @Override
+  public TransportResponse post(URL url, byte[] content) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setConnectTimeout(connectTimeoutMillis());
+    connection.setReadTimeout(readTimeoutMillis());
+    connection.setDoOutput(true);
+    connection.setRequestMethod("POST");
+    connection.setFixedLengthStreamingMode(content.length);
+    connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+    OutputStream out = null;
+    InputStream in = null;
+    try {
+      out = connection.getOutputStream();
+      out.write(content);
+      out.flush();
+
+      final int status = connection.getResponseCode();
+      final String encoding = connection.getContentEncoding();
+      if (status < 400) {
+        in = connection.getInputStream();
+      } else {
+        in = connection.getErrorStream();
+      }
+      return new TransportResponse(status, toString(in, encoding), headers(connection));
+    } finally {
+      close(out);
+      close(in);
+    }
+  }
+
+  private Map<String, String> headers(HttpURLConnection connection) {
+    Map<String, String> headers = new HashMap<String, String>();
+    Map<String, List<String>> fields = connection.getHeaderFields();
+    if (fields != null) {
+      for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+        if (field.getKey() != null && field.getValue() != null && !field.getValue().isEmpty()) {
+          headers.put(field.getKey(), field.getValue().get(0));
+        }
+      }
+    }
+    return headers;
+  }
+
+  private void close(Closeable closeable) throws IOException {
+    if (closeable != null) {
+      closeable.close();
+    }
+  }
+
+  String toString(InputStream in, String encoding) throws IOException {
+    if (in == null) {
+      return "";
+    }
+    ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count = -1;
+    while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+      responseBody.write(buffer, 0, count);
+    }
+    return responseBody.toString(encoding != null ? encoding : "UTF-8");
+  }
+}
@@ -1,17 +1,32 @@
 package com.github.fossamagna.logback.idobata;
 
-import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
-import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.Layout;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
 
 /**
  * Logback appendar for Idobata.
@@ -20,11 +35,48 @@ import ch.qos.logback.core.UnsynchronizedAppenderBase;
  * <pre>
  * curl --data-urlencode "source='logging event object'" -d format=html https://idobata.io/hook/custom/TOKEN
  * </pre>
+ *
+ * When {@code async} is enabled, events are put on a bounded queue and posted
+ * by background sender threads, so the logging thread only pays for the enqueue.
+ * When {@code virtualThreads} is enabled, each post runs on a virtual thread,
+ * or on a pool of platform threads on runtimes without them, with at most
+ * {@code senderThreads} posts, or {@code maxInFlight} per route, in flight.
+ * With {@link DeferredProcessingPolicy#SNAPSHOT} the queued event is a compact
+ * snapshot holding only what the layout needs.
+ * When {@code batchSize} is greater than one, rendered events are collected and
+ * posted together as a single message.
+ * When {@code aggregationWindow} is set, repeated events are suppressed within
+ * the window and reported by one summary message.
+ * When sampling rules are added, only a ratio of the events of the given levels
+ * and loggers is posted, and the events sampled out are counted in the next message.
+ * When {@code rateLimit} is set, the events posted to each endpoint are throttled
+ * by a token bucket of its own in which part of the burst is reserved for events
+ * at or above {@code rateLimitPriorityLevel}; a 429 pauses only that endpoint.
+ * When {@code maxAttempts} is greater than one, posts failing with an I/O error,
+ * 429 or 5xx are retried later with exponential backoff, honoring {@code Retry-After}.
+ * When {@code circuitBreakerThreshold} is set, consecutive failures open a
+ * circuit breaker which suspends posts for a while.
+ * When {@code spoolDirectory} is set, encoded messages are written to an
+ * append-only spool on disk and posted in order by a background thread, so
+ * messages survive outages and restarts.
+ * When routes are added, each event is rendered once and posted to the endpoint
+ * of every matching {@link Route}, each route being delivered by its own queue
+ * and sender threads so that a slow endpoint does not hold up the others.
+ * Events matching no route are posted to {@code endpointUrl}.
+ * On stop, the queues, batch and retries are flushed within one
+ * {@code shutdownTimeout}, the main queue by up to {@code flushThreads} threads,
+ * and the numbers of flushed and lost messages are reported as status.
+ * Counters and histograms are kept in {@link IdobataMetrics}, which can be
+ * registered to JMX and forwarded to {@link MetricsListener}s.
+ * Requests are sent by the configured {@link Transport}, which defaults to
+ * {@link HttpURLConnectionTransport}.
  * @author fossamagna
  */
 public class IdobataAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
 
-  private static final String ENCODE = "UTF-8";
+  private static final String MBEAN_DOMAIN = "com.github.fossamagna.logback.idobata";
+
+  private static final int MAX_CACHED_LOGGERS = 1024;
 
   private URL endpointUrl;
 
@@ -32,65 +84,1056 @@ public class IdobataAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
 
   private boolean html = true;
 
+  private Transport transport = new HttpURLConnectionTransport();
+
+  private boolean async = false;
+
+  private int queueSize = 256;
+
+  private int senderThreads = 1;
+
+  private boolean virtualThreads = false;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+  private Level overflowLevel = Level.WARN;
+
+  private Duration shutdownTimeout = Duration.buildBySeconds(5);
+
+  private int flushThreads = 1;
+
+  private boolean shutdownHook;
+
+  private Thread registeredShutdownHook;
+
+  private long flushedCount;
+
+  private long lostCount;
+
+  private DeferredProcessingPolicy deferredProcessingPolicy = DeferredProcessingPolicy.FULL;
+
+  private final List<String> mdcKeys = new ArrayList<String>();
+
+  private String[] snapshotMdcKeys;
+
+  private int batchSize = 1;
+
+  private int batchMaxBytes = 64 * 1024;
+
+  private Duration lingerTime = Duration.buildBySeconds(1);
+
+  private Duration aggregationWindow;
+
+  private int aggregationMaxKeys = 1000;
+
+  private int rateLimit = 0;
+
+  private Duration rateLimitPeriod = Duration.buildByMinutes(1);
+
+  private int rateLimitBurst = 0;
+
+  private double rateLimitReservedRatio = 0.2;
+
+  private Level rateLimitPriorityLevel = Level.ERROR;
+
+  private int maxAttempts = 1;
+
+  private Duration retryInitialDelay = Duration.buildBySeconds(1);
+
+  private Duration retryMaxDelay = Duration.buildBySeconds(60);
+
+  private Duration retryMaxAge = Duration.buildByMinutes(5);
+
+  private int maxPendingRetries = 100;
+
+  private int circuitBreakerThreshold;
+
+  private Duration circuitBreakerOpenTime = Duration.buildBySeconds(30);
+
+  private String spoolDirectory;
+
+  private FileSize spoolSegmentSize = new FileSize(FileSize.MB_COEFFICIENT);
+
+  private FileSize spoolMaxSize = new FileSize(64 * FileSize.MB_COEFFICIENT);
+
+  private SpoolEvictionPolicy spoolEvictionPolicy = SpoolEvictionPolicy.DROP_OLDEST;
+
+  private final List<Route> routes = new ArrayList<Route>();
+
+  private final List<SamplingRule> samplingRules = new ArrayList<SamplingRule>();
+
+  private Sampler sampler;
+
+  private Endpoint defaultEndpoint;
+
+  private Endpoint[] endpoints = new Endpoint[0];
+
+  private BoundedQueue<ILoggingEvent> queue;
+
+  private FileSpool spool;
+
+  private Thread spoolSender;
+
+  private volatile boolean spoolDraining;
+
+  private final AtomicLong spoolDroppedCount = new AtomicLong();
+
+  private ScheduledExecutorService retryExecutor;
+
+  private Backoff backoff;
+
+  private CircuitBreaker circuitBreaker;
+
+  private final AtomicInteger pendingRetries = new AtomicInteger();
+
+  private final AtomicLong circuitOpenDroppedCount = new AtomicLong();
+
+  private final Random random = new Random();
+
+  private final AtomicLong rateLimitedCount = new AtomicLong();
+
+  private RepeatAggregator aggregator;
+
+  private ScheduledFuture<?> aggregationTask;
+
+  private MessageBatcher batcher;
+
+  private ScheduledFuture<?> lingerTask;
+
+  private Thread[] senders;
+
+  private PostExecutor postExecutor;
+
+  private volatile boolean draining;
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private final IdobataMetrics metrics = new IdobataMetrics();
+
+  private int maxPayloadBytes;
+
+  private boolean jmxEnabled;
+
+  private ObjectName mbeanName;
+
   @Override
-  protected void append(ILoggingEvent eventObject) {
-    String message = layout.doLayout(eventObject);
+  public void start() {
+    if (isStarted()) {
+      return;
+    }
+    queue = null;
+    batcher = null;
+    aggregator = null;
+    sampler = null;
+    circuitBreaker = null;
+    retryExecutor = null;
+    spool = null;
+    postExecutor = null;
+    endpoints = new Endpoint[0];
+    if (batchSize < 1) {
+      addError("Invalid batchSize [" + batchSize + "]");
+      return;
+    }
+    if (async && queueSize < 1) {
+      addError("Invalid queueSize [" + queueSize + "]");
+      return;
+    }
+    if (async && senderThreads < 1) {
+      addError("Invalid senderThreads [" + senderThreads + "]");
+      return;
+    }
+    for (Route route : routes) {
+      if (route.getEndpointUrl() == null) {
+        addError("No endpointUrl set for a route of the appender named [" + name + "].");
+        return;
+      }
+      if (route.getMaxInFlight() < 1 || route.getQueueSize() < 1) {
+        addError("Invalid maxInFlight [" + route.getMaxInFlight() + "] or queueSize [" + route.getQueueSize()
+            + "] of the route to [" + route.getEndpointUrl() + "]");
+        return;
+      }
+    }
+    for (SamplingRule rule : samplingRules) {
+      if (!(rule.getRate() >= 0 && rule.getRate() <= 1)) {
+        addError("Invalid rate [" + rule.getRate() + "] of a sampling rule, expected between 0 and 1");
+        return;
+      }
+    }
+    if (transport == null) {
+      addError("No transport set for the appender named [" + name + "].");
+      return;
+    }
+    if (transport.getContext() == null) {
+      transport.setContext(getContext());
+    }
+    transport.start();
+    if (!transport.isStarted()) {
+      addError("Transport failed to start for the appender named [" + name + "].");
+      return;
+    }
+    if (!samplingRules.isEmpty()) {
+      sampler = new Sampler(samplingRules, MAX_CACHED_LOGGERS);
+    }
+    rateLimitedCount.set(0);
+    if (circuitBreakerThreshold > 0) {
+      circuitBreaker = new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenTime.getMilliseconds());
+      circuitOpenDroppedCount.set(0);
+    }
+    defaultEndpoint = new Endpoint(endpointUrl, circuitBreaker, newRateLimiter());
+    if (spoolDirectory != null) {
+      FileSpool spool = new FileSpool(new File(spoolDirectory), spoolSegmentSize.getSize(), spoolMaxSize.getSize(),
+          spoolEvictionPolicy);
+      try {
+        spool.open();
+      } catch (IOException e) {
+        spool.close();
+        transport.stop();
+        addError("Could not open spool directory [" + spoolDirectory + "]", e);
+        return;
+      }
+      this.spool = spool;
+      metrics.setSpool(spool);
+      spoolDraining = false;
+      spoolDroppedCount.set(0);
+    }
+    if (maxAttempts > 1 || spool != null) {
+      backoff = new Backoff(retryInitialDelay.getMilliseconds(), retryMaxDelay.getMilliseconds());
+    }
+    if (maxAttempts > 1) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "IdobataAppender-" + getName() + "-retry");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      retryExecutor = executor;
+      pendingRetries.set(0);
+    }
+    if (spool != null) {
+      spoolSender = new Thread(new SpoolSender(), "IdobataAppender-" + getName() + "-spool");
+      spoolSender.setDaemon(true);
+      spoolSender.start();
+    }
+    if (virtualThreads && (async || !routes.isEmpty()) && !PostExecutor.isVirtualThreadSupported()) {
+      addInfo("Virtual threads are not supported on this runtime, posting from pools of platform threads");
+    }
+    if (async) {
+      snapshotMdcKeys = snapshotMdcKeys();
+      queue = new BoundedQueue<ILoggingEvent>(queueSize);
+      metrics.setQueue(queue);
+      draining = false;
+      droppedCount.set(0);
+      if (virtualThreads) {
+        postExecutor = new PostExecutor("IdobataAppender-" + getName() + "-sender", senderThreads, true);
+        senders = new Thread[] { new Thread(new Sender(), "IdobataAppender-" + getName() + "-dispatcher") };
+      } else {
+        senders = new Thread[senderThreads];
+        for (int i = 0; i < senders.length; i++) {
+          senders[i] = new Thread(new Sender(), "IdobataAppender-" + getName() + "-sender-" + i);
+        }
+      }
+      for (Thread sender : senders) {
+        sender.setDaemon(true);
+        sender.start();
+      }
+    }
+    if (batchSize > 1) {
+      final long linger = Math.max(1, lingerTime.getMilliseconds());
+      final String separator = layout instanceof IdobataLayout ? ((IdobataLayout) layout).getSeparator() : null;
+      batcher = new MessageBatcher(batchSize, batchMaxBytes, linger, prefix().length()
+          + encodedLength(layout.getPresentationHeader()) + encodedLength(layout.getPresentationFooter()),
+          encodedLength(separator));
+      lingerTask = getContext().getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          post(batcher.drainExpired(System.currentTimeMillis()));
+        }
+      }, linger, linger, TimeUnit.MILLISECONDS);
+    }
+    if (!routes.isEmpty()) {
+      startRoutes();
+    }
+    if (aggregationWindow != null && aggregationWindow.getMilliseconds() > 0) {
+      final long window = aggregationWindow.getMilliseconds();
+      aggregator = new RepeatAggregator(window, aggregationMaxKeys);
+      aggregationTask = getContext().getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          dispatch(aggregator.expire(System.currentTimeMillis()));
+        }
+      }, window, window, TimeUnit.MILLISECONDS);
+    }
+    if (jmxEnabled) {
+      registerMBean();
+    }
+    if (shutdownHook) {
+      registerShutdownHook();
+    }
+    super.start();
+  }
+
+  private void startRoutes() {
+    Endpoint[] endpoints = new Endpoint[routes.size()];
+    for (int i = 0; i < endpoints.length; i++) {
+      final Route route = routes.get(i);
+      final Endpoint endpoint = new Endpoint(route, circuitBreakerThreshold > 0
+          ? new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenTime.getMilliseconds()) : null,
+          newRateLimiter());
+      final String prefix = "IdobataAppender-" + getName() + "-route-" + i;
+      if (virtualThreads) {
+        endpoint.executor = new PostExecutor(prefix + "-sender", route.getMaxInFlight(), true);
+        endpoint.senders = new Thread[] { new Thread(new RouteSender(endpoint), prefix + "-dispatcher") };
+      } else {
+        endpoint.senders = new Thread[route.getMaxInFlight()];
+        for (int j = 0; j < endpoint.senders.length; j++) {
+          endpoint.senders[j] = new Thread(new RouteSender(endpoint), prefix + "-sender-" + j);
+        }
+      }
+      for (Thread sender : endpoint.senders) {
+        sender.setDaemon(true);
+        sender.start();
+      }
+      endpoints[i] = endpoint;
+    }
+    this.endpoints = endpoints;
+  }
+
+  /**
+   * @return a token bucket for one endpoint, or {@code null} when {@code rateLimit} is not set
+   */
+  private TokenBucket newRateLimiter() {
+    if (rateLimit <= 0) {
+      return null;
+    }
+    final int burst = rateLimitBurst > 0 ? rateLimitBurst : rateLimit;
+    final int reserved = (int) Math.round(burst * rateLimitReservedRatio);
+    return new TokenBucket(rateLimit, TimeUnit.MILLISECONDS.toNanos(rateLimitPeriod.getMilliseconds()),
+        burst, reserved, System.nanoTime());
+  }
+
+  /**
+   * @return the configured MDC keys followed by those the layout renders and the routes depend on
+   */
+  private String[] snapshotMdcKeys() {
+    List<String> keys = new ArrayList<String>(mdcKeys);
+    if (layout instanceof IdobataLayout) {
+      for (String key : ((IdobataLayout) layout).getMdcKeys()) {
+        if (!keys.contains(key)) {
+          keys.add(key);
+        }
+      }
+    }
+    for (Route route : routes) {
+      if (route.getMdcKey() != null && !keys.contains(route.getMdcKey())) {
+        keys.add(route.getMdcKey());
+      }
+    }
+    return keys.toArray(new String[keys.size()]);
+  }
+
+  private void registerShutdownHook() {
+    Thread hook = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        stop();
+      }
+    }, "IdobataAppender-" + getName() + "-shutdown");
+    try {
+      Runtime.getRuntime().addShutdownHook(hook);
+      registeredShutdownHook = hook;
+    } catch (IllegalStateException e) {
+      addWarn("Could not register the shutdown hook of appender [" + getName() + "], the JVM is shutting down", e);
+    }
+  }
+
+  private void unregisterShutdownHook() {
+    if (Thread.currentThread() != registeredShutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(registeredShutdownHook);
+      } catch (IllegalStateException e) {
+        // the JVM is shutting down, the hook will find the appender stopped
+      }
+    }
+    registeredShutdownHook = null;
+  }
+
+  private void registerMBean() {
     try {
-      postMessage(message, html);
+      ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=IdobataAppender,name=" + ObjectName.quote(String.valueOf(getName())));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+      mbeanName = name;
+    } catch (JMException e) {
+      addWarn("Could not register the metrics of appender [" + getName() + "] to JMX", e);
+    }
+  }
+
+  private void unregisterMBean() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+    } catch (JMException e) {
+      addWarn("Could not unregister the metrics of appender [" + getName() + "] from JMX", e);
+    }
+    mbeanName = null;
+  }
+
+  /**
+   * Flushes the pending messages within {@code shutdownTimeout} and reports how many
+   * were flushed and lost to the status manager.
+   */
+  @Override
+  public synchronized void stop() {
+    // synchronized since the shutdown hook may race with the context stopping the appender
+    if (!isStarted()) {
+      return;
+    }
+    final long start = System.currentTimeMillis();
+    final long deadline = start + shutdownTimeout.getMilliseconds();
+    if (aggregator != null) {
+      aggregationTask.cancel(false);
+      aggregationTask = null;
+      // dispatch while still started so that queued summaries are accepted
+      dispatch(aggregator.drain(System.currentTimeMillis()));
+    }
+    super.stop();
+    final long pending = pendingCount();
+    final long failedBefore = metrics.getFailedCount() + metrics.getDroppedCount();
+    if (senders != null) {
+      stopSenders(deadline);
+      senders = null;
+    }
+    if (batcher != null) {
+      lingerTask.cancel(false);
+      lingerTask = null;
+      post(batcher.drain());
+    }
+    if (endpoints.length > 0) {
+      stopRoutes(deadline);
+    }
+    if (retryExecutor != null) {
+      stopRetries(deadline);
+    }
+    // posts already in flight when stopping are not counted as pending
+    final long lost = Math.min(pending,
+        unsentCount() + metrics.getFailedCount() + metrics.getDroppedCount() - failedBefore);
+    reportFlush(pending, lost, System.currentTimeMillis() - start);
+    if (spool != null) {
+      stopSpoolSender(deadline);
+    }
+    if (registeredShutdownHook != null) {
+      unregisterShutdownHook();
+    }
+    transport.stop();
+    metrics.setQueue(null);
+    metrics.setSpool(null);
+    if (mbeanName != null) {
+      unregisterMBean();
+    }
+  }
+
+  /**
+   * @return the number of messages not posted yet, excluding the spool
+   */
+  private long pendingCount() {
+    long pending = unsentCount();
+    if (batcher != null) {
+      pending += batcher.size();
+    }
+    return pending;
+  }
+
+  private long unsentCount() {
+    long unsent = pendingRetries.get();
+    if (queue != null) {
+      unsent += queue.size();
+    }
+    for (Endpoint endpoint : endpoints) {
+      unsent += endpoint.queue.size();
+    }
+    return unsent;
+  }
+
+  private void reportFlush(long pending, long lost, long elapsedMillis) {
+    flushedCount = pending - lost;
+    lostCount = lost;
+    if (lost > 0) {
+      addWarn("Flushed " + flushedCount + " of " + pending + " pending messages to Idobata in " + elapsedMillis
+          + " ms, " + lost + " messages were lost");
+    } else if (pending > 0) {
+      addInfo("Flushed " + pending + " pending messages to Idobata in " + elapsedMillis + " ms");
+    }
+  }
+
+  private void stopSenders(long deadline) {
+    draining = true;
+    if (postExecutor == null && senders.length < flushThreads && !queue.isEmpty()) {
+      startFlushThreads(Math.min(flushThreads - senders.length, queue.size()));
+    }
+    try {
+      for (Thread sender : senders) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining > 0) {
+          sender.join(remaining);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Thread sender : senders) {
+      if (sender.isAlive()) {
+        sender.interrupt();
+      }
+    }
+    if (postExecutor != null && !postExecutor.shutdown(Math.max(0, deadline - System.currentTimeMillis()))) {
+      addWarn("Timed out while waiting for the posts in flight to Idobata");
+    }
+    if (!queue.isEmpty()) {
+      addWarn("Timed out while draining the queue. " + queue.size() + " events were not posted to Idobata");
+    }
+    if (droppedCount.get() > 0) {
+      addWarn(droppedCount.get() + " events were dropped because the queue was full");
+    }
+  }
+
+  /**
+   * Adds senders draining the queue in parallel with the running ones.
+   */
+  private void startFlushThreads(int count) {
+    Thread[] senders = Arrays.copyOf(this.senders, this.senders.length + count);
+    for (int i = this.senders.length; i < senders.length; i++) {
+      senders[i] = new Thread(new Sender(), "IdobataAppender-" + getName() + "-flush-" + i);
+      senders[i].setDaemon(true);
+      senders[i].start();
+    }
+    this.senders = senders;
+  }
+
+  private void stopRoutes(long deadline) {
+    for (Endpoint endpoint : endpoints) {
+      endpoint.draining = true;
+    }
+    try {
+      for (Endpoint endpoint : endpoints) {
+        for (Thread sender : endpoint.senders) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining > 0) {
+            sender.join(remaining);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Endpoint endpoint : endpoints) {
+      for (Thread sender : endpoint.senders) {
+        if (sender.isAlive()) {
+          sender.interrupt();
+        }
+      }
+      if (endpoint.executor != null
+          && !endpoint.executor.shutdown(Math.max(0, deadline - System.currentTimeMillis()))) {
+        addWarn("Timed out while waiting for the posts in flight to [" + endpoint.url + "]");
+      }
+      if (!endpoint.queue.isEmpty()) {
+        addWarn("Timed out while draining the route to [" + endpoint.url + "]. " + endpoint.queue.size()
+            + " messages were not posted to Idobata");
+      }
+      if (endpoint.droppedCount.get() > 0) {
+        addWarn(endpoint.droppedCount.get() + " messages were dropped because the queue of the route to ["
+            + endpoint.url + "] was full");
+      }
+    }
+  }
+
+  private void stopSpoolSender(long deadline) {
+    spoolDraining = true;
+    try {
+      spoolSender.join(Math.max(1, deadline - System.currentTimeMillis()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (spoolSender.isAlive()) {
+      spoolSender.interrupt();
+      try {
+        spoolSender.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    spoolSender = null;
+    try {
+      if (!spool.isEmpty()) {
+        addInfo("Unsent messages are kept in the spool [" + spoolDirectory + "] until the next start");
+      }
     } catch (IOException e) {
-      addError("Error posting log to Idobata", e);
+      addWarn("Could not inspect spool [" + spoolDirectory + "]", e);
     }
+    spool.close();
   }
 
-  protected void postMessage(String message, boolean html) throws IOException {
-    HttpURLConnection connection = (HttpURLConnection) endpointUrl.openConnection();
-    connection.setDoOutput(true);
-    connection.setRequestMethod("POST");
+  private void stopRetries(long deadline) {
+    retryExecutor.shutdown();
+    try {
+      retryExecutor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (pendingRetries.get() > 0) {
+      addWarn(pendingRetries.get() + " messages awaiting retry were not posted to Idobata");
+    }
+  }
+
+  @Override
+  protected void append(ILoggingEvent eventObject) {
+    metrics.onAppend();
+    final Sampler sampler = this.sampler;
+    if (sampler != null && !sampler.sample(eventObject)) {
+      metrics.onDrop(DropReason.SAMPLED, 1);
+      return;
+    }
+    final RepeatAggregator aggregator = this.aggregator;
+    if (aggregator != null && !aggregator.accept(eventObject, System.currentTimeMillis())) {
+      return;
+    }
+    dispatch(eventObject);
+  }
+
+  private void dispatch(List<ILoggingEvent> events) {
+    for (ILoggingEvent event : events) {
+      dispatch(event);
+    }
+  }
+
+  private void dispatch(ILoggingEvent eventObject) {
+    final BoundedQueue<ILoggingEvent> queue = this.queue;
+    if (queue == null) {
+      send(eventObject);
+      return;
+    }
+    final ILoggingEvent deferred = defer(eventObject);
+    try {
+      if (!enqueue(queue, deferred)) {
+        onQueueFull();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      onQueueFull();
+    }
+  }
+
+  /**
+   * Detaches the event from the logging thread according to the {@code deferredProcessingPolicy}.
+   */
+  private ILoggingEvent defer(ILoggingEvent eventObject) {
+    if (deferredProcessingPolicy == DeferredProcessingPolicy.SNAPSHOT) {
+      return EventSnapshot.of(eventObject, snapshotMdcKeys);
+    }
+    eventObject.prepareForDeferredProcessing();
+    return eventObject;
+  }
+
+  private boolean enqueue(BoundedQueue<ILoggingEvent> queue, ILoggingEvent eventObject) throws InterruptedException {
+    switch (overflowPolicy) {
+    case DROP_NEWEST:
+      return queue.offer(eventObject);
+    case DROP_OLDEST:
+      if (queue.offerEvictingOldest(eventObject) != null) {
+        onQueueFull();
+      }
+      return true;
+    case DROP_BELOW_LEVEL:
+      if (!eventObject.getLevel().isGreaterOrEqual(overflowLevel)) {
+        return queue.offer(eventObject);
+      }
+      return put(queue, eventObject);
+    default:
+      return put(queue, eventObject);
+    }
+  }
+
+  private void onQueueFull() {
+    droppedCount.incrementAndGet();
+    metrics.onDrop(DropReason.QUEUE_FULL, 1);
+  }
+
+  private boolean put(BoundedQueue<ILoggingEvent> queue, ILoggingEvent eventObject) throws InterruptedException {
+    // give up once the appender is stopped, the senders may be gone by then
+    while (isStarted()) {
+      if (queue.offer(eventObject, 100, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void send(ILoggingEvent eventObject) {
+    String message = null;
+    boolean routed = false;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.route.matches(eventObject)) {
+        routed = true;
+        if (!acquire(endpoint, eventObject)) {
+          continue;
+        }
+        if (message == null) {
+          message = message(eventObject);
+        }
+        if (!endpoint.queue.offer(message)) {
+          endpoint.droppedCount.incrementAndGet();
+          metrics.onDrop(DropReason.QUEUE_FULL, 1);
+        }
+      }
+    }
+    if (routed || (endpoints.length > 0 && endpointUrl == null) || !acquire(defaultEndpoint, eventObject)) {
+      return;
+    }
+    if (message == null) {
+      message = message(eventObject);
+    }
+    if (batcher != null) {
+      post(batcher.add(message, System.currentTimeMillis()));
+    } else {
+      post(message);
+    }
+  }
+
+  /**
+   * Takes a permit from the rate limiter of the endpoint, counting the event as dropped if there is none.
+   */
+  private boolean acquire(Endpoint endpoint, ILoggingEvent eventObject) {
+    final TokenBucket rateLimiter = endpoint.rateLimiter;
+    if (rateLimiter == null
+        || rateLimiter.tryAcquire(eventObject.getLevel().isGreaterOrEqual(rateLimitPriorityLevel), System.nanoTime())) {
+      return true;
+    }
+    rateLimitedCount.incrementAndGet();
+    metrics.onDrop(DropReason.RATE_LIMITED, 1);
+    return false;
+  }
+
+  /**
+   * Renders the event followed by the notices.
+   */
+  private String message(ILoggingEvent eventObject) {
+    final String notices = notices();
+    final long start = System.nanoTime();
+    final String rendered = render(eventObject, notices);
+    metrics.onRender(System.nanoTime() - start);
+    return notices.length() > 0 ? rendered + notices : rendered;
+  }
+
+  private void post(List<String> batch) {
+    if (batch == null) {
+      return;
+    }
+    StringBuilder message = new StringBuilder();
+    append(message, layout.getPresentationHeader());
+    for (int i = 0; i < batch.size(); i++) {
+      if (i > 0 && layout instanceof IdobataLayout) {
+        append(message, ((IdobataLayout) layout).getSeparator());
+      }
+      message.append(batch.get(i));
+    }
+    append(message, layout.getPresentationFooter());
+    post(message.toString(), batch.size());
+  }
+
+  /**
+   * Renders the event within {@code maxPayloadBytes}, leaving room for the notices.
+   */
+  private String render(ILoggingEvent eventObject, String notices) {
+    if (maxPayloadBytes <= 0) {
+      return layout.doLayout(eventObject);
+    }
+    final int budget = Math.max(1, maxPayloadBytes - prefix().length() - FormEncoder.encodedLength(notices));
+    final String rendered;
+    if (layout instanceof IdobataLayout) {
+      rendered = ((IdobataLayout) layout).doLayout(eventObject, budget);
+      if (FormEncoder.encodedLength(rendered) <= budget) {
+        return rendered;
+      }
+      // the parts kept whole, such as the literal text of the template, exceed the budget
+    } else {
+      // other layouts cannot be rendered within a budget, cut their output instead
+      rendered = layout.doLayout(eventObject);
+    }
+    return rendered.substring(0, FormEncoder.fit(rendered, 0, rendered.length(), budget));
+  }
+
+  /**
+   * Describes the events dropped since the last message was sent.
+   * @return the notices to append to the next message, or an empty string
+   */
+  private String notices() {
+    if (circuitBreaker != null && circuitBreaker.isOpen()) {
+      // keep the counts for a message that is likely to get through
+      return "";
+    }
+    final long rateLimited = rateLimitedCount.getAndSet(0);
+    final long circuitOpenDropped = circuitOpenDroppedCount.getAndSet(0);
+    final long spoolDropped = spoolDroppedCount.getAndSet(0);
+    final String sampledOut = sampledOut();
+    if (rateLimited == 0 && circuitOpenDropped == 0 && spoolDropped == 0 && sampledOut == null) {
+      return "";
+    }
+    StringBuilder buffer = new StringBuilder();
+    if (rateLimited > 0) {
+      notice(buffer, rateLimited + " events were dropped by rate limiting");
+    }
+    if (circuitOpenDropped > 0) {
+      notice(buffer, circuitOpenDropped + " events were dropped while Idobata was unreachable");
+    }
+    if (spoolDropped > 0) {
+      notice(buffer, spoolDropped + " events were dropped because the spool was full");
+    }
+    if (sampledOut != null) {
+      notice(buffer, sampledOut + " events were sampled out");
+    }
+    return buffer.toString();
+  }
 
-    StringBuilder body = new StringBuilder();
+  /**
+   * @return the numbers of events sampled out per level such as {@code "120 INFO, 4 WARN"}, or {@code null}
+   */
+  private String sampledOut() {
+    final Sampler sampler = this.sampler;
+    if (sampler == null) {
+      return null;
+    }
+    final long[] counts = sampler.takeSampledOutCounts();
+    StringBuilder buffer = null;
+    for (int i = counts.length - 1; i >= 0; i--) {
+      if (counts[i] > 0) {
+        buffer = buffer == null ? new StringBuilder() : buffer.append(", ");
+        buffer.append(counts[i]).append(' ').append(Sampler.LEVELS[i]);
+      }
+    }
+    return buffer != null ? buffer.toString() : null;
+  }
+
+  private void notice(StringBuilder buffer, String notice) {
     if (html) {
-      body.append("format=html&");
-    }
-    body.append("source=").append(URLEncoder.encode(message, ENCODE));
-    final byte[] content = body.toString().getBytes(ENCODE);
-    connection.setFixedLengthStreamingMode(content.length);
-    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-    OutputStream out = null;
-    InputStream in = null;
+      buffer.append("<p><i>").append(notice).append("</i></p>");
+    } else {
+      buffer.append(CoreConstants.LINE_SEPARATOR).append(notice);
+    }
+  }
+
+  private static int encodedLength(String s) {
+    return s != null ? FormEncoder.encodedLength(s) : 0;
+  }
+
+  private static void append(StringBuilder buffer, String s) {
+    if (s != null) {
+      buffer.append(s);
+    }
+  }
+
+  private void post(String message) {
+    post(message, 1);
+  }
+
+  private void post(String message, int events) {
     try {
-      out = connection.getOutputStream();
-      out.write(content);
-      out.flush();
-
-      final int status = connection.getResponseCode();
-      final String encoding = connection.getContentEncoding();
-      if (status < 400) {
-        in = connection.getInputStream();
-        toString(in, encoding);
+      if (events == 1) {
+        postMessage(message, html);
       } else {
-        in = connection.getErrorStream();
-        addError("Error posting log to Idobata:" + toString(in, encoding));
+        postMessage(message, html, events);
+      }
+    } catch (IOException e) {
+      addError("Error posting log to Idobata", e);
+    }
+  }
+
+  protected void postMessage(String message, boolean html) throws IOException {
+    postMessage(message, html, 1);
+  }
+
+  /**
+   * Posts a message holding several events, e.g. a batch.
+   * @param events number of events in the message
+   */
+  protected void postMessage(String message, boolean html, int events) throws IOException {
+    final long start = System.nanoTime();
+    final byte[] content = FormEncoder.encode(prefix(), message);
+    metrics.onEncode(System.nanoTime() - start, content.length);
+    final FileSpool spool = this.spool;
+    if (spool != null) {
+      try {
+        if (!spool.append(content, events)) {
+          spoolDroppedCount.addAndGet(events);
+          metrics.onDrop(DropReason.SPOOL_FULL, events);
+        }
+        return;
+      } catch (IOException e) {
+        addError("Error writing log to spool [" + spoolDirectory + "], posting it directly", e);
       }
+    }
+    deliver(new PendingPost(defaultEndpoint, content, events, System.currentTimeMillis()));
+  }
+
+  /**
+   * Posts a message of a route, bypassing the spool.
+   */
+  private void postMessage(Endpoint endpoint, String message) throws IOException {
+    final long start = System.nanoTime();
+    final byte[] content = FormEncoder.encode(prefix(), message);
+    metrics.onEncode(System.nanoTime() - start, content.length);
+    deliver(new PendingPost(endpoint, content, 1, System.currentTimeMillis()));
+  }
+
+  private String prefix() {
+    return html ? "format=html&source=" : "source=";
+  }
+
+  /**
+   * Posts the content, scheduling a retry if the attempt failed transiently.
+   * @throws IOException if the attempt failed and will not be retried
+   */
+  private void deliver(PendingPost post) throws IOException {
+    final CircuitBreaker circuitBreaker = post.endpoint.circuitBreaker;
+    final long now = System.currentTimeMillis();
+    if (circuitBreaker == null) {
+      deliver(post, 0, now);
+      return;
+    }
+    final long ticket = circuitBreaker.tryAcquire(now);
+    if (ticket == 0) {
+      final long remaining = circuitBreaker.remainingOpenMillis(now);
+      if (!scheduleRetry(post, remaining)) {
+        circuitOpenDroppedCount.addAndGet(post.events);
+        metrics.onDrop(DropReason.CIRCUIT_OPEN, post.events);
+        addError("Dropped log message, posts to " + post.endpoint.url + " are suspended for another " + remaining
+            + " ms");
+      }
+      return;
+    }
+    try {
+      deliver(post, ticket, now);
     } finally {
-      close(out);
-      close(in);
+      circuitBreaker.release(ticket);
     }
   }
 
-  private void close(Closeable closeable) throws IOException {
-    if (closeable != null) {
-      closeable.close();
+  /**
+   * Makes one attempt with the ticket given by the circuit breaker of the endpoint.
+   */
+  private void deliver(PendingPost post, long ticket, long now) throws IOException {
+    final CircuitBreaker circuitBreaker = post.endpoint.circuitBreaker;
+    post.attempts++;
+    final TransportResponse response;
+    try {
+      response = post(post.endpoint.url, post.content, post.events);
+    } catch (IOException e) {
+      onFailure(circuitBreaker, ticket, now);
+      if (scheduleRetry(post, -1)) {
+        return;
+      }
+      metrics.onFailure(post.events);
+      throw e;
+    }
+    if (isTransient(response)) {
+      if (scheduleRetry(post, onTransientFailure(post.endpoint, ticket, response, now))) {
+        return;
+      }
+    } else {
+      onSuccess(circuitBreaker, ticket);
+    }
+    if (response.isError()) {
+      metrics.onFailure(post.events);
+      addError("Error posting log to Idobata:" + response.getBody());
     }
   }
 
-  String toString(InputStream in, String encoding) throws IOException {
-    ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
-    byte[] buffer = new byte[1024];
-    int count = -1;
-    while ((count = in.read(buffer, 0, buffer.length)) != -1) {
-      responseBody.write(buffer, 0, count);
+  /**
+   * Sends one request and records its status and latency.
+   * @param events number of events in the content
+   */
+  private TransportResponse post(URL url, byte[] content, int events) throws IOException {
+    final long start = System.nanoTime();
+    final TransportResponse response;
+    try {
+      response = transport.post(url, content);
+    } catch (IOException e) {
+      metrics.onPost(-1, System.nanoTime() - start);
+      throw e;
+    }
+    metrics.onPost(response.getStatus(), System.nanoTime() - start);
+    if (!response.isError()) {
+      metrics.onSent(events, content.length);
+    }
+    return response;
+  }
+
+  private static boolean isTransient(TransportResponse response) {
+    return response.getStatus() == 429 || response.getStatus() >= 500;
+  }
+
+  /**
+   * Records a 429 or 5xx response from the endpoint, pausing its rate limiter on 429.
+   * @return the delay requested by {@code Retry-After}, or {@code -1}
+   */
+  private long onTransientFailure(Endpoint endpoint, long ticket, TransportResponse response, long now) {
+    onFailure(endpoint.circuitBreaker, ticket, now);
+    final long retryAfter = response.getRetryAfterMillis(now);
+    final TokenBucket rateLimiter = endpoint.rateLimiter;
+    if (response.getStatus() == 429 && rateLimiter != null) {
+      rateLimiter.pauseUntil(System.nanoTime()
+          + TimeUnit.MILLISECONDS.toNanos(retryAfter >= 0 ? retryAfter : rateLimitPeriod.getMilliseconds()));
+    }
+    return retryAfter;
+  }
+
+  private void onSuccess(CircuitBreaker circuitBreaker, long ticket) {
+    if (circuitBreaker != null && circuitBreaker.onSuccess(ticket)) {
+      addInfo("Idobata is reachable again, resumed posting logs");
+    }
+  }
+
+  private void onFailure(CircuitBreaker circuitBreaker, long ticket, long now) {
+    if (circuitBreaker != null && circuitBreaker.onFailure(ticket, now)) {
+      addWarn("Posting log to Idobata failed " + circuitBreakerThreshold + " times in a row, suspending posts for "
+          + circuitBreakerOpenTime);
+    }
+  }
+
+  /**
+   * Schedules another attempt unless the retry budget is exhausted.
+   * @param minDelay minimum delay in milliseconds, or a negative value to use the backoff alone
+   * @return {@code true} if a retry was scheduled
+   */
+  private boolean scheduleRetry(final PendingPost post, long minDelay) {
+    final ScheduledExecutorService retryExecutor = this.retryExecutor;
+    if (retryExecutor == null || post.attempts >= maxAttempts) {
+      return false;
+    }
+    final long delay = Math.max(minDelay, backoff.delay(Math.max(post.attempts, 1), random));
+    if (System.currentTimeMillis() + delay - post.createdAt > retryMaxAge.getMilliseconds()) {
+      return false;
+    }
+    if (pendingRetries.incrementAndGet() > maxPendingRetries) {
+      pendingRetries.decrementAndGet();
+      return false;
+    }
+    try {
+      retryExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          pendingRetries.decrementAndGet();
+          try {
+            deliver(post);
+          } catch (IOException e) {
+            addError("Error posting log to Idobata", e);
+          }
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (RejectedExecutionException e) {
+      pendingRetries.decrementAndGet();
+      return false;
     }
-    return responseBody.toString(encoding != null ? encoding : "UTF-8");
   }
 
   public URL getEndpointUrl() {
@@ -109,6 +1152,14 @@ public class IdobataAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
     this.layout = layout;
   }
 
+  public Transport getTransport() {
+    return transport;
+  }
+
+  public void setTransport(Transport transport) {
+    this.transport = transport;
+  }
+
   public boolean isHtml() {
     return html;
   }
@@ -116,4 +1167,570 @@ public class IdobataAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
   public void setHtml(boolean html) {
     this.html = html;
   }
+
+  public boolean isAsync() {
+    return async;
+  }
+
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public int getSenderThreads() {
+    return senderThreads;
+  }
+
+  public void setSenderThreads(int senderThreads) {
+    this.senderThreads = senderThreads;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Runs each post on a virtual thread, falling back to a pool of platform threads
+   * on runtimes without virtual threads. The number of posts in flight is limited by
+   * {@code senderThreads}, and by {@code maxInFlight} for routes.
+   * @param virtualThreads {@code true} to post from virtual threads
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public Level getOverflowLevel() {
+    return overflowLevel;
+  }
+
+  public void setOverflowLevel(Level overflowLevel) {
+    this.overflowLevel = overflowLevel;
+  }
+
+  public Duration getShutdownTimeout() {
+    return shutdownTimeout;
+  }
+
+  /**
+   * Sets how long {@link #stop()} waits in total for the pending messages to be posted.
+   * @param shutdownTimeout deadline of stopping
+   */
+  public void setShutdownTimeout(Duration shutdownTimeout) {
+    this.shutdownTimeout = shutdownTimeout;
+  }
+
+  public int getFlushThreads() {
+    return flushThreads;
+  }
+
+  /**
+   * Sets the number of threads posting the queued events in parallel while stopping,
+   * when it is greater than {@code senderThreads}. Events may then be posted out of order.
+   * @param flushThreads threads draining the queue on stop
+   */
+  public void setFlushThreads(int flushThreads) {
+    this.flushThreads = flushThreads;
+  }
+
+  public boolean isShutdownHook() {
+    return shutdownHook;
+  }
+
+  /**
+   * Registers a JVM shutdown hook stopping this appender while it is started, so that
+   * the pending messages are flushed even if the logger context is not stopped.
+   * @param shutdownHook {@code true} to register a shutdown hook
+   */
+  public void setShutdownHook(boolean shutdownHook) {
+    this.shutdownHook = shutdownHook;
+  }
+
+  public DeferredProcessingPolicy getDeferredProcessingPolicy() {
+    return deferredProcessingPolicy;
+  }
+
+  /**
+   * Sets how queued events are captured when {@code async} is enabled.
+   * {@link DeferredProcessingPolicy#SNAPSHOT} is cheaper, but the layout only sees
+   * the MDC entries added by {@link #addMdcKey(String)}, rendered by {@link IdobataLayout} or used by the routes.
+   * @param deferredProcessingPolicy policy of the queued events
+   */
+  public void setDeferredProcessingPolicy(DeferredProcessingPolicy deferredProcessingPolicy) {
+    this.deferredProcessingPolicy = deferredProcessingPolicy;
+  }
+
+  public List<String> getMdcKeys() {
+    return mdcKeys;
+  }
+
+  /**
+   * Adds an MDC key whose entry is kept in the snapshots of queued events.
+   * @param mdcKey MDC key
+   */
+  public void addMdcKey(String mdcKey) {
+    this.mdcKeys.add(mdcKey);
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getBatchMaxBytes() {
+    return batchMaxBytes;
+  }
+
+  /**
+   * Sets the maximum size of the form encoded request body of a batch, {@code 0} for no limit.
+   * A message larger than that on its own is posted alone.
+   * @param batchMaxBytes maximum size in bytes
+   */
+  public void setBatchMaxBytes(int batchMaxBytes) {
+    this.batchMaxBytes = batchMaxBytes;
+  }
+
+  public Duration getLingerTime() {
+    return lingerTime;
+  }
+
+  public void setLingerTime(Duration lingerTime) {
+    this.lingerTime = lingerTime;
+  }
+
+  public Duration getAggregationWindow() {
+    return aggregationWindow;
+  }
+
+  /**
+   * Sets the window in which repeated events are suppressed.
+   * Aggregation is disabled when the window is not set.
+   * @param aggregationWindow window of aggregation
+   */
+  public void setAggregationWindow(Duration aggregationWindow) {
+    this.aggregationWindow = aggregationWindow;
+  }
+
+  public int getAggregationMaxKeys() {
+    return aggregationMaxKeys;
+  }
+
+  public void setAggregationMaxKeys(int aggregationMaxKeys) {
+    this.aggregationMaxKeys = aggregationMaxKeys;
+  }
+
+  public int getRateLimit() {
+    return rateLimit;
+  }
+
+  /**
+   * Sets the number of events posted per {@code rateLimitPeriod}.
+   * Rate limiting is disabled when the limit is not positive.
+   * @param rateLimit events per period
+   */
+  public void setRateLimit(int rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  public Duration getRateLimitPeriod() {
+    return rateLimitPeriod;
+  }
+
+  public void setRateLimitPeriod(Duration rateLimitPeriod) {
+    this.rateLimitPeriod = rateLimitPeriod;
+  }
+
+  public int getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  /**
+   * Sets the number of events posted at once, defaults to {@code rateLimit}.
+   * @param rateLimitBurst maximum burst
+   */
+  public void setRateLimitBurst(int rateLimitBurst) {
+    this.rateLimitBurst = rateLimitBurst;
+  }
+
+  public double getRateLimitReservedRatio() {
+    return rateLimitReservedRatio;
+  }
+
+  /**
+   * Sets the ratio of the burst only usable by events at or above {@code rateLimitPriorityLevel}.
+   * @param rateLimitReservedRatio ratio between 0 and 1
+   */
+  public void setRateLimitReservedRatio(double rateLimitReservedRatio) {
+    this.rateLimitReservedRatio = rateLimitReservedRatio;
+  }
+
+  public Level getRateLimitPriorityLevel() {
+    return rateLimitPriorityLevel;
+  }
+
+  public void setRateLimitPriorityLevel(Level rateLimitPriorityLevel) {
+    this.rateLimitPriorityLevel = rateLimitPriorityLevel;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sets the number of attempts to post a message, retries are disabled when it is one.
+   * @param maxAttempts maximum number of attempts
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public Duration getRetryInitialDelay() {
+    return retryInitialDelay;
+  }
+
+  public void setRetryInitialDelay(Duration retryInitialDelay) {
+    this.retryInitialDelay = retryInitialDelay;
+  }
+
+  public Duration getRetryMaxDelay() {
+    return retryMaxDelay;
+  }
+
+  public void setRetryMaxDelay(Duration retryMaxDelay) {
+    this.retryMaxDelay = retryMaxDelay;
+  }
+
+  public Duration getRetryMaxAge() {
+    return retryMaxAge;
+  }
+
+  /**
+   * Sets how long after the first attempt a message may still be retried.
+   * @param retryMaxAge maximum age of retried messages
+   */
+  public void setRetryMaxAge(Duration retryMaxAge) {
+    this.retryMaxAge = retryMaxAge;
+  }
+
+  public int getMaxPendingRetries() {
+    return maxPendingRetries;
+  }
+
+  public void setMaxPendingRetries(int maxPendingRetries) {
+    this.maxPendingRetries = maxPendingRetries;
+  }
+
+  public int getCircuitBreakerThreshold() {
+    return circuitBreakerThreshold;
+  }
+
+  /**
+   * Sets the number of consecutive failures opening the circuit breaker.
+   * The circuit breaker is disabled when the threshold is not positive, which is the default.
+   * @param circuitBreakerThreshold consecutive failures
+   */
+  public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+  }
+
+  public Duration getCircuitBreakerOpenTime() {
+    return circuitBreakerOpenTime;
+  }
+
+  public void setCircuitBreakerOpenTime(Duration circuitBreakerOpenTime) {
+    this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+  }
+
+  public String getSpoolDirectory() {
+    return spoolDirectory;
+  }
+
+  /**
+   * Sets the directory of the spool. Messages are posted directly when it is not set.
+   * @param spoolDirectory path of the spool directory
+   */
+  public void setSpoolDirectory(String spoolDirectory) {
+    this.spoolDirectory = spoolDirectory;
+  }
+
+  public FileSize getSpoolSegmentSize() {
+    return spoolSegmentSize;
+  }
+
+  public void setSpoolSegmentSize(FileSize spoolSegmentSize) {
+    this.spoolSegmentSize = spoolSegmentSize;
+  }
+
+  public FileSize getSpoolMaxSize() {
+    return spoolMaxSize;
+  }
+
+  public void setSpoolMaxSize(FileSize spoolMaxSize) {
+    this.spoolMaxSize = spoolMaxSize;
+  }
+
+  public SpoolEvictionPolicy getSpoolEvictionPolicy() {
+    return spoolEvictionPolicy;
+  }
+
+  public void setSpoolEvictionPolicy(SpoolEvictionPolicy spoolEvictionPolicy) {
+    this.spoolEvictionPolicy = spoolEvictionPolicy;
+  }
+
+  public List<Route> getRoutes() {
+    return routes;
+  }
+
+  /**
+   * Adds a route posting the matching events to its own endpoint.
+   * @param route route to add
+   */
+  public void addRoute(Route route) {
+    this.routes.add(route);
+  }
+
+  public List<SamplingRule> getSamplingRules() {
+    return samplingRules;
+  }
+
+  /**
+   * Adds a rule posting only a ratio of the events of a level and of some loggers.
+   * The events sampled out are counted in the next message posted.
+   * @param samplingRule rule to add
+   */
+  public void addSamplingRule(SamplingRule samplingRule) {
+    this.samplingRules.add(samplingRule);
+  }
+
+  public int getMaxPayloadBytes() {
+    return maxPayloadBytes;
+  }
+
+  /**
+   * Sets the maximum size of the form encoded request body of one event, {@code 0} for no limit.
+   * {@link IdobataLayout} keeps the header of the event and fills the rest with the message,
+   * the stack trace and the system properties, output of other layouts is cut.
+   * Batches are limited by {@code batchMaxBytes}.
+   * @param maxPayloadBytes maximum size in bytes
+   */
+  public void setMaxPayloadBytes(int maxPayloadBytes) {
+    this.maxPayloadBytes = maxPayloadBytes;
+  }
+
+  /**
+   * @return the metrics of this appender, kept across restarts
+   */
+  public IdobataMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Adds a listener receiving every measurement of this appender.
+   * @param listener listener to add
+   */
+  public void addMetricsListener(MetricsListener listener) {
+    metrics.addListener(listener);
+  }
+
+  public boolean isJmxEnabled() {
+    return jmxEnabled;
+  }
+
+  /**
+   * Registers the metrics as an MBean named
+   * {@code com.github.fossamagna.logback.idobata:type=IdobataAppender,name="<appender name>"}
+   * to the platform MBean server while the appender is started.
+   * @param jmxEnabled {@code true} to register the metrics MBean
+   */
+  public void setJmxEnabled(boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+  }
+
+  long getCircuitOpenDroppedCount() {
+    return circuitOpenDroppedCount.get();
+  }
+
+  long getRateLimitedCount() {
+    return rateLimitedCount.get();
+  }
+
+  long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return the number of pending messages posted by the last {@link #stop()}
+   */
+  long getFlushedCount() {
+    return flushedCount;
+  }
+
+  /**
+   * @return the number of pending messages lost by the last {@link #stop()}
+   */
+  long getLostCount() {
+    return lostCount;
+  }
+
+  Thread getRegisteredShutdownHook() {
+    return registeredShutdownHook;
+  }
+
+  /**
+   * Posts the spooled messages in order, retrying the oldest one until it is delivered.
+   */
+  private class SpoolSender implements Runnable {
+    @Override
+    public void run() {
+      int failures = 0;
+      try {
+        while (!spoolDraining || !spool.isEmpty()) {
+          byte[] content = spool.awaitNext(100);
+          if (content == null) {
+            continue;
+          }
+          final long now = System.currentTimeMillis();
+          final long ticket = circuitBreaker != null ? circuitBreaker.tryAcquire(now) : 0;
+          if (circuitBreaker != null && ticket == 0) {
+            pause(circuitBreaker.remainingOpenMillis(now));
+            continue;
+          }
+          long delay;
+          try {
+            final int events = spool.peekedEvents();
+            TransportResponse response = post(endpointUrl, content, events);
+            if (!isTransient(response)) {
+              onSuccess(circuitBreaker, ticket);
+              if (response.isError()) {
+                metrics.onFailure(events);
+                addError("Error posting log to Idobata:" + response.getBody());
+              }
+              spool.acknowledge();
+              failures = 0;
+              continue;
+            }
+            delay = onTransientFailure(defaultEndpoint, ticket, response, now);
+          } catch (IOException e) {
+            onFailure(circuitBreaker, ticket, now);
+            delay = -1;
+          } finally {
+            if (circuitBreaker != null) {
+              circuitBreaker.release(ticket);
+            }
+          }
+          pause(Math.max(delay, backoff.delay(++failures, random)));
+        }
+      } catch (InterruptedException e) {
+        // stop() gave up waiting for the spool to drain
+      } catch (IOException e) {
+        addError("Error reading spool [" + spoolDirectory + "]", e);
+      }
+    }
+
+    private void pause(long millis) throws InterruptedException {
+      // wake up early when stopping, the spool is kept for the next start
+      final long deadline = System.currentTimeMillis() + millis;
+      long remaining = millis;
+      while (remaining > 0 && !spoolDraining) {
+        Thread.sleep(Math.min(remaining, 100));
+        remaining = deadline - System.currentTimeMillis();
+      }
+      if (spoolDraining && remaining > 0) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Posts the messages of one route.
+   */
+  private class RouteSender implements Runnable {
+
+    private final Endpoint endpoint;
+
+    RouteSender(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!endpoint.draining || !endpoint.queue.isEmpty()) {
+          final String message = endpoint.queue.poll(100, TimeUnit.MILLISECONDS);
+          if (message == null) {
+            continue;
+          }
+          if (endpoint.executor == null) {
+            post(message);
+            continue;
+          }
+          endpoint.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              post(message);
+            }
+          });
+        }
+      } catch (InterruptedException e) {
+        // stop() gave up waiting for the queue to drain
+      } catch (RejectedExecutionException e) {
+        // stop() gave up waiting for the posts in flight
+      }
+    }
+
+    private void post(String message) {
+      try {
+        postMessage(endpoint, message);
+      } catch (IOException e) {
+        addError("Error posting log to Idobata [" + endpoint.url + "]", e);
+      }
+    }
+  }
+
+  private class Sender implements Runnable {
+    @Override
+    public void run() {
+      final BoundedQueue<ILoggingEvent> queue = IdobataAppender.this.queue;
+      try {
+        while (!draining || !queue.isEmpty()) {
+          final ILoggingEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (event == null) {
+            continue;
+          }
+          final PostExecutor postExecutor = IdobataAppender.this.postExecutor;
+          if (postExecutor == null) {
+            send(event);
+            continue;
+          }
+          postExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              send(event);
+            }
+          });
+        }
+      } catch (InterruptedException e) {
+        // stop() gave up waiting for the queue to drain
+      } catch (RejectedExecutionException e) {
+        // stop() gave up waiting for the posts in flight
+      }
+    }
+  }
 }
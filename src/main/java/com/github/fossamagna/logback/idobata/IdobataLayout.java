@@ -2,9 +2,10 @@ package com.github.fossamagna.logback.idobata;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -13,12 +14,29 @@ import java.util.TreeSet;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
-import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.LayoutBase;
-import ch.qos.logback.core.helpers.Transform;
+import ch.qos.logback.core.util.Duration;
 
 /**
  * Default Layout for Idobata
+ *
+ * The output is defined by a template compiled once at {@link #start()}, see
+ * {@link #setTemplate(String)} for its placeholders.
+ * Rendering reuses a per-thread buffer, precomputed level labels and a caching
+ * thread-safe date formatter, so the layout can be called concurrently.
+ * The system properties table is rendered once and reused until the
+ * {@link RefreshPolicy} decides to render it again.
+ * Text is escaped by {@link HtmlEscaper}, which appends text without markup
+ * characters in bulk. The escaped thread names, logger names and level labels
+ * are rendered once, along with their encoded length, and kept in size-capped
+ * {@link FragmentCache}s, one for thread names and one for logger names, so
+ * that thread pools churning names cannot evict the loggers.
+ * Stack traces are escaped and can be compacted by depth, omitted packages
+ * and size, see {@link StackTraceCompactor}.
+ * The MDC entries added by {@link #addMdcKey(String)} and the markers are rendered
+ * by {@code %context} only when the event is laid out for posting, from fragments
+ * cached per key and value, see {@link ContextRenderer}.
  * @author fossamagna
  */
 public class IdobataLayout extends LayoutBase<ILoggingEvent> {
@@ -26,6 +44,19 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
   private static final Map<Integer, String> DEFAULT_LEVEL_TO_BACKGROUND_COLOR;
   private static final Map<Integer, String> DEFAULT_LEVEL_TO_COLOR;
   private static final DateFormat DEFAULT_DATEFORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+  private static final int DEFAULT_BUFFER_CAPACITY = 1024;
+  private static final String STACKTRACE_OPEN = "<pre lang=\"java\"><code>";
+  private static final String STACKTRACE_CLOSE = "</code></pre>";
+  private static final String TRUNCATED_MESSAGE = "...";
+  private static final int MAX_RETAINED_BUFFER_CAPACITY = 64 * 1024;
+  private static final int MAX_CACHED_NAMES = 1024;
+  private static final long MAX_CACHED_NAME_CHARS = 64 * 1024;
+  private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(DEFAULT_BUFFER_CAPACITY);
+    }
+  };
 
   static {
     Map<Integer, String> levelToBackgroundColor = new HashMap<Integer, String>();
@@ -48,32 +79,170 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
   private Map<Integer, String> levelToBackgroundColor = new HashMap<Integer, String>(DEFAULT_LEVEL_TO_BACKGROUND_COLOR);
   private Map<Integer, String> levelToColor = new HashMap<Integer, String>(DEFAULT_LEVEL_TO_COLOR);
   private DateFormat dateFormat = DEFAULT_DATEFORMAT;
+  private volatile CachingDateFormat cachingDateFormat = new CachingDateFormat(DEFAULT_DATEFORMAT);
+  private volatile FragmentCache.Fragment[] levelLabels = levelLabels();
   private boolean outputSystemProperties = true;
+  private RefreshPolicy systemPropertiesRefreshPolicy = RefreshPolicy.FINGERPRINT;
+  private Duration systemPropertiesRefreshInterval = Duration.buildByMinutes(1);
+  private Duration systemPropertiesCheckInterval = Duration.buildBySeconds(1);
+  private final List<String> systemPropertyIncludes = new ArrayList<String>();
+  private final List<String> systemPropertyExcludes = new ArrayList<String>();
+  private volatile RenderedProperties renderedSystemProperties;
+  private volatile long systemPropertiesCheckedAt;
+  private String separator = "<hr>";
+  private int stackTraceMaxDepth;
+  private int stackTraceMaxBytes;
+  private int stackTraceCacheSize = 256;
+  private final List<String> stackTraceOmittedPackages = new ArrayList<String>();
+  private volatile StackTraceCompactor stackTraceCompactor = stackTraceCompactor();
+  private final List<String> mdcKeys = new ArrayList<String>();
+  private boolean outputMarkers;
+  private ContextStyle contextStyle = ContextStyle.BADGES;
+  private int contextCacheSize = 256;
+  private volatile ContextRenderer contextRenderer = contextRenderer();
+  private String template;
+  private volatile LayoutTemplate compiledTemplate = LayoutTemplate.DEFAULT;
+  private final FragmentCache threadNames = new FragmentCache(MAX_CACHED_NAMES, MAX_CACHED_NAME_CHARS);
+  private final FragmentCache loggerNames = new FragmentCache(MAX_CACHED_NAMES, MAX_CACHED_NAME_CHARS);
+
+  public IdobataLayout() {
+    setPresentationHeader("<div>");
+    setPresentationFooter("</div>");
+  }
+
+  @Override
+  public void start() {
+    try {
+      compiledTemplate = template != null ? LayoutTemplate.compile(template) : LayoutTemplate.DEFAULT;
+    } catch (IllegalArgumentException e) {
+      addError("Invalid template [" + template + "]", e);
+      return;
+    }
+    super.start();
+  }
 
   /**
    * {@inheritDoc}
    */
   @Override
   public String doLayout(ILoggingEvent event) {
-    StringBuilder buffer = new StringBuilder();
-    buffer.append("<p>");
-    buffer.append(Transform.escapeTags(format(event.getTimeStamp())));
-    buffer.append(" ");
-    level(event, buffer);
-    buffer.append(" [");
-    buffer.append(Transform.escapeTags(event.getThreadName()));
-    buffer.append("] ");
-    buffer.append(Transform.escapeTags(event.getLoggerName()));
-    buffer.append(" - ");
-    buffer.append("<b>").append(Transform.escapeTags(event.getFormattedMessage())).append("</b>");
+    return doLayout(event, 0);
+  }
+
+  /**
+   * Renders the event so that its form encoded length does not exceed {@code maxBytes}.
+   *
+   * The timestamp, level, thread, logger and literal text of the template are
+   * always kept. The message, the MDC and context, the stack trace and the system properties
+   * then fill the remaining budget in this order. A part that does not fit is cut at a point where its
+   * markup can be closed: the message between characters, the MDC and context between entries,
+   * the stack trace between lines and the system properties between rows.
+   * @param maxBytes maximum form encoded length, or {@code 0} for no limit
+   */
+  String doLayout(ILoggingEvent event, int maxBytes) {
+    StringBuilder buffer = BUFFERS.get();
+    buffer.setLength(0);
+    try {
+      if (maxBytes > 0) {
+        doLayout(event, buffer, maxBytes);
+      } else {
+        doLayout(event, buffer);
+      }
+      return buffer.toString();
+    } finally {
+      if (buffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+        BUFFERS.set(new StringBuilder(DEFAULT_BUFFER_CAPACITY));
+      }
+    }
+  }
+
+  void doLayout(ILoggingEvent event, StringBuilder buffer) {
+    compiledTemplate.append(this, event, buffer);
+  }
+
+  void doLayout(ILoggingEvent event, StringBuilder buffer, int maxBytes) {
+    compiledTemplate.append(this, event, buffer, maxBytes);
+  }
+
+  /**
+   * Appends the escaped message, cut to fit in {@code remaining} bytes.
+   * @return the encoded length appended
+   */
+  long message(ILoggingEvent event, StringBuilder buffer, long remaining) {
+    final int start = buffer.length();
+    HtmlEscaper.escape(event.getFormattedMessage(), buffer);
+    final long length = FormEncoder.encodedLength(buffer, start, buffer.length());
+    if (length <= remaining) {
+      return length;
+    }
+    final long available = remaining - FormEncoder.encodedLength(TRUNCATED_MESSAGE);
+    if (available < 0) {
+      buffer.setLength(start);
+      return 0;
+    }
+    int end = FormEncoder.fit(buffer, start, buffer.length(), available);
+    // do not split an entity written by the escaping
+    final int entity = buffer.lastIndexOf("&", end - 1);
+    if (entity >= start && buffer.indexOf(";", entity) >= end) {
+      end = entity;
+    }
+    buffer.setLength(end);
+    buffer.append(TRUNCATED_MESSAGE);
+    return FormEncoder.encodedLength(buffer, start, buffer.length());
+  }
+
+  /**
+   * Appends the stack trace, cut between lines to fit in {@code remaining} bytes.
+   * @return the encoded length appended
+   */
+  long stacktrace(ILoggingEvent event, StringBuilder buffer, long remaining) {
+    final int start = buffer.length();
     stacktrace(event, buffer);
-    systemProperties(buffer);
-    buffer.append("</p>");
-    return buffer.toString();
+    final long length = FormEncoder.encodedLength(buffer, start, buffer.length());
+    if (length <= remaining) {
+      return length;
+    }
+    final int codeStart = start + STACKTRACE_OPEN.length();
+    long available = remaining - FormEncoder.encodedLength(STACKTRACE_OPEN)
+        - FormEncoder.encodedLength(StackTraceCompactor.TRUNCATED + STACKTRACE_CLOSE);
+    if (available < 0) {
+      buffer.setLength(start);
+      return 0;
+    }
+    final int codeEnd = buffer.length() - STACKTRACE_CLOSE.length();
+    int end = codeStart;
+    while (end < codeEnd) {
+      int lineEnd = buffer.indexOf(CoreConstants.LINE_SEPARATOR, end);
+      lineEnd = lineEnd < 0 || lineEnd >= codeEnd ? codeEnd : lineEnd + CoreConstants.LINE_SEPARATOR.length();
+      available -= FormEncoder.encodedLength(buffer, end, lineEnd);
+      if (available < 0) {
+        break;
+      }
+      end = lineEnd;
+    }
+    buffer.setLength(end);
+    buffer.append(StackTraceCompactor.TRUNCATED).append(STACKTRACE_CLOSE);
+    return FormEncoder.encodedLength(buffer, start, buffer.length());
+  }
+
+  FragmentCache.Fragment threadName(ILoggingEvent event) {
+    return threadNames.get(event.getThreadName());
+  }
+
+  FragmentCache.Fragment loggerName(ILoggingEvent event) {
+    return loggerNames.get(event.getLoggerName());
+  }
+
+  FragmentCache getThreadNames() {
+    return threadNames;
+  }
+
+  FragmentCache getLoggerNames() {
+    return loggerNames;
   }
 
   String format(long timestamp) {
-    return dateFormat.format(new Date(timestamp));
+    return cachingDateFormat.format(timestamp);
   }
 
   String toBackgroundColor(Level level) {
@@ -85,24 +254,64 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
   }
 
   void level(ILoggingEvent event, StringBuilder buffer) {
+    buffer.append(levelLabel(event).html);
+  }
+
+  FragmentCache.Fragment levelLabel(ILoggingEvent event) {
     Level level = event.getLevel();
-    buffer.append(String.format(
-        "<span class=\"label\" style=\"background-color: %s; color: %s;\">%s</span>",
-        toBackgroundColor(level),
-        toColor(level),
-        level)
-    );
+    int index = levelIndex(level);
+    return index >= 0 ? levelLabels[index] : levelLabel(level);
+  }
+
+  private FragmentCache.Fragment levelLabel(Level level) {
+    return new FragmentCache.Fragment("<span class=\"label\" style=\"background-color: " + toBackgroundColor(level)
+        + "; color: " + toColor(level) + ";\">" + level + "</span>");
+  }
+
+  private FragmentCache.Fragment[] levelLabels() {
+    Level[] levels = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+    FragmentCache.Fragment[] labels = new FragmentCache.Fragment[levels.length];
+    for (Level level : levels) {
+      labels[levelIndex(level)] = levelLabel(level);
+    }
+    return labels;
+  }
+
+  static int levelIndex(Level level) {
+    switch (level.toInt()) {
+    case Level.TRACE_INT:
+      return 0;
+    case Level.DEBUG_INT:
+      return 1;
+    case Level.INFO_INT:
+      return 2;
+    case Level.WARN_INT:
+      return 3;
+    case Level.ERROR_INT:
+      return 4;
+    default:
+      return -1;
+    }
   }
 
   void stacktrace(ILoggingEvent event, StringBuilder buffer) {
     IThrowableProxy tp = event.getThrowableProxy();
     if (tp != null) {
-      buffer.append("<pre lang=\"java\"><code>");
-      buffer.append(ThrowableProxyUtil.asString(tp));
-      buffer.append("</code></pre>");
+      buffer.append(STACKTRACE_OPEN);
+      stackTraceCompactor.append(tp, buffer);
+      buffer.append(STACKTRACE_CLOSE);
     }
   }
   
+  /**
+   * Appends the selected MDC entries and markers that fit in {@code remaining} bytes.
+   * @return the encoded length appended
+   */
+  long context(ILoggingEvent event, StringBuilder buffer, long remaining) {
+    final ContextRenderer renderer = contextRenderer;
+    return renderer.isEmpty() ? 0 : renderer.append(event, buffer, remaining);
+  }
+
   Properties getSystemProperties() {
     return System.getProperties();
   }
@@ -111,7 +320,74 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
     if (!outputSystemProperties) {
       return;
     }
-    Properties properties = getSystemProperties();
+    RenderedProperties rendered = renderedSystemProperties;
+    final long now = System.currentTimeMillis();
+    switch (systemPropertiesRefreshPolicy) {
+    case ONCE:
+      if (rendered == null) {
+        rendered = renderSystemProperties(getSystemProperties(), now);
+      }
+      break;
+    case INTERVAL:
+      if (rendered == null || now - rendered.renderedAt >= systemPropertiesRefreshInterval.getMilliseconds()) {
+        rendered = renderSystemProperties(getSystemProperties(), now);
+      }
+      break;
+    default:
+      // hashing the properties locks them, so it is done at most once per check interval
+      if (rendered == null || now - systemPropertiesCheckedAt >= systemPropertiesCheckInterval.getMilliseconds()) {
+        systemPropertiesCheckedAt = now;
+        Properties properties = getSystemProperties();
+        if (rendered == null || rendered.fingerprint != fingerprint(properties)) {
+          rendered = renderSystemProperties(properties, now);
+        }
+      }
+      break;
+    }
+    buffer.append(rendered.html);
+  }
+
+  /**
+   * Appends the system properties, dropping the rows that do not fit in {@code remaining} bytes.
+   * The table is omitted when no row fits.
+   */
+  void systemProperties(StringBuilder buffer, long remaining) {
+    final int start = buffer.length();
+    systemProperties(buffer);
+    if (FormEncoder.encodedLength(buffer, start, buffer.length()) <= remaining) {
+      return;
+    }
+    final int bodyStart = buffer.indexOf("<tbody>", start);
+    if (bodyStart < 0) {
+      buffer.setLength(start);
+      return;
+    }
+    long available = remaining - FormEncoder.encodedLength("</tbody></table>");
+    int end = bodyStart + "<tbody>".length();
+    available -= FormEncoder.encodedLength(buffer, start, end);
+    final int rowsStart = end;
+    while (available >= 0) {
+      final int rowEnd = buffer.indexOf("</tr>", end);
+      if (rowEnd < 0) {
+        break;
+      }
+      available -= FormEncoder.encodedLength(buffer, end, rowEnd + "</tr>".length());
+      if (available >= 0) {
+        end = rowEnd + "</tr>".length();
+      }
+    }
+    if (end == rowsStart) {
+      buffer.setLength(start);
+      return;
+    }
+    buffer.setLength(end);
+    buffer.append("</tbody></table>");
+  }
+
+  private RenderedProperties renderSystemProperties(Properties properties, long now) {
+    // fingerprint before reading so that concurrent changes trigger another refresh
+    final int fingerprint = fingerprint(properties);
+    StringBuilder buffer = new StringBuilder();
     buffer.append("<table style=\"table-layout: fixed; width: 100%;\">");
     buffer.append("<caption>System Properties</caption>");
     buffer.append("<thead>");
@@ -120,26 +396,82 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
     buffer.append("<tbody>");
     Set<String> names = new TreeSet<String>(properties.stringPropertyNames());
     for (String name : names) {
-      tableRow(buffer, name, properties.getProperty(name), false);
+      if (isSystemPropertyIncluded(name)) {
+        tableRow(buffer, name, properties.getProperty(name), false);
+      }
     }
     buffer.append("</tbody>");
     buffer.append("</table>");
+    RenderedProperties rendered = new RenderedProperties(buffer.toString(), now, fingerprint);
+    renderedSystemProperties = rendered;
+    return rendered;
+  }
+
+  private static int fingerprint(Properties properties) {
+    return 31 * properties.size() + properties.hashCode();
+  }
+
+  boolean isSystemPropertyIncluded(String name) {
+    if (!systemPropertyIncludes.isEmpty() && !matchesAny(name, systemPropertyIncludes)) {
+      return false;
+    }
+    return !matchesAny(name, systemPropertyExcludes);
+  }
+
+  private static boolean matchesAny(String name, List<String> patterns) {
+    for (String pattern : patterns) {
+      if (pattern.endsWith("*")) {
+        if (name.startsWith(pattern.substring(0, pattern.length() - 1))) {
+          return true;
+        }
+      } else if (name.equals(pattern)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   void tableRow(StringBuilder buffer, String name, String value, boolean header) {
     String tag = header ? "th" : "td";
     buffer.append("<tr>");
-    buffer.append("<").append(tag).append(">").append(Transform.escapeTags(name)).append("</").append(tag).append(">");
-    buffer.append("<").append(tag).append(">").append(Transform.escapeTags(value)).append("</").append(tag).append(">");
+    buffer.append("<").append(tag).append(">");
+    HtmlEscaper.escape(name, buffer);
+    buffer.append("</").append(tag).append(">");
+    buffer.append("<").append(tag).append(">");
+    HtmlEscaper.escape(value, buffer);
+    buffer.append("</").append(tag).append(">");
     buffer.append("</tr>");
   }
 
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * Sets the template of the output, compiled when the layout is started.
+   * Placeholders {@code %date}, {@code %level}, {@code %thread}, {@code %logger},
+   * {@code %message}, {@code %mdc} or {@code %mdc{key}}, {@code %context}, {@code %stacktrace} and
+   * {@code %properties} are replaced by the HTML escaped parts of the event,
+   * {@code %%} by a percent sign. The default is
+   * {@code <p>%date %level [%thread] %logger - <b>%message</b>%context%stacktrace%properties</p>}.
+   * @param template output template
+   */
+  public void setTemplate(String template) {
+    this.template = template;
+  }
+
   public DateFormat getDateFormat() {
     return dateFormat;
   }
 
+  /**
+   * Sets the format of timestamps.
+   * The format is copied, later changes to {@code dateFormat} are not reflected.
+   * @param dateFormat format of timestamps
+   */
   public void setDateFormat(DateFormat dateFormat) {
     this.dateFormat = dateFormat;
+    this.cachingDateFormat = new CachingDateFormat(dateFormat);
   }
 
   public void setColor(Level level, String color) {
@@ -147,6 +479,7 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
       throw new IllegalArgumentException("Level must not be null.");
     }
     this.levelToColor.put(level.toInteger(), color);
+    this.levelLabels = levelLabels();
   }
 
   public void setBackgroundColor(Level level, String color) {
@@ -154,6 +487,20 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
       throw new IllegalArgumentException("Level must not be null.");
     }
     this.levelToBackgroundColor.put(level.toInteger(), color);
+    this.levelLabels = levelLabels();
+  }
+
+  /**
+   * Returns the markup inserted between two events posted as one batch.
+   * The presentation header and footer enclose the whole batch.
+   * @return separator between batched events
+   */
+  public String getSeparator() {
+    return separator;
+  }
+
+  public void setSeparator(String separator) {
+    this.separator = separator;
   }
 
   public boolean isOutputSystemProperties() {
@@ -163,4 +510,180 @@ public class IdobataLayout extends LayoutBase<ILoggingEvent> {
   public void setOutputSystemProperties(boolean outputSystemProperties) {
     this.outputSystemProperties = outputSystemProperties;
   }
+
+  public RefreshPolicy getSystemPropertiesRefreshPolicy() {
+    return systemPropertiesRefreshPolicy;
+  }
+
+  public void setSystemPropertiesRefreshPolicy(RefreshPolicy systemPropertiesRefreshPolicy) {
+    this.systemPropertiesRefreshPolicy = systemPropertiesRefreshPolicy;
+    this.renderedSystemProperties = null;
+  }
+
+  public Duration getSystemPropertiesRefreshInterval() {
+    return systemPropertiesRefreshInterval;
+  }
+
+  public void setSystemPropertiesRefreshInterval(Duration systemPropertiesRefreshInterval) {
+    this.systemPropertiesRefreshInterval = systemPropertiesRefreshInterval;
+  }
+
+  public Duration getSystemPropertiesCheckInterval() {
+    return systemPropertiesCheckInterval;
+  }
+
+  /**
+   * Sets how often the {@link RefreshPolicy#FINGERPRINT} policy compares the
+   * fingerprint of the system properties. Defaults to 1 second.
+   */
+  public void setSystemPropertiesCheckInterval(Duration systemPropertiesCheckInterval) {
+    this.systemPropertiesCheckInterval = systemPropertiesCheckInterval;
+  }
+
+  /**
+   * Adds a name of system properties to output.
+   * A trailing {@code *} matches any name starting with the preceding text.
+   * When no include is added, all system properties are included.
+   * @param pattern property name or prefix ending with {@code *}
+   */
+  public void addSystemPropertyInclude(String pattern) {
+    this.systemPropertyIncludes.add(pattern);
+    this.renderedSystemProperties = null;
+  }
+
+  /**
+   * Adds a name of system properties not to output.
+   * A trailing {@code *} matches any name starting with the preceding text.
+   * @param pattern property name or prefix ending with {@code *}
+   */
+  public void addSystemPropertyExclude(String pattern) {
+    this.systemPropertyExcludes.add(pattern);
+    this.renderedSystemProperties = null;
+  }
+
+  public int getStackTraceMaxDepth() {
+    return stackTraceMaxDepth;
+  }
+
+  /**
+   * Sets the maximum number of frames output per throwable, {@code 0} outputs all frames.
+   * @param stackTraceMaxDepth maximum number of frames
+   */
+  public void setStackTraceMaxDepth(int stackTraceMaxDepth) {
+    this.stackTraceMaxDepth = stackTraceMaxDepth;
+    this.stackTraceCompactor = stackTraceCompactor();
+  }
+
+  public int getStackTraceMaxBytes() {
+    return stackTraceMaxBytes;
+  }
+
+  /**
+   * Sets the maximum UTF-8 length of a stack trace, {@code 0} for no limit.
+   * The trace is cut at the last line that fits.
+   * @param stackTraceMaxBytes maximum length in bytes
+   */
+  public void setStackTraceMaxBytes(int stackTraceMaxBytes) {
+    this.stackTraceMaxBytes = stackTraceMaxBytes;
+    this.stackTraceCompactor = stackTraceCompactor();
+  }
+
+  public int getStackTraceCacheSize() {
+    return stackTraceCacheSize;
+  }
+
+  /**
+   * Sets the number of rendered stack trace shapes to cache, {@code 0} disables the cache.
+   * @param stackTraceCacheSize number of cached shapes
+   */
+  public void setStackTraceCacheSize(int stackTraceCacheSize) {
+    this.stackTraceCacheSize = stackTraceCacheSize;
+    this.stackTraceCompactor = stackTraceCompactor();
+  }
+
+  /**
+   * Adds a package whose consecutive frames are collapsed into one line,
+   * for example {@code org.springframework.} or {@code sun.reflect.}.
+   * @param prefix prefix of the class names
+   */
+  public void addStackTraceOmittedPackage(String prefix) {
+    this.stackTraceOmittedPackages.add(prefix);
+    this.stackTraceCompactor = stackTraceCompactor();
+  }
+
+  public List<String> getMdcKeys() {
+    return mdcKeys;
+  }
+
+  /**
+   * Adds an MDC key whose entry is rendered by {@code %context}, in the order added.
+   * @param mdcKey MDC key
+   */
+  public void addMdcKey(String mdcKey) {
+    this.mdcKeys.add(mdcKey);
+    this.contextRenderer = contextRenderer();
+  }
+
+  public boolean isOutputMarkers() {
+    return outputMarkers;
+  }
+
+  /**
+   * Sets whether {@code %context} renders the marker of the event and the markers it references.
+   * @param outputMarkers {@code true} to render markers
+   */
+  public void setOutputMarkers(boolean outputMarkers) {
+    this.outputMarkers = outputMarkers;
+    this.contextRenderer = contextRenderer();
+  }
+
+  public ContextStyle getContextStyle() {
+    return contextStyle;
+  }
+
+  public void setContextStyle(ContextStyle contextStyle) {
+    this.contextStyle = contextStyle;
+    this.contextRenderer = contextRenderer();
+  }
+
+  public int getContextCacheSize() {
+    return contextCacheSize;
+  }
+
+  /**
+   * Sets the number of rendered MDC entries and markers to cache, {@code 0} disables the cache.
+   * @param contextCacheSize number of cached fragments
+   */
+  public void setContextCacheSize(int contextCacheSize) {
+    this.contextCacheSize = contextCacheSize;
+    this.contextRenderer = contextRenderer();
+  }
+
+  ContextRenderer getContextRenderer() {
+    return contextRenderer;
+  }
+
+  private ContextRenderer contextRenderer() {
+    return new ContextRenderer(mdcKeys, outputMarkers, contextStyle, contextCacheSize);
+  }
+
+  private StackTraceCompactor stackTraceCompactor() {
+    return new StackTraceCompactor(stackTraceMaxDepth, stackTraceOmittedPackages, stackTraceMaxBytes,
+        stackTraceCacheSize);
+  }
+
+  private static final class RenderedProperties {
+
+    final String html;
+
+    final long renderedAt;
+
+    final int fingerprint;
+
+    RenderedProperties(String html, long renderedAt, int fingerprint) {
+      this.html = html;
+      this.renderedAt = renderedAt;
+      this.fingerprint = fingerprint;
+    }
+  }
 }
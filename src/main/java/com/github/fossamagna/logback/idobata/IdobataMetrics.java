@@ -0,0 +1,258 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters and histograms of an {@link IdobataAppender}.
+ *
+ * Recording never locks: counters are striped and histograms use atomic buckets.
+ * Every measurement is also forwarded to the registered {@link MetricsListener}s.
+ * @author fossamagna
+ */
+public final class IdobataMetrics implements IdobataMetricsMBean, MetricsListener {
+
+  private static final MetricsListener[] NO_LISTENERS = new MetricsListener[0];
+
+  private final StripedCounter appended = new StripedCounter();
+
+  private final StripedCounter sent = new StripedCounter();
+
+  private final StripedCounter failed = new StripedCounter();
+
+  private final StripedCounter[] dropped = new StripedCounter[DropReason.values().length];
+
+  // 1xx to 5xx, index 0 counts I/O errors
+  private final StripedCounter[] statuses = new StripedCounter[6];
+
+  private final StripedCounter bytesSent = new StripedCounter();
+
+  private final Histogram renderTime = new Histogram();
+
+  private final Histogram encodeTime = new Histogram();
+
+  private final Histogram postLatency = new Histogram();
+
+  private volatile MetricsListener[] listeners = NO_LISTENERS;
+
+  private volatile BoundedQueue<?> queue;
+
+  private volatile FileSpool spool;
+
+  IdobataMetrics() {
+    for (int i = 0; i < dropped.length; i++) {
+      dropped[i] = new StripedCounter();
+    }
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = new StripedCounter();
+    }
+  }
+
+  synchronized void addListener(MetricsListener listener) {
+    MetricsListener[] updated = new MetricsListener[listeners.length + 1];
+    System.arraycopy(listeners, 0, updated, 0, listeners.length);
+    updated[listeners.length] = listener;
+    listeners = updated;
+  }
+
+  void setQueue(BoundedQueue<?> queue) {
+    this.queue = queue;
+  }
+
+  void setSpool(FileSpool spool) {
+    this.spool = spool;
+  }
+
+  @Override
+  public void onAppend() {
+    appended.increment();
+    for (MetricsListener listener : listeners) {
+      listener.onAppend();
+    }
+  }
+
+  @Override
+  public void onDrop(DropReason reason, int events) {
+    dropped[reason.ordinal()].add(events);
+    for (MetricsListener listener : listeners) {
+      listener.onDrop(reason, events);
+    }
+  }
+
+  @Override
+  public void onRender(long nanos) {
+    renderTime.record(nanos);
+    for (MetricsListener listener : listeners) {
+      listener.onRender(nanos);
+    }
+  }
+
+  @Override
+  public void onEncode(long nanos, int bytes) {
+    encodeTime.record(nanos);
+    for (MetricsListener listener : listeners) {
+      listener.onEncode(nanos, bytes);
+    }
+  }
+
+  @Override
+  public void onPost(int status, long nanos) {
+    final int statusClass = status / 100;
+    statuses[statusClass >= 1 && statusClass <= 5 ? statusClass : 0].increment();
+    postLatency.record(nanos);
+    for (MetricsListener listener : listeners) {
+      listener.onPost(status, nanos);
+    }
+  }
+
+  @Override
+  public void onSent(int events, int bytes) {
+    sent.add(events);
+    bytesSent.add(bytes);
+    for (MetricsListener listener : listeners) {
+      listener.onSent(events, bytes);
+    }
+  }
+
+  @Override
+  public void onFailure(int events) {
+    failed.add(events);
+    for (MetricsListener listener : listeners) {
+      listener.onFailure(events);
+    }
+  }
+
+  @Override
+  public long getAppendedCount() {
+    return appended.sum();
+  }
+
+  @Override
+  public long getSentCount() {
+    return sent.sum();
+  }
+
+  @Override
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  @Override
+  public long getDroppedCount() {
+    long sum = 0;
+    for (StripedCounter counter : dropped) {
+      sum += counter.sum();
+    }
+    return sum;
+  }
+
+  long getDroppedCount(DropReason reason) {
+    return dropped[reason.ordinal()].sum();
+  }
+
+  @Override
+  public long getQueueFullCount() {
+    return getDroppedCount(DropReason.QUEUE_FULL);
+  }
+
+  @Override
+  public long getRateLimitedCount() {
+    return getDroppedCount(DropReason.RATE_LIMITED);
+  }
+
+  @Override
+  public long getCircuitOpenDroppedCount() {
+    return getDroppedCount(DropReason.CIRCUIT_OPEN);
+  }
+
+  @Override
+  public long getSpoolFullCount() {
+    return getDroppedCount(DropReason.SPOOL_FULL);
+  }
+
+  @Override
+  public long getSampledCount() {
+    return getDroppedCount(DropReason.SAMPLED);
+  }
+
+  @Override
+  public long getStatus2xxCount() {
+    return statuses[2].sum();
+  }
+
+  @Override
+  public long getStatus3xxCount() {
+    return statuses[3].sum();
+  }
+
+  @Override
+  public long getStatus4xxCount() {
+    return statuses[4].sum();
+  }
+
+  @Override
+  public long getStatus5xxCount() {
+    return statuses[5].sum();
+  }
+
+  @Override
+  public long getIoErrorCount() {
+    return statuses[0].sum();
+  }
+
+  @Override
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  @Override
+  public double getRenderTimeMeanMicros() {
+    return renderTime.getMean() / 1000;
+  }
+
+  @Override
+  public long getRenderTimeP99Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(renderTime.getPercentile(0.99));
+  }
+
+  @Override
+  public double getEncodeTimeMeanMicros() {
+    return encodeTime.getMean() / 1000;
+  }
+
+  @Override
+  public long getEncodeTimeP99Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(encodeTime.getPercentile(0.99));
+  }
+
+  @Override
+  public double getPostLatencyMeanMillis() {
+    return postLatency.getMean() / 1000000;
+  }
+
+  @Override
+  public long getPostLatencyP50Millis() {
+    return TimeUnit.NANOSECONDS.toMillis(postLatency.getPercentile(0.5));
+  }
+
+  @Override
+  public long getPostLatencyP99Millis() {
+    return TimeUnit.NANOSECONDS.toMillis(postLatency.getPercentile(0.99));
+  }
+
+  @Override
+  public long getPostLatencyMaxMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(postLatency.getMax());
+  }
+
+  @Override
+  public int getQueueDepth() {
+    final BoundedQueue<?> queue = this.queue;
+    return queue != null ? queue.size() : 0;
+  }
+
+  @Override
+  public long getSpoolSize() {
+    final FileSpool spool = this.spool;
+    return spool != null ? spool.size() : 0;
+  }
+}
@@ -0,0 +1,71 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * JMX view of the {@link IdobataMetrics} of an {@link IdobataAppender}.
+ * @author fossamagna
+ */
+public interface IdobataMetricsMBean {
+
+  /**
+   * @return the number of events that reached the appender
+   */
+  long getAppendedCount();
+
+  /**
+   * @return the number of events in the requests accepted by the endpoint, a batch counting as many
+   *     events as it holds
+   */
+  long getSentCount();
+
+  /**
+   * @return the number of events in the messages given up after their last attempt failed
+   */
+  long getFailedCount();
+
+  /**
+   * @return the number of events discarded for any reason
+   */
+  long getDroppedCount();
+
+  long getQueueFullCount();
+
+  long getRateLimitedCount();
+
+  long getCircuitOpenDroppedCount();
+
+  long getSpoolFullCount();
+
+  long getSampledCount();
+
+  long getStatus2xxCount();
+
+  long getStatus3xxCount();
+
+  long getStatus4xxCount();
+
+  long getStatus5xxCount();
+
+  long getIoErrorCount();
+
+  long getBytesSent();
+
+  double getRenderTimeMeanMicros();
+
+  long getRenderTimeP99Micros();
+
+  double getEncodeTimeMeanMicros();
+
+  long getEncodeTimeP99Micros();
+
+  double getPostLatencyMeanMillis();
+
+  long getPostLatencyP50Millis();
+
+  long getPostLatencyP99Millis();
+
+  long getPostLatencyMaxMillis();
+
+  int getQueueDepth();
+
+  long getSpoolSize();
+}
@@ -0,0 +1,407 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Compiled output template of {@link IdobataLayout}.
+ *
+ * The pattern is parsed once into an array of segments. Literal text is kept
+ * as is, placeholders are replaced by the HTML escaped parts of the event:
+ * <ul>
+ * <li>{@code %date} timestamp formatted by the layout's date format</li>
+ * <li>{@code %level} level label</li>
+ * <li>{@code %thread} thread name</li>
+ * <li>{@code %logger} logger name</li>
+ * <li>{@code %message} formatted message</li>
+ * <li>{@code %mdc} all MDC entries, or {@code %mdc{key}} the value of one key</li>
+ * <li>{@code %context} the MDC entries and markers selected in the layout, as badges or a table</li>
+ * <li>{@code %stacktrace} stack trace block, empty without a throwable</li>
+ * <li>{@code %properties} system properties table</li>
+ * <li>{@code %%} a percent sign</li>
+ * </ul>
+ * @author fossamagna
+ */
+final class LayoutTemplate {
+
+  static final String DEFAULT_PATTERN = "<p>%date %level [%thread] %logger - <b>%message</b>%context%stacktrace%properties</p>";
+
+  static final LayoutTemplate DEFAULT = compile(DEFAULT_PATTERN);
+
+  /**
+   * Priority of the segments kept whole when rendering within a budget.
+   */
+  private static final int KEPT = 0;
+
+  private static final int MAX_PRIORITY = 4;
+
+  private final String pattern;
+
+  private final Segment[] segments;
+
+  private LayoutTemplate(String pattern, Segment[] segments) {
+    this.pattern = pattern;
+    this.segments = segments;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the pattern has an unknown or malformed placeholder
+   */
+  static LayoutTemplate compile(String pattern) {
+    List<Segment> segments = new ArrayList<Segment>();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    final int length = pattern.length();
+    while (i < length) {
+      final char c = pattern.charAt(i++);
+      if (c != '%') {
+        literal.append(c);
+        continue;
+      }
+      if (i < length && pattern.charAt(i) == '%') {
+        literal.append('%');
+        i++;
+        continue;
+      }
+      final int nameStart = i;
+      while (i < length && Character.isLetter(pattern.charAt(i))) {
+        i++;
+      }
+      final String name = pattern.substring(nameStart, i);
+      String option = null;
+      if (i < length && pattern.charAt(i) == '{') {
+        final int close = pattern.indexOf('}', i);
+        if (close < 0) {
+          throw new IllegalArgumentException("Unclosed option of %" + name + " in [" + pattern + "]");
+        }
+        option = pattern.substring(i + 1, close);
+        i = close + 1;
+      }
+      if (literal.length() > 0) {
+        segments.add(new Literal(literal.toString()));
+        literal.setLength(0);
+      }
+      segments.add(placeholder(name, option, pattern));
+    }
+    if (literal.length() > 0) {
+      segments.add(new Literal(literal.toString()));
+    }
+    return new LayoutTemplate(pattern, segments.toArray(new Segment[segments.size()]));
+  }
+
+  private static Segment placeholder(String name, String option, String pattern) {
+    if ("mdc".equals(name)) {
+      return new Mdc(option);
+    }
+    if (option != null) {
+      throw new IllegalArgumentException("%" + name + " takes no option in [" + pattern + "]");
+    }
+    if ("date".equals(name)) {
+      return new Timestamp();
+    } else if ("level".equals(name)) {
+      return new LevelLabel();
+    } else if ("thread".equals(name)) {
+      return new ThreadName();
+    } else if ("logger".equals(name)) {
+      return new LoggerName();
+    } else if ("message".equals(name)) {
+      return new Message();
+    } else if ("context".equals(name)) {
+      return new Context();
+    } else if ("stacktrace".equals(name)) {
+      return new StackTrace();
+    } else if ("properties".equals(name)) {
+      return new SystemProperties();
+    }
+    throw new IllegalArgumentException("Unknown placeholder %" + name + " in [" + pattern + "]");
+  }
+
+  String getPattern() {
+    return pattern;
+  }
+
+  void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+    for (Segment segment : segments) {
+      segment.append(layout, event, buffer);
+    }
+  }
+
+  /**
+   * Renders the event so that its form encoded length does not exceed {@code maxBytes}.
+   *
+   * The segments kept whole are rendered first, the message, MDC and context, stack trace
+   * and system properties then fill the remaining budget in this order, and the
+   * parts are finally appended in the order of the pattern.
+   */
+  void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, int maxBytes) {
+    final String[] parts = new String[segments.length];
+    final StringBuilder part = new StringBuilder();
+    long remaining = maxBytes;
+    for (int priority = KEPT; priority <= MAX_PRIORITY; priority++) {
+      for (int i = 0; i < segments.length; i++) {
+        if (segments[i].priority() == priority) {
+          part.setLength(0);
+          if (priority == KEPT) {
+            remaining -= segments[i].appendKept(layout, event, part);
+          } else {
+            remaining -= segments[i].append(layout, event, part, remaining);
+          }
+          parts[i] = part.toString();
+        }
+      }
+    }
+    for (String rendered : parts) {
+      buffer.append(rendered);
+    }
+  }
+
+  /**
+   * Part of the template.
+   */
+  abstract static class Segment {
+
+    abstract void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer);
+
+    /**
+     * @return the order in which the segment is cut to fit a budget, {@code 0} if it is kept whole
+     */
+    int priority() {
+      return KEPT;
+    }
+
+    /**
+     * Appends the segment kept whole when rendering within a budget.
+     * @return the encoded length appended
+     */
+    long appendKept(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      final int start = buffer.length();
+      append(layout, event, buffer);
+      return FormEncoder.encodedLength(buffer, start, buffer.length());
+    }
+
+    /**
+     * Appends the segment cut to fit in {@code remaining} bytes.
+     * @return the encoded length appended
+     */
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      final int start = buffer.length();
+      append(layout, event, buffer);
+      return FormEncoder.encodedLength(buffer, start, buffer.length());
+    }
+  }
+
+  private static final class Literal extends Segment {
+
+    private final String text;
+
+    Literal(String text) {
+      this.text = text;
+    }
+
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      buffer.append(text);
+    }
+  }
+
+  private static final class Timestamp extends Segment {
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      HtmlEscaper.escape(layout.format(event.getTimeStamp()), buffer);
+    }
+  }
+
+  /**
+   * Segment rendered from a cached fragment, whose encoded length is known.
+   */
+  private abstract static class CachedFragment extends Segment {
+
+    abstract FragmentCache.Fragment fragment(IdobataLayout layout, ILoggingEvent event);
+
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      buffer.append(fragment(layout, event).html);
+    }
+
+    @Override
+    long appendKept(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      final FragmentCache.Fragment fragment = fragment(layout, event);
+      buffer.append(fragment.html);
+      return fragment.encodedLength;
+    }
+  }
+
+  private static final class LevelLabel extends CachedFragment {
+    @Override
+    FragmentCache.Fragment fragment(IdobataLayout layout, ILoggingEvent event) {
+      return layout.levelLabel(event);
+    }
+  }
+
+  private static final class ThreadName extends CachedFragment {
+    @Override
+    FragmentCache.Fragment fragment(IdobataLayout layout, ILoggingEvent event) {
+      return layout.threadName(event);
+    }
+  }
+
+  private static final class LoggerName extends CachedFragment {
+    @Override
+    FragmentCache.Fragment fragment(IdobataLayout layout, ILoggingEvent event) {
+      return layout.loggerName(event);
+    }
+  }
+
+  private static final class Message extends Segment {
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      HtmlEscaper.escape(event.getFormattedMessage(), buffer);
+    }
+
+    @Override
+    int priority() {
+      return 1;
+    }
+
+    @Override
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      return layout.message(event, buffer, remaining);
+    }
+  }
+
+  private static final class Mdc extends Segment {
+
+    private final String key;
+
+    Mdc(String key) {
+      this.key = key;
+    }
+
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      final Map<String, String> mdc = event.getMDCPropertyMap();
+      if (mdc == null || mdc.isEmpty()) {
+        return;
+      }
+      if (key != null) {
+        final String value = mdc.get(key);
+        if (value != null) {
+          HtmlEscaper.escape(value, buffer);
+        }
+        return;
+      }
+      append(mdc, buffer, Long.MAX_VALUE);
+    }
+
+    @Override
+    int priority() {
+      return 2;
+    }
+
+    /**
+     * Appends the entries that fit in {@code remaining} bytes, an entry is never cut.
+     */
+    @Override
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      final Map<String, String> mdc = event.getMDCPropertyMap();
+      if (mdc == null || mdc.isEmpty()) {
+        return 0;
+      }
+      if (key != null) {
+        final String value = mdc.get(key);
+        if (value == null) {
+          return 0;
+        }
+        final int start = buffer.length();
+        HtmlEscaper.escape(value, buffer);
+        final long length = FormEncoder.encodedLength(buffer, start, buffer.length());
+        if (length > remaining) {
+          buffer.setLength(start);
+          return 0;
+        }
+        return length;
+      }
+      return append(mdc, buffer, remaining);
+    }
+
+    private static long append(Map<String, String> mdc, StringBuilder buffer, long remaining) {
+      final int start = buffer.length();
+      long length = 0;
+      for (Map.Entry<String, String> entry : new TreeMap<String, String>(mdc).entrySet()) {
+        final int entryStart = buffer.length();
+        if (entryStart > start) {
+          buffer.append(", ");
+        }
+        HtmlEscaper.escape(entry.getKey(), buffer);
+        buffer.append('=');
+        HtmlEscaper.escape(entry.getValue(), buffer);
+        if (remaining != Long.MAX_VALUE) {
+          final long entryLength = FormEncoder.encodedLength(buffer, entryStart, buffer.length());
+          if (length + entryLength > remaining) {
+            buffer.setLength(entryStart);
+            break;
+          }
+          length += entryLength;
+        }
+      }
+      return length;
+    }
+  }
+
+  private static final class Context extends Segment {
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      layout.context(event, buffer, Long.MAX_VALUE);
+    }
+
+    @Override
+    int priority() {
+      return 2;
+    }
+
+    @Override
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      return layout.context(event, buffer, remaining);
+    }
+  }
+
+  private static final class StackTrace extends Segment {
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      layout.stacktrace(event, buffer);
+    }
+
+    @Override
+    int priority() {
+      return 3;
+    }
+
+    @Override
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      return layout.stacktrace(event, buffer, remaining);
+    }
+  }
+
+  private static final class SystemProperties extends Segment {
+    @Override
+    void append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer) {
+      layout.systemProperties(buffer);
+    }
+
+    @Override
+    int priority() {
+      return 4;
+    }
+
+    @Override
+    long append(IdobataLayout layout, ILoggingEvent event, StringBuilder buffer, long remaining) {
+      final int start = buffer.length();
+      layout.systemProperties(buffer, remaining);
+      return FormEncoder.encodedLength(buffer, start, buffer.length());
+    }
+  }
+}
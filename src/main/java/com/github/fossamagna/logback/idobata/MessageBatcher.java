@@ -0,0 +1,126 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects rendered messages until the batch is full or has lingered long enough.
+ *
+ * The size of a batch is the length of the form-encoded request body: the
+ * fixed overhead of the prefix, header and footer, the messages and the
+ * separators between them.
+ * @author fossamagna
+ */
+final class MessageBatcher {
+
+  private final int maxCount;
+
+  private final long maxBytes;
+
+  private final long lingerMillis;
+
+  private final int overhead;
+
+  private final int separatorLength;
+
+  private List<String> messages;
+
+  private long bytes;
+
+  private long createdAt;
+
+  /**
+   * @param maxCount maximum number of messages in a batch
+   * @param maxBytes maximum encoded size of a batch, or {@code 0} for no limit
+   * @param lingerMillis maximum age of a batch in milliseconds
+   * @param overhead encoded size of the request body without any message
+   * @param separatorLength encoded size of the separator between two messages
+   */
+  MessageBatcher(int maxCount, long maxBytes, long lingerMillis, int overhead, int separatorLength) {
+    this.maxCount = maxCount;
+    this.maxBytes = maxBytes;
+    this.lingerMillis = lingerMillis;
+    this.overhead = overhead;
+    this.separatorLength = separatorLength;
+    this.messages = new ArrayList<String>(maxCount);
+    this.bytes = overhead;
+  }
+
+  /**
+   * Adds the message to the current batch.
+   * @return a batch that is ready to be sent, or {@code null}
+   */
+  synchronized List<String> add(String message, long now) {
+    final int length = FormEncoder.encodedLength(message);
+    List<String> ready = null;
+    if (!messages.isEmpty() && maxBytes > 0 && bytes + separatorLength + length > maxBytes) {
+      ready = take();
+    }
+    if (messages.isEmpty()) {
+      createdAt = now;
+    } else {
+      bytes += separatorLength;
+    }
+    messages.add(message);
+    bytes += length;
+    if (ready == null && isFull()) {
+      ready = take();
+    }
+    return ready;
+  }
+
+  /**
+   * Removes the current batch if it is older than the linger time.
+   * @return the expired batch, or {@code null}
+   */
+  synchronized List<String> drainExpired(long now) {
+    if (messages.isEmpty() || now - createdAt < lingerMillis) {
+      return null;
+    }
+    return take();
+  }
+
+  /**
+   * Removes the current batch regardless of its age.
+   * @return the current batch, or {@code null} if it is empty
+   */
+  synchronized List<String> drain() {
+    if (messages.isEmpty()) {
+      return null;
+    }
+    return take();
+  }
+
+  synchronized int size() {
+    return messages.size();
+  }
+
+  private boolean isFull() {
+    return messages.size() >= maxCount || (maxBytes > 0 && bytes >= maxBytes);
+  }
+
+  private List<String> take() {
+    List<String> batch = messages;
+    messages = new ArrayList<String>(maxCount);
+    bytes = overhead;
+    return batch;
+  }
+
+  static long utf8Length(CharSequence s) {
+    long length = 0;
+    for (int i = 0, len = s.length(); i < len; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Receives the measurements of {@link IdobataAppender}, for example to feed a metrics library.
+ *
+ * Methods are called on logging and sender threads, so they must be thread-safe,
+ * fast and must not log through the appender they listen to.
+ * @author fossamagna
+ */
+public interface MetricsListener {
+
+  /**
+   * Called when an event reaches the appender.
+   */
+  void onAppend();
+
+  /**
+   * Called when events are discarded, alone or within a message.
+   * @param reason why they were discarded
+   * @param events number of events discarded
+   */
+  void onDrop(DropReason reason, int events);
+
+  /**
+   * Called after an event has been rendered by the layout.
+   * @param nanos render time in nanoseconds
+   */
+  void onRender(long nanos);
+
+  /**
+   * Called after a message has been encoded into a request body.
+   * @param nanos encode time in nanoseconds
+   * @param bytes size of the request body
+   */
+  void onEncode(long nanos, int bytes);
+
+  /**
+   * Called after each request to the endpoint, including retries.
+   * @param status HTTP status code, or {@code -1} if the request failed with an I/O error
+   * @param nanos time from sending the request until the response was read, in nanoseconds
+   */
+  void onPost(int status, long nanos);
+
+  /**
+   * Called when the endpoint accepted a request.
+   * @param events number of events in the request body
+   * @param bytes size of the request body
+   */
+  void onSent(int events, int bytes);
+
+  /**
+   * Called when a message is given up after its last attempt failed.
+   * @param events number of events in the message
+   */
+  void onFailure(int events);
+}
@@ -0,0 +1,29 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Policy applied by {@link IdobataAppender} when the asynchronous queue is full.
+ * @author fossamagna
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Logging thread waits until the queue has free space.
+   */
+  BLOCK,
+
+  /**
+   * The event being appended is discarded.
+   */
+  DROP_NEWEST,
+
+  /**
+   * The oldest queued event is discarded to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Events whose level is below the overflow level are discarded,
+   * other events wait until the queue has free space.
+   */
+  DROP_BELOW_LEVEL
+}
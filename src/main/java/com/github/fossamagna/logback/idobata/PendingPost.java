@@ -0,0 +1,26 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Encoded request body awaiting delivery to its endpoint, with its delivery attempts.
+ * @author fossamagna
+ */
+final class PendingPost {
+
+  final Endpoint endpoint;
+
+  final byte[] content;
+
+  /** number of events in the content */
+  final int events;
+
+  final long createdAt;
+
+  int attempts;
+
+  PendingPost(Endpoint endpoint, byte[] content, int events, long createdAt) {
+    this.endpoint = endpoint;
+    this.content = content;
+    this.events = events;
+    this.createdAt = createdAt;
+  }
+}
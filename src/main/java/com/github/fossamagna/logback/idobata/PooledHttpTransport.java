@@ -0,0 +1,467 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import ch.qos.logback.core.util.Duration;
+
+/**
+ * {@link Transport} keeping persistent HTTP/1.1 connections to the endpoint host.
+ *
+ * Idle connections are pooled per scheme, host and port and reused while they
+ * are younger than {@code keepAliveTime}. The number of concurrent requests is
+ * limited by {@code maxInFlight}.
+ * Requests to a URL that the default {@link ProxySelector} routes through a
+ * proxy, e.g. when {@code http.proxyHost} or {@code https.proxyHost} is set,
+ * are sent by {@link HttpURLConnectionTransport} instead.
+ * @author fossamagna
+ */
+public class PooledHttpTransport extends TransportBase {
+
+  private static final String ASCII = "ISO-8859-1";
+
+  private int maxInFlight = 4;
+
+  private int maxIdleConnections = 4;
+
+  private Duration keepAliveTime = Duration.buildBySeconds(30);
+
+  private Semaphore inFlight;
+
+  private final HttpURLConnectionTransport proxied = new HttpURLConnectionTransport();
+
+  private final ConcurrentMap<String, Queue<Connection>> idleConnections = new ConcurrentHashMap<String, Queue<Connection>>();
+
+  @Override
+  public void start() {
+    if (maxInFlight < 1) {
+      addError("Invalid maxInFlight [" + maxInFlight + "]");
+      return;
+    }
+    inFlight = new Semaphore(maxInFlight, true);
+    proxied.setContext(getContext());
+    proxied.setConnectTimeout(getConnectTimeout());
+    proxied.setReadTimeout(getReadTimeout());
+    proxied.start();
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    proxied.stop();
+    for (Queue<Connection> connections : idleConnections.values()) {
+      Connection connection;
+      while ((connection = connections.poll()) != null) {
+        connection.close();
+      }
+    }
+  }
+
+  @Override
+  public TransportResponse post(URL url, byte[] content) throws IOException {
+    if (!isStarted()) {
+      throw new IOException("Transport is not started");
+    }
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for an in-flight slot");
+    }
+    try {
+      if (isProxied(url)) {
+        return proxied.post(url, content);
+      }
+      final String key = key(url);
+      Connection connection = idleConnection(key);
+      if (connection != null) {
+        try {
+          return exchange(key, connection, url, content);
+        } catch (IOException e) {
+          connection.close();
+          if (connection.responseStarted) {
+            throw e;
+          }
+          // the server closed the idle connection, send again on a fresh one
+        }
+      }
+      connection = open(url);
+      try {
+        return exchange(key, connection, url, content);
+      } catch (IOException e) {
+        connection.close();
+        throw e;
+      }
+    } finally {
+      inFlight.release();
+    }
+  }
+
+  private TransportResponse exchange(String key, Connection connection, URL url, byte[] content) throws IOException {
+    connection.writeRequest(url, content);
+    final TransportResponse response = connection.readResponse();
+    if (connection.reusable && isStarted()) {
+      release(key, connection);
+    } else {
+      connection.close();
+    }
+    return response;
+  }
+
+  private Connection idleConnection(String key) {
+    Queue<Connection> connections = idleConnections.get(key);
+    if (connections == null) {
+      return null;
+    }
+    final long now = System.currentTimeMillis();
+    Connection connection;
+    while ((connection = connections.poll()) != null) {
+      if (now - connection.lastUsed < keepAliveTime.getMilliseconds() && !connection.socket.isClosed()) {
+        return connection;
+      }
+      connection.close();
+    }
+    return null;
+  }
+
+  private void release(String key, Connection connection) {
+    Queue<Connection> connections = idleConnections.get(key);
+    if (connections == null) {
+      connections = new ConcurrentLinkedQueue<Connection>();
+      Queue<Connection> existing = idleConnections.putIfAbsent(key, connections);
+      if (existing != null) {
+        connections = existing;
+      }
+    }
+    if (connections.size() < maxIdleConnections) {
+      connection.lastUsed = System.currentTimeMillis();
+      connections.offer(connection);
+    } else {
+      connection.close();
+    }
+  }
+
+  private Connection open(URL url) throws IOException {
+    final String host = url.getHost();
+    final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setKeepAlive(true);
+      socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis());
+      socket.setSoTimeout(readTimeoutMillis());
+      if ("https".equalsIgnoreCase(url.getProtocol())) {
+        SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true);
+        socket = sslSocket;
+        verifyHostname(sslSocket);
+        sslSocket.startHandshake();
+      }
+      return new Connection(socket);
+    } catch (IOException e) {
+      closeQuietly(socket);
+      throw e;
+    }
+  }
+
+  /**
+   * Enables endpoint identification so that the certificate must match the host.
+   * Looked up reflectively because it is not available on Java 6.
+   */
+  private void verifyHostname(SSLSocket socket) throws IOException {
+    try {
+      SSLParameters parameters = socket.getSSLParameters();
+      Method method = SSLParameters.class.getMethod("setEndpointIdentificationAlgorithm", String.class);
+      method.invoke(parameters, "HTTPS");
+      socket.setSSLParameters(parameters);
+    } catch (Exception e) {
+      throw new IOException("Hostname verification is not supported on this runtime: " + e);
+    }
+  }
+
+  /**
+   * @return {@code true} if the default proxy selector sends requests to the URL through a proxy
+   */
+  static boolean isProxied(URL url) {
+    final ProxySelector selector = ProxySelector.getDefault();
+    if (selector == null) {
+      return false;
+    }
+    try {
+      final List<Proxy> proxies = selector.select(url.toURI());
+      return !proxies.isEmpty() && proxies.get(0).type() != Proxy.Type.DIRECT;
+    } catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  static String key(URL url) {
+    final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return url.getProtocol().toLowerCase(Locale.ENGLISH) + "://" + url.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public int getMaxIdleConnections() {
+    return maxIdleConnections;
+  }
+
+  public void setMaxIdleConnections(int maxIdleConnections) {
+    this.maxIdleConnections = maxIdleConnections;
+  }
+
+  public Duration getKeepAliveTime() {
+    return keepAliveTime;
+  }
+
+  public void setKeepAliveTime(Duration keepAliveTime) {
+    this.keepAliveTime = keepAliveTime;
+  }
+
+  private static final class Connection {
+
+    final Socket socket;
+
+    final InputStream in;
+
+    final OutputStream out;
+
+    volatile long lastUsed;
+
+    boolean reusable;
+
+    boolean responseStarted;
+
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    void writeRequest(URL url, byte[] content) throws IOException {
+      reusable = false;
+      responseStarted = false;
+      final String file = url.getFile();
+      StringBuilder head = new StringBuilder(256);
+      head.append("POST ").append(file.length() == 0 ? "/" : file).append(" HTTP/1.1\r\n");
+      head.append("Host: ").append(url.getHost());
+      if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+        head.append(':').append(url.getPort());
+      }
+      head.append("\r\n");
+      head.append("Content-Type: ").append(CONTENT_TYPE).append("\r\n");
+      head.append("Content-Length: ").append(content.length).append("\r\n");
+      head.append("Connection: keep-alive\r\n");
+      head.append("\r\n");
+      out.write(head.toString().getBytes(ASCII));
+      out.write(content);
+      out.flush();
+    }
+
+    TransportResponse readResponse() throws IOException {
+      String statusLine = readLine();
+      responseStarted = true;
+      int status = status(statusLine);
+      Map<String, String> headers = readHeaders();
+      while (status >= 100 && status < 200) {
+        statusLine = readLine();
+        status = status(statusLine);
+        headers = readHeaders();
+      }
+      final String transferEncoding = headers.get("transfer-encoding");
+      final String contentLength = headers.get("content-length");
+      byte[] body;
+      boolean delimited = true;
+      if (status == 204 || status == 304) {
+        body = new byte[0];
+      } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+        body = readChunked();
+      } else if (contentLength != null) {
+        body = readFully(parseLength(contentLength));
+      } else {
+        body = readToEnd();
+        delimited = false;
+      }
+      final String connection = headers.get("connection");
+      if (statusLine.startsWith("HTTP/1.0")) {
+        reusable = delimited && "keep-alive".equalsIgnoreCase(connection);
+      } else {
+        reusable = delimited && !"close".equalsIgnoreCase(connection);
+      }
+      return new TransportResponse(status, decode(body, charset(headers.get("content-type"))), headers);
+    }
+
+    private int status(String statusLine) throws IOException {
+      String[] parts = statusLine.split(" ", 3);
+      if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+        throw new IOException("Invalid status line: " + statusLine);
+      }
+      try {
+        return Integer.parseInt(parts[1]);
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid status line: " + statusLine);
+      }
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+      Map<String, String> headers = new HashMap<String, String>();
+      String line;
+      while ((line = readLine()).length() > 0) {
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          String name = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+          if (!headers.containsKey(name)) {
+            headers.put(name, line.substring(colon + 1).trim());
+          }
+        }
+      }
+      return headers;
+    }
+
+    private byte[] readChunked() throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      while (true) {
+        String line = readLine();
+        int extension = line.indexOf(';');
+        int size;
+        try {
+          size = Integer.parseInt((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid chunk size: " + line);
+        }
+        if (size < 0) {
+          throw new IOException("Invalid chunk size: " + line);
+        }
+        if (size == 0) {
+          // trailers
+          while (readLine().length() > 0) {
+            continue;
+          }
+          return body.toByteArray();
+        }
+        body.write(readFully(size));
+        readLine();
+      }
+    }
+
+    private byte[] readFully(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      int offset = 0;
+      while (offset < length) {
+        int count = in.read(bytes, offset, length - offset);
+        if (count == -1) {
+          throw new EOFException("Unexpected end of response body");
+        }
+        offset += count;
+      }
+      return bytes;
+    }
+
+    private byte[] readToEnd() throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        body.write(buffer, 0, count);
+      }
+      return body.toByteArray();
+    }
+
+    private String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = in.read()) != -1) {
+        if (c == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+          }
+          return line.toString();
+        }
+        line.append((char) c);
+      }
+      throw new EOFException("Connection closed by the server");
+    }
+
+    private static int parseLength(String contentLength) throws IOException {
+      final int length;
+      try {
+        length = Integer.parseInt(contentLength);
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid Content-Length: " + contentLength);
+      }
+      if (length < 0) {
+        throw new IOException("Invalid Content-Length: " + contentLength);
+      }
+      return length;
+    }
+
+    /**
+     * Decodes the body, falling back to UTF-8 if the charset is not supported.
+     */
+    private static String decode(byte[] body, String charset) throws UnsupportedEncodingException {
+      try {
+        return new String(body, charset);
+      } catch (UnsupportedEncodingException e) {
+        return new String(body, "UTF-8");
+      }
+    }
+
+    private static String charset(String contentType) {
+      if (contentType != null) {
+        for (String parameter : contentType.split(";")) {
+          parameter = parameter.trim();
+          if (parameter.toLowerCase(Locale.ENGLISH).startsWith("charset=")) {
+            return parameter.substring("charset=".length()).replace("\"", "");
+          }
+        }
+      }
+      return "UTF-8";
+    }
+
+    void close() {
+      closeQuietly(socket);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs posts concurrently, at most {@code maxInFlight} at a time.
+ *
+ * Each post runs on its own virtual thread when the runtime supports them,
+ * otherwise on a fixed pool of {@code maxInFlight} daemon platform threads.
+ * Virtual threads are created reflectively since the library is built for Java 6,
+ * and are only considered supported once one has been started, since Java 19
+ * and 20 declare them but refuse to create them without preview features.
+ * @author fossamagna
+ */
+final class PostExecutor {
+
+  private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+
+  private static final boolean VIRTUAL_THREAD_SUPPORTED = startVirtualThread();
+
+  private final ExecutorService executor;
+
+  private final Semaphore inFlight;
+
+  private final boolean virtual;
+
+  /**
+   * @param name prefix of the thread names
+   * @param maxInFlight maximum number of concurrent posts
+   * @param preferVirtual {@code true} to use virtual threads when they are supported
+   */
+  PostExecutor(String name, int maxInFlight, boolean preferVirtual) {
+    ExecutorService virtualExecutor = preferVirtual ? newVirtualThreadPerTaskExecutor(name) : null;
+    this.virtual = virtualExecutor != null;
+    this.executor = virtual ? virtualExecutor : newFixedThreadPool(name, maxInFlight);
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * @return {@code true} if the runtime supports virtual threads
+   */
+  static boolean isVirtualThreadSupported() {
+    return VIRTUAL_THREAD_SUPPORTED;
+  }
+
+  /**
+   * Starts an empty virtual thread.
+   * @return {@code true} if it started
+   */
+  private static boolean startVirtualThread() {
+    if (OF_VIRTUAL == null) {
+      return false;
+    }
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builderClass.getMethod("start", Runnable.class).invoke(builder, new Runnable() {
+        @Override
+        public void run() {
+        }
+      });
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+    if (!VIRTUAL_THREAD_SUPPORTED) {
+      return null;
+    }
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService newFixedThreadPool(final String name, int threads) {
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private static Method method(Class<?> type, String name) {
+    try {
+      return type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Runs the post once fewer than {@code maxInFlight} posts are running.
+   * @throws InterruptedException if interrupted while waiting for a free slot
+   * @throws RejectedExecutionException if the executor is shut down
+   */
+  void execute(final Runnable post) throws InterruptedException {
+    inFlight.acquire();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            post.run();
+          } finally {
+            inFlight.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for the running posts to complete.
+   * @return {@code true} if all posts completed within the timeout
+   */
+  boolean shutdown(long timeoutMillis) {
+    executor.shutdown();
+    try {
+      if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor.shutdownNow();
+    return false;
+  }
+
+  boolean isVirtual() {
+    return virtual;
+  }
+}
@@ -0,0 +1,24 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Policy deciding when {@link IdobataLayout} renders the system properties table again.
+ * @author fossamagna
+ */
+public enum RefreshPolicy {
+
+  /**
+   * The table is rendered once and reused afterwards.
+   */
+  ONCE,
+
+  /**
+   * The table is rendered again when the refresh interval has elapsed.
+   */
+  INTERVAL,
+
+  /**
+   * The table is rendered again when a fingerprint of the properties changes.
+   * The fingerprint is compared at most once per check interval.
+   */
+  FINGERPRINT
+}
@@ -0,0 +1,224 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+/**
+ * Suppresses repeated events within a time window.
+ *
+ * Events are keyed on logger name, level, message pattern and the class and
+ * top frame of the throwable. The first occurrence is sent right away, later
+ * occurrences within the window are counted and reported by one summary event
+ * when the window closes. Windows live in a concurrent map and are counted
+ * with atomics, so threads do not contend on a global lock.
+ * @author fossamagna
+ */
+final class RepeatAggregator {
+
+  private final long windowMillis;
+
+  private final int maxKeys;
+
+  private final ConcurrentMap<Key, Window> windows = new ConcurrentHashMap<Key, Window>();
+
+  private final Queue<Window> closed = new ConcurrentLinkedQueue<Window>();
+
+  RepeatAggregator(long windowMillis, int maxKeys) {
+    this.windowMillis = windowMillis;
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Records the event.
+   * @return {@code true} if the event should be sent, {@code false} if it is suppressed
+   */
+  boolean accept(ILoggingEvent event, long now) {
+    final Key key = new Key(event);
+    while (true) {
+      Window window = windows.get(key);
+      if (window == null) {
+        if (windows.size() >= maxKeys) {
+          // too many distinct events to track, let them through
+          return true;
+        }
+        if (windows.putIfAbsent(key, new Window(event, now)) == null) {
+          event.prepareForDeferredProcessing();
+          return true;
+        }
+      } else if (now - window.start < windowMillis) {
+        if (window.repeat(now)) {
+          return false;
+        }
+        // closed concurrently, start a new window
+        windows.remove(key, window);
+      } else if (windows.remove(key, window)) {
+        close(window);
+      }
+    }
+  }
+
+  /**
+   * Closes the windows older than the window time.
+   * @return summaries of the closed windows that had repeats
+   */
+  List<ILoggingEvent> expire(long now) {
+    for (Iterator<Map.Entry<Key, Window>> it = windows.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<Key, Window> entry = it.next();
+      Window window = entry.getValue();
+      if (now - window.start >= windowMillis && windows.remove(entry.getKey(), window)) {
+        close(window);
+      }
+    }
+    return summaries(now);
+  }
+
+  /**
+   * Closes all windows.
+   * @return summaries of the windows that had repeats
+   */
+  List<ILoggingEvent> drain(long now) {
+    for (Key key : windows.keySet()) {
+      Window window = windows.remove(key);
+      if (window != null) {
+        close(window);
+      }
+    }
+    return summaries(now);
+  }
+
+  private void close(Window window) {
+    if (window.close() > 0) {
+      closed.offer(window);
+    }
+  }
+
+  private List<ILoggingEvent> summaries(long now) {
+    List<ILoggingEvent> summaries = new ArrayList<ILoggingEvent>();
+    Window window;
+    while ((window = closed.poll()) != null) {
+      summaries.add(new RepeatSummaryEvent(window.first, window.closedRepeats, window.lastSeen - window.start, now));
+    }
+    return summaries;
+  }
+
+  int size() {
+    return windows.size();
+  }
+
+  private static final class Window {
+
+    final ILoggingEvent first;
+
+    final long start;
+
+    final AtomicInteger repeats = new AtomicInteger();
+
+    volatile long lastSeen;
+
+    int closedRepeats;
+
+    Window(ILoggingEvent first, long start) {
+      this.first = first;
+      this.start = start;
+      this.lastSeen = start;
+    }
+
+    boolean repeat(long now) {
+      while (true) {
+        int count = repeats.get();
+        if (count < 0) {
+          return false;
+        }
+        if (repeats.compareAndSet(count, count + 1)) {
+          if (now > lastSeen) {
+            lastSeen = now;
+          }
+          return true;
+        }
+      }
+    }
+
+    int close() {
+      closedRepeats = repeats.getAndSet(-1);
+      return closedRepeats;
+    }
+  }
+
+  static final class Key {
+
+    private final String loggerName;
+
+    private final Level level;
+
+    private final String message;
+
+    private final String throwableClassName;
+
+    private final StackTraceElement topFrame;
+
+    private final int hash;
+
+    Key(ILoggingEvent event) {
+      this.loggerName = event.getLoggerName();
+      this.level = event.getLevel();
+      this.message = event.getMessage();
+      IThrowableProxy tp = event.getThrowableProxy();
+      if (tp != null) {
+        this.throwableClassName = tp.getClassName();
+        StackTraceElementProxy[] frames = tp.getStackTraceElementProxyArray();
+        this.topFrame = frames != null && frames.length > 0 ? frames[0].getStackTraceElement() : null;
+      } else {
+        this.throwableClassName = null;
+        this.topFrame = null;
+      }
+      int h = hash(loggerName);
+      h = 31 * h + hash(level);
+      h = 31 * h + hash(message);
+      h = 31 * h + hash(throwableClassName);
+      h = 31 * h + hash(topFrame);
+      this.hash = h;
+    }
+
+    private static int hash(Object o) {
+      return o == null ? 0 : o.hashCode();
+    }
+
+    private static boolean eq(Object a, Object b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash
+          && eq(loggerName, other.loggerName)
+          && eq(level, other.level)
+          && eq(message, other.message)
+          && eq(throwableClassName, other.throwableClassName)
+          && eq(topFrame, other.topFrame);
+    }
+  }
+}
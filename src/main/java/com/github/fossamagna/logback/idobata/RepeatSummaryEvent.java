@@ -0,0 +1,113 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Map;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+
+/**
+ * Event reporting how often an aggregated event was repeated.
+ *
+ * Everything except the message and the timestamp is taken from the first occurrence.
+ * @author fossamagna
+ */
+final class RepeatSummaryEvent implements ILoggingEvent {
+
+  private final ILoggingEvent first;
+
+  private final String message;
+
+  private final long timeStamp;
+
+  RepeatSummaryEvent(ILoggingEvent first, int repeats, long elapsedMillis, long timeStamp) {
+    this.first = first;
+    this.message = first.getFormattedMessage() + " (repeated " + repeats + " times in "
+        + (elapsedMillis / 1000.0) + " seconds)";
+    this.timeStamp = timeStamp;
+  }
+
+  @Override
+  public String getThreadName() {
+    return first.getThreadName();
+  }
+
+  @Override
+  public Level getLevel() {
+    return first.getLevel();
+  }
+
+  @Override
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public Object[] getArgumentArray() {
+    return null;
+  }
+
+  @Override
+  public String getFormattedMessage() {
+    return message;
+  }
+
+  @Override
+  public String getLoggerName() {
+    return first.getLoggerName();
+  }
+
+  @Override
+  public LoggerContextVO getLoggerContextVO() {
+    return first.getLoggerContextVO();
+  }
+
+  @Override
+  public IThrowableProxy getThrowableProxy() {
+    return first.getThrowableProxy();
+  }
+
+  @Override
+  public StackTraceElement[] getCallerData() {
+    return first.getCallerData();
+  }
+
+  @Override
+  public boolean hasCallerData() {
+    return first.hasCallerData();
+  }
+
+  @Override
+  public Marker getMarker() {
+    return first.getMarker();
+  }
+
+  @Override
+  public Map<String, String> getMDCPropertyMap() {
+    return first.getMDCPropertyMap();
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public Map<String, String> getMdc() {
+    return first.getMdc();
+  }
+
+  @Override
+  public long getTimeStamp() {
+    return timeStamp;
+  }
+
+  @Override
+  public void prepareForDeferredProcessing() {
+    // the first occurrence has already been prepared
+  }
+
+  @Override
+  public String toString() {
+    return "[" + getLevel() + "] " + message;
+  }
+}
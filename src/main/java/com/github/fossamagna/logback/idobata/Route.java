@@ -0,0 +1,145 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Endpoint receiving the events selected by its conditions.
+ *
+ * An event matches when its level is at or above {@code level}, its logger is
+ * one of the logger prefixes or a descendant of one, and its MDC value for
+ * {@code mdcKey} equals {@code mdcValue}. Unset conditions match every event,
+ * an unset {@code mdcValue} matches any value of {@code mdcKey}.
+ * Each route is delivered by its own queue and {@code maxInFlight} sender threads.
+ * @author fossamagna
+ */
+public class Route {
+
+  private URL endpointUrl;
+
+  private Level level;
+
+  private final List<String> loggerPrefixes = new ArrayList<String>();
+
+  private String mdcKey;
+
+  private String mdcValue;
+
+  private int maxInFlight = 1;
+
+  private int queueSize = 256;
+
+  boolean matches(ILoggingEvent event) {
+    if (level != null && !event.getLevel().isGreaterOrEqual(level)) {
+      return false;
+    }
+    if (!loggerPrefixes.isEmpty() && !matchesLogger(event.getLoggerName())) {
+      return false;
+    }
+    if (mdcKey != null) {
+      final Map<String, String> mdc = event.getMDCPropertyMap();
+      final String value = mdc != null ? mdc.get(mdcKey) : null;
+      if (value == null || (mdcValue != null && !mdcValue.equals(value))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matchesLogger(String loggerName) {
+    if (loggerName == null) {
+      return false;
+    }
+    for (int i = 0, size = loggerPrefixes.size(); i < size; i++) {
+      if (isSelfOrDescendant(loggerName, loggerPrefixes.get(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return {@code true} if the logger is {@code prefix} or one of its descendants
+   */
+  static boolean isSelfOrDescendant(String loggerName, String prefix) {
+    return loggerName.startsWith(prefix) && (loggerName.length() == prefix.length() || prefix.endsWith(".")
+        || loggerName.charAt(prefix.length()) == '.');
+  }
+
+  public URL getEndpointUrl() {
+    return endpointUrl;
+  }
+
+  public void setEndpointUrl(URL endpointUrl) {
+    this.endpointUrl = endpointUrl;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Sets the minimum level of the routed events, all levels are routed when it is not set.
+   * @param level threshold level
+   */
+  public void setLevel(Level level) {
+    this.level = level;
+  }
+
+  public List<String> getLoggerPrefixes() {
+    return loggerPrefixes;
+  }
+
+  /**
+   * Adds a logger whose events, and those of its descendants, are routed.
+   * @param loggerPrefix logger name such as {@code com.example.billing}
+   */
+  public void addLoggerPrefix(String loggerPrefix) {
+    this.loggerPrefixes.add(loggerPrefix);
+  }
+
+  public String getMdcKey() {
+    return mdcKey;
+  }
+
+  public void setMdcKey(String mdcKey) {
+    this.mdcKey = mdcKey;
+  }
+
+  public String getMdcValue() {
+    return mdcValue;
+  }
+
+  public void setMdcValue(String mdcValue) {
+    this.mdcValue = mdcValue;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Sets the number of messages posted to this endpoint concurrently.
+   * @param maxInFlight number of sender threads of the route
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Sets the number of rendered messages awaiting delivery, newer messages are dropped when it is full.
+   * @param queueSize capacity of the queue of the route
+   */
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+}
@@ -0,0 +1,179 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Decides which events are posted according to the {@link SamplingRule}s.
+ *
+ * The rules are resolved once per logger name into a threshold per level, which
+ * is kept in a least recently used cache, so that a decision costs a map lookup
+ * and a xorshift step of a thread-local generator. The events sampled out are
+ * counted per level.
+ * @author fossamagna
+ */
+final class Sampler {
+
+  static final Level[] LEVELS = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  private static final long ALWAYS = Long.MAX_VALUE;
+
+  private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+
+  private static final ThreadLocal<long[]> RANDOM = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      final long seed = mix(SEEDS.addAndGet(0x9E3779B97F4A7C15L));
+      return new long[] { seed != 0 ? seed : 1 };
+    }
+  };
+
+  private final SamplingRule[] rules;
+
+  private final Map<String, long[]> thresholds;
+
+  private final StripedCounter[] sampledOut = new StripedCounter[LEVELS.length];
+
+  private final long[] reported = new long[LEVELS.length];
+
+  /**
+   * @param maxCachedLoggers maximum number of loggers whose thresholds are cached
+   */
+  Sampler(List<SamplingRule> rules, final int maxCachedLoggers) {
+    this.rules = rules.toArray(new SamplingRule[rules.size()]);
+    this.thresholds = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+        return size() > maxCachedLoggers;
+      }
+    };
+    for (int i = 0; i < sampledOut.length; i++) {
+      sampledOut[i] = new StripedCounter();
+    }
+  }
+
+  /**
+   * @return {@code true} if the event is posted, {@code false} if it is sampled out
+   */
+  boolean sample(ILoggingEvent event) {
+    final int level = index(event.getLevel());
+    final long threshold = thresholds(event.getLoggerName())[level];
+    if (threshold == ALWAYS || (nextRandom() >>> 1) < threshold) {
+      return true;
+    }
+    sampledOut[level].increment();
+    return false;
+  }
+
+  /**
+   * @return the number of events sampled out per level of {@link #LEVELS} since the last call
+   */
+  synchronized long[] takeSampledOutCounts() {
+    final long[] counts = new long[LEVELS.length];
+    for (int i = 0; i < counts.length; i++) {
+      final long sum = sampledOut[i].sum();
+      counts[i] = sum - reported[i];
+      reported[i] = sum;
+    }
+    return counts;
+  }
+
+  int cachedLoggers() {
+    synchronized (thresholds) {
+      return thresholds.size();
+    }
+  }
+
+  boolean isCached(String loggerName) {
+    synchronized (thresholds) {
+      return thresholds.containsKey(loggerName);
+    }
+  }
+
+  private long[] thresholds(String loggerName) {
+    final String key = loggerName != null ? loggerName : "";
+    long[] resolved;
+    synchronized (thresholds) {
+      resolved = thresholds.get(key);
+    }
+    if (resolved == null) {
+      resolved = resolve(key);
+      synchronized (thresholds) {
+        thresholds.put(key, resolved);
+      }
+    }
+    return resolved;
+  }
+
+  private long[] resolve(String loggerName) {
+    final long[] resolved = new long[LEVELS.length];
+    for (int level = 0; level < LEVELS.length; level++) {
+      SamplingRule best = null;
+      int bestLength = -1;
+      for (SamplingRule rule : rules) {
+        if (rule.getLevel() != null && index(rule.getLevel()) != level) {
+          continue;
+        }
+        final int length = rule.matchLength(loggerName);
+        if (length > bestLength || (length >= 0 && length == bestLength && best.getLevel() == null
+            && rule.getLevel() != null)) {
+          best = rule;
+          bestLength = length;
+        }
+      }
+      resolved[level] = best != null ? threshold(best.getRate()) : ALWAYS;
+    }
+    return resolved;
+  }
+
+  /**
+   * @return the bound of the non-negative random values keeping an event
+   */
+  static long threshold(double rate) {
+    if (rate >= 1.0) {
+      return ALWAYS;
+    }
+    return rate <= 0.0 ? 0 : (long) (rate * Long.MAX_VALUE);
+  }
+
+  static int index(Level level) {
+    switch (level.toInt()) {
+    case Level.TRACE_INT:
+      return 0;
+    case Level.DEBUG_INT:
+      return 1;
+    case Level.INFO_INT:
+      return 2;
+    case Level.WARN_INT:
+      return 3;
+    default:
+      return 4;
+    }
+  }
+
+  /**
+   * @return the next value of the xorshift generator of the current thread
+   */
+  static long nextRandom() {
+    final long[] state = RANDOM.get();
+    long x = state[0];
+    x ^= x << 13;
+    x ^= x >>> 7;
+    x ^= x << 17;
+    state[0] = x;
+    return x;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
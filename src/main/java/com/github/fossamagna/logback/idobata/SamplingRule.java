@@ -0,0 +1,78 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Ratio of the events of a level and of some loggers that {@link IdobataAppender} posts.
+ *
+ * A rule applies to the events of {@code level}, or of every level when it is not
+ * set, whose logger is one of the logger prefixes or a descendant of one, or any
+ * logger when no prefix is added. When several rules apply to an event, the one
+ * with the longest matching prefix wins, then the one with a level.
+ * @author fossamagna
+ */
+public class SamplingRule {
+
+  private Level level;
+
+  private final List<String> loggerPrefixes = new ArrayList<String>();
+
+  private double rate = 1.0;
+
+  /**
+   * @return the length of the longest prefix matching the logger, {@code 0} if the rule
+   *         has no prefix, or {@code -1} if it does not apply to the logger
+   */
+  int matchLength(String loggerName) {
+    if (loggerPrefixes.isEmpty()) {
+      return 0;
+    }
+    int length = -1;
+    for (int i = 0, size = loggerPrefixes.size(); i < size; i++) {
+      final String prefix = loggerPrefixes.get(i);
+      if (prefix.length() > length && Route.isSelfOrDescendant(loggerName, prefix)) {
+        length = prefix.length();
+      }
+    }
+    return length;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Sets the level of the sampled events, the rule applies to all levels when it is not set.
+   * @param level level of the events
+   */
+  public void setLevel(Level level) {
+    this.level = level;
+  }
+
+  public List<String> getLoggerPrefixes() {
+    return loggerPrefixes;
+  }
+
+  /**
+   * Adds a logger whose events, and those of its descendants, are sampled.
+   * @param loggerPrefix logger name such as {@code com.example.http}
+   */
+  public void addLoggerPrefix(String loggerPrefix) {
+    this.loggerPrefixes.add(loggerPrefix);
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets the ratio of the events posted, from {@code 0} for none to {@code 1} for all.
+   * @param rate sampling rate
+   */
+  public void setRate(double rate) {
+    this.rate = rate;
+  }
+}
@@ -0,0 +1,18 @@
+package com.github.fossamagna.logback.idobata;
+
+/**
+ * Policy applied by the spool of {@link IdobataAppender} when it reaches its maximum size.
+ * @author fossamagna
+ */
+public enum SpoolEvictionPolicy {
+
+  /**
+   * The oldest segment is deleted to make room for new messages.
+   */
+  DROP_OLDEST,
+
+  /**
+   * New messages are discarded until there is room again.
+   */
+  DROP_NEWEST
+}
@@ -0,0 +1,292 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.CoreConstants;
+
+/**
+ * Renders HTML escaped stack traces in the format of {@link ThrowableProxyUtil#asString(IThrowableProxy)},
+ * optionally compacted.
+ *
+ * Frames of a cause or suppressed throwable shared with the enclosing trace are
+ * omitted, frames beyond {@code maxDepth} are truncated, runs of frames from the
+ * omitted packages are collapsed and the whole trace is cut at {@code maxBytes}.
+ * The rendered frames are cached by their shape, so a throwable thrown again
+ * from the same place only has its class name and message rendered.
+ * @author fossamagna
+ */
+final class StackTraceCompactor {
+
+  private static final String LINE_SEPARATOR = CoreConstants.LINE_SEPARATOR;
+
+  static final String TRUNCATED = "... stack trace truncated" + LINE_SEPARATOR;
+
+  private final int maxDepth;
+
+  private final String[] omittedPackages;
+
+  private final int maxBytes;
+
+  private final Map<FramesKey, String> cache;
+
+  /**
+   * @param maxDepth maximum number of frames per throwable, or {@code 0} for no limit
+   * @param omittedPackages prefixes of the class names whose frames are collapsed
+   * @param maxBytes maximum UTF-8 length of the trace, or {@code 0} for no limit
+   * @param cacheSize maximum number of cached frame blocks, or {@code 0} to disable the cache
+   */
+  StackTraceCompactor(int maxDepth, List<String> omittedPackages, int maxBytes, final int cacheSize) {
+    this.maxDepth = maxDepth;
+    this.omittedPackages = omittedPackages.toArray(new String[omittedPackages.size()]);
+    this.maxBytes = maxBytes;
+    this.cache = cacheSize > 0 ? new LinkedHashMap<FramesKey, String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<FramesKey, String> eldest) {
+        return size() > cacheSize;
+      }
+    } : null;
+  }
+
+  void append(IThrowableProxy tp, StringBuilder buffer) {
+    final int start = buffer.length();
+    append(buffer, null, ThrowableProxyUtil.REGULAR_EXCEPTION_INDENT, tp, null);
+    if (maxBytes > 0) {
+      truncate(buffer, start);
+    }
+  }
+
+  private void append(StringBuilder buffer, String prefix, int indent, IThrowableProxy tp,
+      StackTraceElementProxy[] enclosing) {
+    ThrowableProxyUtil.indent(buffer, indent - 1);
+    if (prefix != null) {
+      buffer.append(prefix);
+    }
+    HtmlEscaper.escape(tp.getClassName(), buffer);
+    buffer.append(": ");
+    HtmlEscaper.escape(String.valueOf(tp.getMessage()), buffer);
+    buffer.append(LINE_SEPARATOR);
+    StackTraceElementProxy[] frames = tp.getStackTraceElementProxyArray();
+    if (frames == null) {
+      frames = new StackTraceElementProxy[0];
+    }
+    buffer.append(frames(frames, commonFrames(tp, frames, enclosing), indent));
+    final IThrowableProxy[] suppressed = tp.getSuppressed();
+    if (suppressed != null) {
+      for (IThrowableProxy current : suppressed) {
+        append(buffer, CoreConstants.SUPPRESSED, indent + ThrowableProxyUtil.SUPPRESSED_EXCEPTION_INDENT, current,
+            frames);
+      }
+    }
+    final IThrowableProxy cause = tp.getCause();
+    if (cause != null) {
+      append(buffer, CoreConstants.CAUSED_BY, indent, cause, frames);
+    }
+  }
+
+  /**
+   * @return the number of trailing frames shared with the enclosing trace
+   */
+  static int commonFrames(IThrowableProxy tp, StackTraceElementProxy[] frames, StackTraceElementProxy[] enclosing) {
+    int common = 0;
+    if (enclosing != null) {
+      int i = frames.length - 1;
+      int j = enclosing.length - 1;
+      while (i >= 0 && j >= 0 && frames[i].getStackTraceElement().equals(enclosing[j].getStackTraceElement())) {
+        common++;
+        i--;
+        j--;
+      }
+    }
+    return Math.min(Math.max(common, tp.getCommonFrames()), frames.length);
+  }
+
+  private String frames(StackTraceElementProxy[] frames, int common, int indent) {
+    if (cache == null) {
+      return renderFrames(frames, common, indent);
+    }
+    final FramesKey key = new FramesKey(frames, limit(frames, common), common, indent);
+    String rendered;
+    synchronized (cache) {
+      rendered = cache.get(key);
+    }
+    if (rendered == null) {
+      rendered = renderFrames(frames, common, indent);
+      final FramesKey detached = key.detach();
+      synchronized (cache) {
+        cache.put(detached, rendered);
+      }
+    }
+    return rendered;
+  }
+
+  /**
+   * @return the number of frames rendered, the rest being truncated or common
+   */
+  private int limit(StackTraceElementProxy[] frames, int common) {
+    final int end = frames.length - common;
+    return maxDepth > 0 ? Math.min(end, maxDepth) : end;
+  }
+
+  private String renderFrames(StackTraceElementProxy[] frames, int common, int indent) {
+    StringBuilder buffer = new StringBuilder(frames.length * 64);
+    final int end = frames.length - common;
+    final int limit = limit(frames, common);
+    StringBuilder frame = new StringBuilder(128);
+    int i = 0;
+    while (i < limit) {
+      final int omitted = omittedRun(frames, i, limit);
+      if (omitted > 1) {
+        ThrowableProxyUtil.indent(buffer, indent);
+        buffer.append("... ").append(omitted).append(" framework frames omitted").append(LINE_SEPARATOR);
+        i += omitted;
+        continue;
+      }
+      ThrowableProxyUtil.indent(buffer, indent);
+      frame.setLength(0);
+      ThrowableProxyUtil.subjoinSTEP(frame, frames[i]);
+      HtmlEscaper.escape(frame, buffer);
+      buffer.append(LINE_SEPARATOR);
+      i++;
+    }
+    if (limit < end) {
+      ThrowableProxyUtil.indent(buffer, indent);
+      buffer.append("... ").append(end - limit).append(" frames truncated").append(LINE_SEPARATOR);
+    }
+    if (common > 0) {
+      ThrowableProxyUtil.indent(buffer, indent);
+      buffer.append("... ").append(common).append(" common frames omitted").append(LINE_SEPARATOR);
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * @return the number of consecutive frames from the omitted packages starting at {@code from}
+   */
+  private int omittedRun(StackTraceElementProxy[] frames, int from, int to) {
+    int i = from;
+    while (i < to && isOmitted(frames[i].getStackTraceElement().getClassName())) {
+      i++;
+    }
+    return i - from;
+  }
+
+  private boolean isOmitted(String className) {
+    for (String omittedPackage : omittedPackages) {
+      if (className.startsWith(omittedPackage)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Cuts the trace after the last line that fits in {@code maxBytes}.
+   */
+  private void truncate(StringBuilder buffer, int start) {
+    long bytes = 0;
+    int lineStart = start;
+    final int length = buffer.length();
+    while (lineStart < length) {
+      int lineEnd = buffer.indexOf(LINE_SEPARATOR, lineStart);
+      lineEnd = lineEnd < 0 ? length : lineEnd + LINE_SEPARATOR.length();
+      bytes += MessageBatcher.utf8Length(buffer.subSequence(lineStart, lineEnd));
+      if (bytes > maxBytes) {
+        buffer.setLength(lineStart);
+        buffer.append(TRUNCATED);
+        return;
+      }
+      lineStart = lineEnd;
+    }
+  }
+
+  int cacheSize() {
+    if (cache == null) {
+      return 0;
+    }
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Shape of the rendered frames of one throwable: the frames rendered and the
+   * numbers of the frames truncated and omitted. Frames beyond the rendered ones
+   * are neither hashed nor kept.
+   */
+  private static final class FramesKey {
+
+    private final StackTraceElementProxy[] frames;
+
+    private final int limit;
+
+    private final int length;
+
+    private final int common;
+
+    private final int indent;
+
+    private final int hash;
+
+    FramesKey(StackTraceElementProxy[] frames, int limit, int common, int indent) {
+      this(frames, limit, frames.length, common, indent, hash(frames, limit, frames.length, common, indent));
+    }
+
+    private FramesKey(StackTraceElementProxy[] frames, int limit, int length, int common, int indent, int hash) {
+      this.frames = frames;
+      this.limit = limit;
+      this.length = length;
+      this.common = common;
+      this.indent = indent;
+      this.hash = hash;
+    }
+
+    private static int hash(StackTraceElementProxy[] frames, int limit, int length, int common, int indent) {
+      int hash = 1;
+      for (int i = 0; i < limit; i++) {
+        hash = 31 * hash + frames[i].getStackTraceElement().hashCode();
+      }
+      return 31 * (31 * (31 * hash + length) + common) + indent;
+    }
+
+    /**
+     * @return a key holding only the rendered frames, safe to keep in the cache
+     */
+    FramesKey detach() {
+      return new FramesKey(Arrays.copyOf(frames, limit), limit, length, common, indent, hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof FramesKey)) {
+        return false;
+      }
+      FramesKey other = (FramesKey) obj;
+      if (hash != other.hash || limit != other.limit || length != other.length || common != other.common
+          || indent != other.indent) {
+        return false;
+      }
+      for (int i = 0; i < limit; i++) {
+        if (!frames[i].getStackTraceElement().equals(other.frames[i].getStackTraceElement())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
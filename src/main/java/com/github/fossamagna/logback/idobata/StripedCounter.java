@@ -0,0 +1,53 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading concurrent updates over several cells, similar to LongAdder
+ * which is not available on Java 6.
+ *
+ * Threads update the cell picked by their id, cells are padded to separate cache
+ * lines so that updates from different threads rarely contend.
+ * @author fossamagna
+ */
+final class StripedCounter {
+
+  // 8 longs, one 64 byte cache line per cell
+  private static final int PADDING = 8;
+
+  private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+  void increment() {
+    add(1);
+  }
+
+  void add(long delta) {
+    cells.getAndAdd(index(), delta);
+  }
+
+  /**
+   * @return the sum of the cells, not an atomic snapshot while updates are in progress
+   */
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  private static int index() {
+    final long id = Thread.currentThread().getId();
+    return ((int) (id ^ (id >>> 32)) & (STRIPES - 1)) * PADDING;
+  }
+
+  static int stripes(int processors) {
+    int stripes = 1;
+    while (stripes < processors * 2 && stripes < 64) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+}
@@ -0,0 +1,74 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * Implemented as the generic cell rate algorithm: a single atomic holds the
+ * theoretical arrival time of the next permit, so acquiring is one CAS.
+ * Part of the burst can be reserved for priority requests.
+ * @author fossamagna
+ */
+final class TokenBucket {
+
+  private final long intervalNanos;
+
+  private final long priorityTolerance;
+
+  private final long normalTolerance;
+
+  private final AtomicLong theoreticalArrival;
+
+  /**
+   * @param permits permits per period
+   * @param periodNanos length of the period in nanoseconds
+   * @param burst maximum number of permits acquired at once
+   * @param reserved part of the burst that only priority requests can use
+   * @param now current time in nanoseconds
+   */
+  TokenBucket(int permits, long periodNanos, int burst, int reserved, long now) {
+    if (permits < 1 || periodNanos < 1 || burst < 1) {
+      throw new IllegalArgumentException("Permits, period and burst must be positive.");
+    }
+    this.intervalNanos = Math.max(1, periodNanos / permits);
+    this.priorityTolerance = (burst - 1) * intervalNanos;
+    this.normalTolerance = (burst - Math.min(Math.max(reserved, 0), burst) - 1) * intervalNanos;
+    this.theoreticalArrival = new AtomicLong(now);
+  }
+
+  /**
+   * Acquires a permit if one is available.
+   * @param priority whether the reserved part of the burst may be used
+   * @param now current time in nanoseconds
+   * @return {@code true} if a permit was acquired
+   */
+  boolean tryAcquire(boolean priority, long now) {
+    final long tolerance = priority ? priorityTolerance : normalTolerance;
+    while (true) {
+      final long tat = theoreticalArrival.get();
+      final long start = tat - now > 0 ? tat : now;
+      if (start - now > tolerance) {
+        return false;
+      }
+      if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Refuses all permits until {@code until}, e.g. when the server asks to slow down.
+   * @param until time in nanoseconds
+   */
+  void pauseUntil(long until) {
+    // an arrival time within the tolerance would still let the burst through, so empty the bucket
+    final long emptyUntil = until + priorityTolerance;
+    while (true) {
+      final long tat = theoreticalArrival.get();
+      if (tat - emptyUntil >= 0 || theoreticalArrival.compareAndSet(tat, emptyUntil)) {
+        return;
+      }
+    }
+  }
+}
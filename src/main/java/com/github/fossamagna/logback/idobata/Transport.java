@@ -0,0 +1,25 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.IOException;
+import java.net.URL;
+
+import ch.qos.logback.core.spi.ContextAware;
+import ch.qos.logback.core.spi.LifeCycle;
+
+/**
+ * Sends a form encoded request body to the Idobata webhook endpoint.
+ *
+ * Implementations must be safe for use by multiple threads.
+ * @author fossamagna
+ */
+public interface Transport extends ContextAware, LifeCycle {
+
+  /**
+   * Posts {@code content} as {@code application/x-www-form-urlencoded} to {@code url}.
+   * @param url endpoint url
+   * @param content request body
+   * @return response from the endpoint
+   * @throws IOException if the request could not be completed
+   */
+  TransportResponse post(URL url, byte[] content) throws IOException;
+}
@@ -0,0 +1,58 @@
+package com.github.fossamagna.logback.idobata;
+
+import ch.qos.logback.core.spi.ContextAwareBase;
+import ch.qos.logback.core.util.Duration;
+
+/**
+ * Base class for {@link Transport} implementations.
+ * @author fossamagna
+ */
+public abstract class TransportBase extends ContextAwareBase implements Transport {
+
+  protected static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+  private Duration connectTimeout = Duration.buildBySeconds(10);
+
+  private Duration readTimeout = Duration.buildBySeconds(30);
+
+  private volatile boolean started;
+
+  @Override
+  public void start() {
+    started = true;
+  }
+
+  @Override
+  public void stop() {
+    started = false;
+  }
+
+  @Override
+  public boolean isStarted() {
+    return started;
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(Duration connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  public Duration getReadTimeout() {
+    return readTimeout;
+  }
+
+  public void setReadTimeout(Duration readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  int connectTimeoutMillis() {
+    return (int) Math.min(Integer.MAX_VALUE, connectTimeout.getMilliseconds());
+  }
+
+  int readTimeoutMillis() {
+    return (int) Math.min(Integer.MAX_VALUE, readTimeout.getMilliseconds());
+  }
+}
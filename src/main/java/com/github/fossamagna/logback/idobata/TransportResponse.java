@@ -0,0 +1,80 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Response of the Idobata webhook endpoint.
+ * @author fossamagna
+ */
+public class TransportResponse {
+
+  private final int status;
+
+  private final String body;
+
+  private final Map<String, String> headers;
+
+  public TransportResponse(int status, String body) {
+    this(status, body, Collections.<String, String>emptyMap());
+  }
+
+  public TransportResponse(int status, String body, Map<String, String> headers) {
+    this.status = status;
+    this.body = body;
+    Map<String, String> copy = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    copy.putAll(headers);
+    this.headers = Collections.unmodifiableMap(copy);
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  /**
+   * Returns the value of the header, the name is compared case-insensitively.
+   * @param name header name
+   * @return header value or {@code null}
+   */
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public boolean isError() {
+    return status >= 400;
+  }
+
+  /**
+   * Returns the delay requested by the {@code Retry-After} header.
+   * @param now current time in milliseconds, used for HTTP-date values
+   * @return delay in milliseconds, or {@code -1} if the header is absent or invalid
+   */
+  public long getRetryAfterMillis(long now) {
+    String retryAfter = getHeader("Retry-After");
+    if (retryAfter == null) {
+      return -1;
+    }
+    retryAfter = retryAfter.trim();
+    try {
+      return Math.max(0, Long.parseLong(retryAfter) * 1000);
+    } catch (NumberFormatException e) {
+      // not delta-seconds, try HTTP-date
+    }
+    SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+    try {
+      return Math.max(0, httpDate.parse(retryAfter).getTime() - now);
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link Backoff}.
+ */
+public class BackoffTest {
+
+  @Test
+  public void testCapDoublesUpToMax() {
+    Backoff backoff = new Backoff(100, 1000);
+    assertThat(backoff.cap(1), is(100L));
+    assertThat(backoff.cap(2), is(200L));
+    assertThat(backoff.cap(4), is(800L));
+    assertThat(backoff.cap(5), is(1000L));
+    assertThat(backoff.cap(100), is(1000L));
+  }
+
+  @Test
+  public void testDelayWithJitter() {
+    Backoff backoff = new Backoff(100, 1000);
+    Random random = new Random(1);
+    for (int i = 0; i < 100; i++) {
+      assertThat(backoff.delay(3, random), is(allOf(greaterThanOrEqualTo(200L), lessThanOrEqualTo(400L))));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Test for {@link BoundedQueue}.
+ */
+public class BoundedQueueTest {
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testOfferAndPoll() throws InterruptedException {
+    BoundedQueue<String> queue = new BoundedQueue<String>(2);
+    assertThat(queue.offer("a"), is(true));
+    assertThat(queue.offer("b"), is(true));
+    assertThat(queue.offer("c"), is(false));
+    assertThat(queue.size(), is(2));
+    assertThat(queue.poll(), is("a"));
+    assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is("b"));
+    assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+    assertThat(queue.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testOfferWithTimeout() throws InterruptedException {
+    BoundedQueue<String> queue = new BoundedQueue<String>(1);
+    assertThat(queue.offer("a", 10, TimeUnit.MILLISECONDS), is(true));
+    assertThat(queue.offer("b", 10, TimeUnit.MILLISECONDS), is(false));
+  }
+
+  @Test
+  public void testOfferEvictingOldest() {
+    BoundedQueue<String> queue = new BoundedQueue<String>(2);
+    assertThat(queue.offerEvictingOldest("a"), is(nullValue()));
+    assertThat(queue.offerEvictingOldest("b"), is(nullValue()));
+    assertThat(queue.offerEvictingOldest("c"), is("a"));
+    assertThat(queue.size(), is(2));
+    assertThat(queue.poll(), is("b"));
+    assertThat(queue.poll(), is("c"));
+  }
+
+  @Test
+  public void testInvalidCapacity() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Capacity must be positive.");
+    new BoundedQueue<String>(0);
+  }
+}
@@ -0,0 +1,41 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link CachingDateFormat}.
+ */
+public class CachingDateFormatTest {
+
+  @Test
+  public void testFormat() {
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    CachingDateFormat format = new CachingDateFormat(dateFormat);
+    assertThat(format.format(0), is("1970-01-01T00:00:00.000+0000"));
+    assertThat(format.format(1001), is("1970-01-01T00:00:01.001+0000"));
+  }
+
+  @Test
+  public void testFormatCachesSameTimestamp() {
+    CachingDateFormat format = new CachingDateFormat(new SimpleDateFormat("HH:mm:ss.SSS"));
+    String first = format.format(12345);
+    assertThat(format.format(12345), is(sameInstance(first)));
+  }
+
+  @Test
+  public void testPrototypeIsCopied() {
+    SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm");
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    CachingDateFormat format = new CachingDateFormat(dateFormat);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("Asia/Tokyo"));
+    assertThat(format.format(0), is("00:00"));
+  }
+}
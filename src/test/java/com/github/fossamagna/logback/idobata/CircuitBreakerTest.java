@@ -0,0 +1,94 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+    assertThat(breaker.onFailure(breaker.tryAcquire(0), 0), is(false));
+    final long ticket = breaker.tryAcquire(0);
+    assertThat(ticket, is(not(0L)));
+    assertThat(breaker.onFailure(ticket, 0), is(true));
+    assertThat(breaker.isOpen(), is(true));
+    assertThat(breaker.tryAcquire(500), is(0L));
+    assertThat(breaker.remainingOpenMillis(500), is(500L));
+  }
+
+  @Test
+  public void testSuccessResetsFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    assertThat(breaker.onSuccess(breaker.tryAcquire(0)), is(false));
+    assertThat(breaker.onFailure(breaker.tryAcquire(0), 0), is(false));
+    assertThat(breaker.isOpen(), is(false));
+  }
+
+  @Test
+  public void testSingleTrialAfterOpenTime() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    final long trial = breaker.tryAcquire(1000);
+    assertThat(trial, is(not(0L)));
+    assertThat(breaker.tryAcquire(1000), is(0L));
+    assertThat(breaker.onSuccess(trial), is(true));
+    assertThat(breaker.isOpen(), is(false));
+    assertThat(breaker.tryAcquire(1000), is(not(0L)));
+  }
+
+  @Test
+  public void testFailedTrialOpensAgain() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    final long trial = breaker.tryAcquire(1000);
+    breaker.onFailure(trial, 1000);
+    assertThat(breaker.tryAcquire(1500), is(0L));
+    assertThat(breaker.tryAcquire(2000), is(not(0L)));
+  }
+
+  @Test
+  public void testLateFailureDoesNotEndTrial() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+    final long inFlight = breaker.tryAcquire(0);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    final long trial = breaker.tryAcquire(1000);
+    // a request sent before the circuit opened answers during the trial
+    assertThat(breaker.onFailure(inFlight, 1200), is(false));
+    assertThat(breaker.remainingOpenMillis(1200), is(0L));
+    assertThat(breaker.tryAcquire(1200), is(0L));
+    assertThat(breaker.onSuccess(trial), is(true));
+    assertThat(breaker.isOpen(), is(false));
+  }
+
+  @Test
+  public void testLateSuccessDoesNotClose() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+    final long inFlight = breaker.tryAcquire(0);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    assertThat(breaker.onSuccess(inFlight), is(false));
+    assertThat(breaker.isOpen(), is(true));
+  }
+
+  @Test
+  public void testReleaseTrialWithoutResult() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+    breaker.onFailure(breaker.tryAcquire(0), 0);
+    final long trial = breaker.tryAcquire(1000);
+    assertThat(breaker.tryAcquire(1000), is(0L));
+    breaker.release(trial);
+    final long next = breaker.tryAcquire(1000);
+    assertThat(next, is(not(0L)));
+    // releasing the old ticket again keeps the new trial
+    breaker.release(trial);
+    assertThat(breaker.tryAcquire(1000), is(0L));
+    assertThat(breaker.onSuccess(next), is(true));
+  }
+}
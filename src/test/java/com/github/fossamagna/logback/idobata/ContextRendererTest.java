@@ -0,0 +1,126 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Marker;
+import org.slf4j.helpers.BasicMarkerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link ContextRenderer}.
+ */
+public class ContextRendererTest {
+
+  private static final String TENANT = "<span class=\"label\" style=\"background-color: lightgrey; color: black;\">tenant: acme</span>";
+
+  private LoggingEvent event;
+
+  @Before
+  public void setUp() {
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("tenant", "acme");
+    mdc.put("requestId", "<42>");
+    mdc.put("user", "alice");
+    event = event(mdc);
+  }
+
+  @Test
+  public void testBadges() {
+    ContextRenderer renderer = new ContextRenderer(Arrays.asList("tenant", "missing", "requestId"), false,
+        ContextStyle.BADGES, 16);
+    assertThat(render(renderer), is(TENANT
+        + " <span class=\"label\" style=\"background-color: lightgrey; color: black;\">requestId: &lt;42&gt;</span>"));
+  }
+
+  @Test
+  public void testTable() {
+    ContextRenderer renderer = new ContextRenderer(Arrays.asList("tenant", "requestId"), false, ContextStyle.TABLE, 16);
+    assertThat(render(renderer),
+        is("<table><tbody><tr><th>tenant</th><td>acme</td></tr><tr><th>requestId</th><td>&lt;42&gt;</td></tr></tbody></table>"));
+  }
+
+  @Test
+  public void testMarkers() {
+    BasicMarkerFactory factory = new BasicMarkerFactory();
+    Marker marker = factory.getDetachedMarker("AUDIT");
+    marker.add(factory.getDetachedMarker("SECURITY"));
+    event.setMarker(marker);
+
+    ContextRenderer badges = new ContextRenderer(Collections.singletonList("tenant"), true, ContextStyle.BADGES, 16);
+    assertThat(render(badges), is(TENANT
+        + " <span class=\"label\" style=\"background-color: steelblue; color: white;\">AUDIT</span>"
+        + " <span class=\"label\" style=\"background-color: steelblue; color: white;\">SECURITY</span>"));
+
+    ContextRenderer table = new ContextRenderer(Collections.<String> emptyList(), true, ContextStyle.TABLE, 16);
+    assertThat(render(table),
+        is("<table><tbody><tr><th>marker</th><td>AUDIT</td></tr><tr><th>marker</th><td>SECURITY</td></tr></tbody></table>"));
+  }
+
+  @Test
+  public void testBudgetCutsBetweenEntries() {
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("tenant", "acme");
+    mdc.put("requestId", new String(new char[2000]).replace('\0', 'x'));
+    event = event(mdc);
+    ContextRenderer badges = new ContextRenderer(Arrays.asList("tenant", "requestId"), false, ContextStyle.BADGES, 16);
+    StringBuilder buffer = new StringBuilder();
+    assertThat(badges.append(event, buffer, 1000), is((long) FormEncoder.encodedLength(TENANT)));
+    assertThat(buffer.toString(), is(TENANT));
+
+    ContextRenderer table = new ContextRenderer(Arrays.asList("requestId", "tenant"), false, ContextStyle.TABLE, 16);
+    buffer.setLength(0);
+    assertThat(table.append(event, buffer, 1000), is(0L));
+    assertThat(buffer.toString(), is(""));
+  }
+
+  @Test
+  public void testNothingToRender() {
+    event = event(Collections.<String, String> emptyMap());
+    ContextRenderer renderer = new ContextRenderer(Collections.singletonList("tenant"), true, ContextStyle.TABLE, 16);
+    assertThat(render(renderer), is(""));
+    assertThat(renderer.isEmpty(), is(false));
+    assertThat(new ContextRenderer(Collections.<String> emptyList(), false, ContextStyle.TABLE, 16).isEmpty(), is(true));
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    ContextRenderer renderer = new ContextRenderer(Collections.singletonList("tenant"), false, ContextStyle.BADGES, 2);
+    for (String tenant : new String[] { "a", "b", "a", "c", "d" }) {
+      event = event(Collections.singletonMap("tenant", tenant));
+      assertThat(render(renderer), is(
+          "<span class=\"label\" style=\"background-color: lightgrey; color: black;\">tenant: " + tenant + "</span>"));
+    }
+    assertThat(renderer.cacheSize(), is(2));
+  }
+
+  @Test
+  public void testCacheDisabled() {
+    ContextRenderer renderer = new ContextRenderer(Collections.singletonList("tenant"), false, ContextStyle.BADGES, 0);
+    assertThat(render(renderer), is(TENANT));
+    assertThat(renderer.cacheSize(), is(0));
+  }
+
+  private static LoggingEvent event(Map<String, String> mdc) {
+    LoggingEvent event = new LoggingEvent("", new LoggerContext().getLogger("com.example.Foo"), Level.INFO, "message",
+        null, null);
+    event.setMDCPropertyMap(mdc);
+    return event;
+  }
+
+  private String render(ContextRenderer renderer) {
+    StringBuilder buffer = new StringBuilder("prefix");
+    renderer.append(event, buffer);
+    return buffer.substring("prefix".length());
+  }
+}
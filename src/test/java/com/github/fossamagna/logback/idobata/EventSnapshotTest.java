@@ -0,0 +1,114 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link EventSnapshot}.
+ */
+public class EventSnapshotTest {
+
+  private final LoggerContext context = new LoggerContext();
+
+  @Test
+  public void testCopiesEvent() {
+    Exception exception = new IllegalStateException("boom");
+    LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.WARN, "hello {}",
+        exception, new Object[] { "world" });
+    event.setTimeStamp(1234L);
+
+    ILoggingEvent snapshot = EventSnapshot.of(event, new String[0]);
+
+    assertThat(snapshot.getTimeStamp(), is(1234L));
+    assertThat(snapshot.getLevel(), is(Level.WARN));
+    assertThat(snapshot.getThreadName(), is(Thread.currentThread().getName()));
+    assertThat(snapshot.getLoggerName(), is("com.example.Foo"));
+    assertThat(snapshot.getMessage(), is("hello {}"));
+    assertThat(snapshot.getFormattedMessage(), is("hello world"));
+    assertThat(snapshot.getThrowableProxy(), is(sameInstance(event.getThrowableProxy())));
+    assertThat(snapshot.getCallerData().length, is(0));
+    assertThat(snapshot.toString(), is("[WARN] hello world"));
+  }
+
+  @Test
+  public void testThreadNameOfLoggingThread() throws InterruptedException {
+    final LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.INFO, "message",
+        null, null);
+    final ILoggingEvent[] snapshot = new ILoggingEvent[1];
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        snapshot[0] = EventSnapshot.of(event, new String[0]);
+      }
+    }, "logging-thread");
+    thread.start();
+    thread.join();
+
+    assertThat(snapshot[0].getThreadName(), is("logging-thread"));
+  }
+
+  @Test
+  public void testFormatsMutableArgumentsEagerly() {
+    StringBuilder argument = new StringBuilder("before");
+    LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.INFO, "value {}", null,
+        new Object[] { argument });
+
+    ILoggingEvent snapshot = EventSnapshot.of(event, new String[0]);
+    argument.setLength(0);
+    argument.append("after");
+
+    assertThat(snapshot.getFormattedMessage(), is("value before"));
+    assertThat(snapshot.getArgumentArray(), is(nullValue()));
+  }
+
+  @Test
+  public void testFormatsImmutableArgumentsLazily() {
+    Object[] arguments = new Object[] { "a", 1, Level.INFO.levelStr };
+    LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.INFO, "{} {} {}", null,
+        arguments);
+
+    ILoggingEvent snapshot = EventSnapshot.of(event, new String[0]);
+    arguments[0] = "changed";
+
+    assertThat(snapshot.getFormattedMessage(), is("a 1 INFO"));
+  }
+
+  @Test
+  public void testSelectsMdcEntries() {
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("tenant", "a");
+    mdc.put("user", "b");
+    mdc.put("request", "c");
+    LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.INFO, "message", null,
+        null);
+    event.setMDCPropertyMap(mdc);
+
+    assertThat(EventSnapshot.of(event, new String[0]).getMDCPropertyMap().isEmpty(), is(true));
+    assertThat(EventSnapshot.of(event, new String[] { "user" }).getMDCPropertyMap().toString(), is("{user=b}"));
+    Map<String, String> selected = EventSnapshot.of(event, new String[] { "tenant", "request", "missing" })
+        .getMDCPropertyMap();
+    assertThat(selected.size(), is(2));
+    assertThat(selected.get("tenant"), is("a"));
+    assertThat(selected.get("request"), is("c"));
+  }
+
+  @Test
+  public void testSnapshotOfSnapshot() {
+    LoggingEvent event = new LoggingEvent("", context.getLogger("com.example.Foo"), Level.INFO, "message", null,
+        null);
+    ILoggingEvent snapshot = EventSnapshot.of(event, new String[0]);
+    assertThat(EventSnapshot.of(snapshot, new String[0]), is(sameInstance(snapshot)));
+  }
+}
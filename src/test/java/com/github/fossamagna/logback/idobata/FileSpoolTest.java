@@ -0,0 +1,178 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link FileSpool}.
+ */
+public class FileSpoolTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private File directory;
+
+  private FileSpool spool;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(folder.getRoot(), "spool");
+  }
+
+  @After
+  public void tearDown() {
+    if (spool != null) {
+      spool.close();
+    }
+  }
+
+  @Test
+  public void testAppendAndAcknowledgeInOrder() throws IOException {
+    spool = open(1024, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    assertThat(spool.isEmpty(), is(true));
+    assertThat(spool.append(bytes("a"), 1), is(true));
+    assertThat(spool.append(bytes("b"), 1), is(true));
+    assertThat(string(spool.peek()), is("a"));
+    assertThat(string(spool.peek()), is("a"));
+    spool.acknowledge();
+    assertThat(string(spool.peek()), is("b"));
+    spool.acknowledge();
+    assertThat(spool.peek(), is(nullValue()));
+    assertThat(spool.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testRollsAndDeletesSegments() throws IOException {
+    spool = open(20, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.append(bytes("0123456789"), 1);
+    spool.append(bytes("0123456789"), 1);
+    spool.append(bytes("0123456789"), 1);
+    assertThat(segmentCount(), is(3));
+    spool.peek();
+    spool.acknowledge();
+    assertThat(segmentCount(), is(2));
+    spool.peek();
+    spool.acknowledge();
+    spool.peek();
+    spool.acknowledge();
+    assertThat(segmentCount(), is(1));
+    assertThat(spool.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testReplaysUnacknowledgedAfterReopen() throws IOException {
+    spool = open(20, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.append(bytes("a"), 1);
+    spool.append(bytes("b"), 2);
+    spool.append(bytes("c"), 3);
+    spool.peek();
+    spool.acknowledge();
+    spool.close();
+
+    spool = open(20, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    assertThat(string(spool.peek()), is("b"));
+    assertThat(spool.peekedEvents(), is(2));
+    spool.acknowledge();
+    assertThat(string(spool.peek()), is("c"));
+    assertThat(spool.peekedEvents(), is(3));
+  }
+
+  @Test
+  public void testTruncatesTornRecord() throws IOException {
+    spool = open(1024, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.append(bytes("a"), 1);
+    spool.append(bytes("b"), 1);
+    spool.close();
+    RandomAccessFile file = new RandomAccessFile(new File(directory, String.format("%020d.spool", 0)), "rw");
+    try {
+      file.setLength(file.length() - 1);
+    } finally {
+      file.close();
+    }
+
+    spool = open(1024, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    assertThat(string(spool.peek()), is("a"));
+    spool.acknowledge();
+    assertThat(spool.peek(), is(nullValue()));
+    assertThat(spool.append(bytes("c"), 1), is(true));
+    assertThat(string(spool.peek()), is("c"));
+  }
+
+  @Test
+  public void testDropOldestEvictsSegment() throws IOException {
+    spool = open(24, 48, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.append(bytes("0123456789"), 1);
+    spool.append(bytes("abcdefghij"), 1);
+    assertThat(spool.append(bytes("ABCDEFGHIJ"), 1), is(true));
+    assertThat(spool.getEvictedSegments(), is(1L));
+    assertThat(string(spool.peek()), is("abcdefghij"));
+  }
+
+  @Test
+  public void testDropOldestEvictsSingleSegment() throws IOException {
+    spool = open(1024, 48, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.append(bytes("0123456789"), 1);
+    spool.append(bytes("abcdefghij"), 1);
+    assertThat(spool.append(bytes("ABCDEFGHIJ"), 1), is(true));
+    assertThat(spool.getEvictedSegments(), is(1L));
+    assertThat(string(spool.peek()), is("ABCDEFGHIJ"));
+    assertThat(segmentCount(), is(1));
+  }
+
+  @Test
+  public void testDropNewestDiscardsPayload() throws IOException {
+    spool = open(24, 48, SpoolEvictionPolicy.DROP_NEWEST);
+    spool.append(bytes("0123456789"), 1);
+    spool.append(bytes("abcdefghij"), 1);
+    assertThat(spool.append(bytes("ABCDEFGHIJ"), 1), is(false));
+    assertThat(string(spool.peek()), is("0123456789"));
+  }
+
+  @Test
+  public void testClosed() throws IOException {
+    spool = open(1024, 4096, SpoolEvictionPolicy.DROP_OLDEST);
+    spool.close();
+    thrown.expect(IOException.class);
+    spool.append(bytes("a"), 1);
+  }
+
+  private FileSpool open(long segmentSize, long maxSize, SpoolEvictionPolicy policy) throws IOException {
+    FileSpool spool = new FileSpool(directory, segmentSize, maxSize, policy);
+    spool.open();
+    return spool;
+  }
+
+  private int segmentCount() {
+    int count = 0;
+    for (File file : directory.listFiles()) {
+      if (file.getName().endsWith(".spool")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static byte[] bytes(String s) throws UnsupportedEncodingException {
+    return s.getBytes("UTF-8");
+  }
+
+  private static String string(byte[] b) throws UnsupportedEncodingException {
+    return new String(b, "UTF-8");
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link FormEncoder}.
+ */
+public class FormEncoderTest {
+
+  @Test
+  public void testEncodeMatchesURLEncoder() throws UnsupportedEncodingException {
+    String[] values = {
+        "",
+        "log message.",
+        "azAZ09-_.*",
+        "<p>a & b = c; 100% +1 ~/?#</p>\r\n",
+        "caf\u00e9 \u00fc\u00df",
+        "\u30ed\u30b0\u30e1\u30c3\u30bb\u30fc\u30b8",
+        "emoji \ud83d\ude00 end",
+        "lone \ud83d high",
+        "lone \ude00 low",
+        "trailing \ud83d" };
+    for (String value : values) {
+      final String expected = "source=" + URLEncoder.encode(value, "UTF-8");
+      final byte[] actual = FormEncoder.encode("source=", value);
+      assertThat(value, new String(actual, "US-ASCII"), is(expected));
+      assertThat(value, FormEncoder.encodedLength(value), is(expected.length() - "source=".length()));
+    }
+  }
+
+  @Test
+  public void testEncodeAtOffset() throws UnsupportedEncodingException {
+    byte[] bytes = new byte[10];
+    final int end = FormEncoder.encode(new StringBuilder("a b\u00e9"), bytes, 1);
+    assertThat(end, is(bytes.length));
+    assertThat(new String(bytes, 1, end - 1, "US-ASCII"), is("a+b%C3%A9"));
+  }
+}
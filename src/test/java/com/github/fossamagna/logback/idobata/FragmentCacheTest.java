@@ -0,0 +1,62 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link FragmentCache}.
+ */
+public class FragmentCacheTest {
+
+  @Test
+  public void testGet() {
+    FragmentCache cache = new FragmentCache(16, 1024);
+    FragmentCache.Fragment fragment = cache.get("<main>");
+    assertThat(fragment.html, is("&lt;main&gt;"));
+    assertThat(fragment.encodedLength, is(FormEncoder.encodedLength("&lt;main&gt;")));
+    assertThat(cache.get("<main>"), is(sameInstance(fragment)));
+    assertThat(cache.size(), is(1));
+    assertThat(cache.chars(), is((long) ("<main>".length() + "&lt;main&gt;".length())));
+  }
+
+  @Test
+  public void testCleanNameNotCopied() {
+    FragmentCache cache = new FragmentCache(16, 1024);
+    String name = "com.example.Foo";
+    assertThat(cache.get(name).html, is(sameInstance(name)));
+    assertThat(cache.chars(), is((long) name.length()));
+  }
+
+  @Test
+  public void testNull() {
+    FragmentCache cache = new FragmentCache(16, 1024);
+    assertThat(cache.get(null).html, is("null"));
+    assertThat(cache.size(), is(0));
+  }
+
+  @Test
+  public void testEvictsOldestBeyondMaxEntries() {
+    FragmentCache cache = new FragmentCache(2, 1024);
+    FragmentCache.Fragment first = cache.get("worker-1");
+    cache.get("worker-2");
+    cache.get("worker-3");
+    assertThat(cache.size(), is(2));
+    assertThat(cache.chars(), is(16L));
+    assertThat(cache.get("worker-1"), is(not(sameInstance(first))));
+    assertThat(cache.get("worker-3").html, is("worker-3"));
+  }
+
+  @Test
+  public void testEvictsBeyondMaxChars() {
+    FragmentCache cache = new FragmentCache(100, 20);
+    for (int i = 0; i < 50; i++) {
+      cache.get("pool-" + i + "-thread");
+    }
+    assertThat(cache.chars() <= 20, is(true));
+    assertThat(cache.size(), is(1));
+  }
+}
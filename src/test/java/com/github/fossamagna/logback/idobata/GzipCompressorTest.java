@@ -0,0 +1,92 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link GzipCompressor}.
+ */
+public class GzipCompressorTest {
+
+  private final GzipCompressor compressor = new GzipCompressor(Deflater.DEFAULT_COMPRESSION, 2);
+
+  @Test
+  public void testCompress() throws IOException {
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      html.append("<tr><td>java.property.").append(i).append("</td><td>value</td></tr>");
+    }
+    final byte[] content = html.toString().getBytes("UTF-8");
+    GzipCompressor.Compressed compressed = compressor.compress(content);
+
+    assertThat(compressed.length < content.length / 10, is(true));
+    assertThat(Arrays.equals(decompress(compressed), content), is(true));
+  }
+
+  @Test
+  public void testCompressIncompressibleContent() throws IOException {
+    final byte[] content = new byte[20000];
+    new Random(1).nextBytes(content);
+    GzipCompressor.Compressed compressed = compressor.compress(content);
+
+    assertThat(compressed.length > content.length, is(true));
+    assertThat(Arrays.equals(decompress(compressed), content), is(true));
+  }
+
+  @Test
+  public void testCompressEmptyContent() throws IOException {
+    GzipCompressor.Compressed compressed = compressor.compress(new byte[0]);
+    assertThat(decompress(compressed).length, is(0));
+  }
+
+  @Test
+  public void testDeflaterReused() throws IOException {
+    GzipCompressor.Compressed first = compressor.compress("source=first".getBytes("UTF-8"));
+    compressor.release(first);
+    assertThat(compressor.pooled(), is(1));
+
+    GzipCompressor.Compressed second = compressor.compress("source=second".getBytes("UTF-8"));
+    assertThat(second, is(sameInstance(first)));
+    assertThat(new String(decompress(second), "UTF-8"), is("source=second"));
+    assertThat(compressor.pooled(), is(0));
+  }
+
+  @Test
+  public void testPoolIsBounded() throws IOException {
+    final byte[] content = "source=message".getBytes("UTF-8");
+    GzipCompressor.Compressed first = compressor.compress(content);
+    GzipCompressor.Compressed second = compressor.compress(content);
+    GzipCompressor.Compressed third = compressor.compress(content);
+    compressor.release(first);
+    compressor.release(second);
+    compressor.release(third);
+    assertThat(compressor.pooled(), is(2));
+
+    compressor.close();
+    assertThat(compressor.pooled(), is(0));
+    compressor.release(compressor.compress(content));
+    assertThat(compressor.pooled(), is(0));
+  }
+
+  private static byte[] decompress(GzipCompressor.Compressed compressed) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.bytes, 0, compressed.length));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link Histogram}.
+ */
+public class HistogramTest {
+
+  @Test
+  public void testEmpty() {
+    Histogram histogram = new Histogram();
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getMean(), is(0.0));
+    assertThat(histogram.getPercentile(0.99), is(0L));
+  }
+
+  @Test
+  public void testRecord() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertThat(histogram.getCount(), is(100L));
+    assertThat(histogram.getSum(), is(5050L));
+    assertThat(histogram.getMean(), is(50.5));
+    assertThat(histogram.getMax(), is(100L));
+    // 50 falls in the bucket of 32 to 63
+    assertThat(histogram.getPercentile(0.5), is(63L));
+    // capped by the maximum instead of the bucket bound 127
+    assertThat(histogram.getPercentile(0.99), is(100L));
+    assertThat(histogram.getPercentile(0.01), is(1L));
+  }
+
+  @Test
+  public void testRecordZeroAndNegative() {
+    Histogram histogram = new Histogram();
+    histogram.record(0);
+    histogram.record(-5);
+    assertThat(histogram.getCount(), is(2L));
+    assertThat(histogram.getPercentile(1), is(0L));
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import ch.qos.logback.core.helpers.Transform;
+
+/**
+ * Test for {@link HtmlEscaper}.
+ */
+public class HtmlEscaperTest {
+
+  @Test
+  public void testSameAsEscapeTags() {
+    String[] texts = { "", "plain text", "<b>bold</b>", "a & b", "\"quoted\" 'single'", "tab\tnew\nline\r",
+        "bell\u0007 nul\u0000", "\u3042\u3044<\u3046>", "&amp;", "<", "trailing&" };
+    for (String text : texts) {
+      StringBuilder buffer = new StringBuilder("prefix:");
+      HtmlEscaper.escape(text, buffer);
+      assertThat(text, buffer.toString(), is("prefix:" + Transform.escapeTags(text)));
+      assertThat(text, HtmlEscaper.escape(text), is(Transform.escapeTags(text)));
+    }
+  }
+
+  @Test
+  public void testEveryCharacter() {
+    StringBuilder text = new StringBuilder();
+    for (char c = 0; c < 256; c++) {
+      text.append(c).append('x');
+    }
+    StringBuilder buffer = new StringBuilder();
+    HtmlEscaper.escape(text, buffer);
+    assertThat(buffer.toString(), is(Transform.escapeTags(text.toString())));
+  }
+
+  @Test
+  public void testNull() {
+    StringBuilder buffer = new StringBuilder();
+    HtmlEscaper.escape(null, buffer);
+    assertThat(buffer.toString(), is("null"));
+    assertThat(HtmlEscaper.escape(null), is(nullValue()));
+  }
+
+  @Test
+  public void testCleanTextNotCopied() {
+    String text = "com.example.Foo";
+    assertThat(HtmlEscaper.escape(text), is(sameInstance(text)));
+  }
+}
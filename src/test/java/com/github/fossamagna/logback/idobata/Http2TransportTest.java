@@ -0,0 +1,162 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.core.ContextBase;
+
+/**
+ * Test for {@link Http2Transport}.
+ */
+public class Http2TransportTest {
+
+  private StubHttp2Server server;
+
+  private Http2Transport transport;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubHttp2Server();
+    server.start();
+    transport = new Http2Transport();
+    transport.setContext(new ContextBase());
+  }
+
+  @After
+  public void tearDown() {
+    transport.stop();
+    server.stop();
+  }
+
+  @Test
+  public void testPostUpgradesToHttp2() throws IOException {
+    Assume.assumeTrue(Http2Transport.isSupported());
+    transport.start();
+    TransportResponse first = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+    TransportResponse second = transport.post(server.getEndpointUrl(), "source=2".getBytes("UTF-8"));
+
+    assertThat(first.getStatus(), is(200));
+    assertThat(second.getStatus(), is(200));
+    assertThat(server.getStreamCount(), is(2));
+    assertThat(server.getConnectionCount(), is(1));
+    assertThat(new String(server.getBodies().get(1), "UTF-8"), is("source=2"));
+  }
+
+  @Test
+  public void testConcurrentPostsShareConnection() throws Exception {
+    Assume.assumeTrue(Http2Transport.isSupported());
+    transport.start();
+    final URL url = server.getEndpointUrl();
+    // the first post upgrades the connection, the others are multiplexed on it
+    transport.post(url, "source=0".getBytes("UTF-8"));
+    server.setLatencyMillis(200);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<TransportResponse>> futures = new ArrayList<Future<TransportResponse>>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(executor.submit(new Callable<TransportResponse>() {
+        @Override
+        public TransportResponse call() throws Exception {
+          return transport.post(url, "source=x".getBytes("UTF-8"));
+        }
+      }));
+    }
+    for (Future<TransportResponse> future : futures) {
+      assertThat(future.get().getStatus(), is(200));
+    }
+    executor.shutdown();
+
+    assertThat(server.getBodies(), hasSize(9));
+    assertThat(server.getConnectionCount(), is(1));
+    assertThat(server.getMaxInFlight() > 1, is(true));
+  }
+
+  @Test
+  public void testPostCompressesLargeBody() throws IOException {
+    Assume.assumeTrue(Http2Transport.isSupported());
+    transport.setCompressionThreshold(1024);
+    transport.start();
+    StringBuilder source = new StringBuilder("source=");
+    for (int i = 0; i < 200; i++) {
+      source.append("%3Cp%3Eat+com.example.Foo.bar%28Foo.java%3A").append(i).append("%29%3C%2Fp%3E");
+    }
+    final byte[] large = source.toString().getBytes("UTF-8");
+    final byte[] small = "source=small".getBytes("UTF-8");
+    transport.post(server.getEndpointUrl(), large);
+    transport.post(server.getEndpointUrl(), small);
+
+    final byte[] compressed = server.getBodies().get(0);
+    assertThat(compressed[0], is((byte) 0x1f));
+    assertThat(compressed[1], is((byte) 0x8b));
+    assertThat(compressed.length < large.length / 4, is(true));
+    assertThat(Arrays.equals(gunzip(compressed), large), is(true));
+    assertThat(Arrays.equals(server.getBodies().get(1), small), is(true));
+  }
+
+  @Test
+  public void testPostErrorStatus() throws IOException {
+    Assume.assumeTrue(Http2Transport.isSupported());
+    server.setStatus(503);
+    transport.start();
+    TransportResponse response = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+
+    assertThat(response.getStatus(), is(503));
+    assertThat(response.isError(), is(true));
+  }
+
+  @Test(expected = IOException.class)
+  public void testPostNotStarted() throws IOException {
+    transport.post(server.getEndpointUrl(), new byte[0]);
+  }
+
+  @Test
+  public void testStartInvalidCompressionLevel() {
+    transport.setCompressionLevel(10);
+    transport.start();
+    assertThat(transport.isStarted(), is(false));
+  }
+
+  @Test
+  public void testStartWithoutHttpClient() {
+    Assume.assumeTrue(!Http2Transport.isSupported());
+    transport.start();
+    assertThat(transport.isStarted(), is(false));
+  }
+
+  @Test
+  public void testDefaults() {
+    assertThat(transport.getCompressionThreshold(), is(0));
+    assertThat(transport.getCompressionLevel(), is(Deflater.DEFAULT_COMPRESSION));
+  }
+
+  private static byte[] gunzip(byte[] compressed) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.util.Duration;
+
+/**
+ * Test for {@link HttpURLConnectionTransport}.
+ */
+public class HttpURLConnectionTransportTest {
+
+  private StubIdobataServer server;
+
+  private HttpURLConnectionTransport transport;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubIdobataServer();
+    server.start();
+    transport = new HttpURLConnectionTransport();
+    transport.setContext(new ContextBase());
+    transport.start();
+  }
+
+  @After
+  public void tearDown() {
+    transport.stop();
+    server.stop();
+  }
+
+  @Test
+  public void testPost() throws IOException {
+    TransportResponse response = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+    assertThat(response.getStatus(), is(200));
+    assertThat(response.isError(), is(false));
+    assertThat(server.getBodies(), contains("source=1"));
+  }
+
+  @Test
+  public void testPostErrorResponse() throws IOException {
+    server.setStatus(500);
+    server.setResponseBody("Internal Server Error");
+    TransportResponse response = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+    assertThat(response.getStatus(), is(500));
+    assertThat(response.getBody(), is("Internal Server Error"));
+    assertThat(response.getHeader("Content-Type"), is("text/plain; charset=UTF-8"));
+  }
+
+  @Test
+  public void testTimeouts() {
+    assertThat(transport.getConnectTimeout().getMilliseconds(), is(10000L));
+    transport.setConnectTimeout(Duration.buildByMilliseconds(100));
+    assertThat(transport.getConnectTimeout().getMilliseconds(), is(100L));
+    assertThat(transport.getReadTimeout().getMilliseconds(), is(30000L));
+    transport.setReadTimeout(Duration.buildByMilliseconds(200));
+    assertThat(transport.getReadTimeout().getMilliseconds(), is(200L));
+  }
+}
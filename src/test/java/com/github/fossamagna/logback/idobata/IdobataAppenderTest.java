@@ -2,42 +2,73 @@ package com.github.fossamagna.logback.idobata;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.net.URLStreamHandler;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.core.Context;
 import ch.qos.logback.core.ContextBase;
 import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.layout.EchoLayout;
 import ch.qos.logback.core.status.Status;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+
+import com.sun.net.httpserver.HttpExchange;
 
 /**
  * Test for {@link IdobataAppender}.
  */
 public class IdobataAppenderTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
 
   private IdobataAppender appender;
 
@@ -186,6 +217,1247 @@ public class IdobataAppenderTest {
     verify(connection, never()).getInputStream();
   }
 
+  @Test
+  public void testAppendILoggingEvent_Async() throws IOException {
+    final String enc = "UTF-8";
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[0]);
+    final HttpURLConnection connection = mock(HttpURLConnection.class);
+    when(connection.getResponseCode()).thenReturn(200);
+    when(connection.getOutputStream()).thenReturn(outputStream);
+    when(connection.getInputStream()).thenReturn(inputStream);
+    final URL url = getEndpointURL(connection);
+
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.toString()).thenReturn("log message.");
+
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setEndpointUrl(url);
+    appender.setAsync(true);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(new String(outputStream.toByteArray(), enc), is("format=html&source=" + URLEncoder.encode("log message." + CoreConstants.LINE_SEPARATOR, enc)));
+    verify(event).prepareForDeferredProcessing();
+    verify(connection).getResponseCode();
+  }
+
+  @Test
+  public void testAppend_AsyncSnapshot() throws Exception {
+    final List<ILoggingEvent> sent = new CopyOnWriteArrayList<ILoggingEvent>();
+    appender = new IdobataAppender() {
+      @Override
+      void send(ILoggingEvent eventObject) {
+        sent.add(eventObject);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setAsync(true);
+    appender.setDeferredProcessingPolicy(DeferredProcessingPolicy.SNAPSHOT);
+    appender.addMdcKey("user");
+    Route route = new Route();
+    route.setEndpointUrl(new URL("http://127.0.0.1/hook/custom/token"));
+    route.setMdcKey("tenant");
+    appender.addRoute(route);
+    LoggingEvent event = new LoggingEvent("", new LoggerContext().getLogger("test"), Level.INFO, "hello {}", null,
+        new Object[] { "world" });
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("user", "u");
+    mdc.put("tenant", "t");
+    mdc.put("other", "o");
+    event.setMDCPropertyMap(mdc);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(sent, hasSize(1));
+    assertThat(sent.get(0), is(instanceOf(EventSnapshot.class)));
+    assertThat(sent.get(0).getFormattedMessage(), is("hello world"));
+    assertThat(sent.get(0).getMDCPropertyMap().size(), is(2));
+    assertThat(sent.get(0).getMDCPropertyMap().get("tenant"), is("t"));
+  }
+
+  @Test
+  public void testAppend_AsyncSnapshotKeepsLayoutMdcKeys() throws Exception {
+    final List<ILoggingEvent> sent = new CopyOnWriteArrayList<ILoggingEvent>();
+    appender = new IdobataAppender() {
+      @Override
+      void send(ILoggingEvent eventObject) {
+        sent.add(eventObject);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setAsync(true);
+    appender.setDeferredProcessingPolicy(DeferredProcessingPolicy.SNAPSHOT);
+    IdobataLayout layout = new IdobataLayout();
+    layout.addMdcKey("requestId");
+    appender.setLayout(layout);
+    LoggingEvent event = new LoggingEvent("", new LoggerContext().getLogger("test"), Level.INFO, "hello", null, null);
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("requestId", "r");
+    mdc.put("other", "o");
+    event.setMDCPropertyMap(mdc);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(sent, hasSize(1));
+    assertThat(sent.get(0).getMDCPropertyMap(), is(Collections.singletonMap("requestId", "r")));
+  }
+
+  @Test
+  public void testAppend_AsyncDropNewest() throws InterruptedException {
+    final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<ILoggingEvent> sent = new CopyOnWriteArrayList<ILoggingEvent>();
+    appender = new IdobataAppender() {
+      @Override
+      void send(ILoggingEvent eventObject) {
+        sending.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        sent.add(eventObject);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setAsync(true);
+    appender.setQueueSize(1);
+    appender.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+    appender.start();
+
+    ILoggingEvent first = mock(ILoggingEvent.class);
+    ILoggingEvent second = mock(ILoggingEvent.class);
+    ILoggingEvent third = mock(ILoggingEvent.class);
+    appender.doAppend(first);
+    sending.await();
+    appender.doAppend(second);
+    appender.doAppend(third);
+    release.countDown();
+    appender.stop();
+
+    assertThat(sent, contains(first, second));
+    assertThat(appender.getDroppedCount(), is(1L));
+  }
+
+  @Test
+  public void testAppend_AsyncDropBelowLevel() throws InterruptedException {
+    final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<ILoggingEvent> sent = new CopyOnWriteArrayList<ILoggingEvent>();
+    appender = new IdobataAppender() {
+      @Override
+      void send(ILoggingEvent eventObject) {
+        sending.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        sent.add(eventObject);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setAsync(true);
+    appender.setQueueSize(1);
+    appender.setOverflowPolicy(OverflowPolicy.DROP_BELOW_LEVEL);
+    appender.setOverflowLevel(Level.WARN);
+    appender.start();
+
+    ILoggingEvent first = mock(ILoggingEvent.class);
+    ILoggingEvent second = mock(ILoggingEvent.class);
+    ILoggingEvent info = mock(ILoggingEvent.class);
+    when(first.getLevel()).thenReturn(Level.ERROR);
+    when(second.getLevel()).thenReturn(Level.ERROR);
+    when(info.getLevel()).thenReturn(Level.INFO);
+    appender.doAppend(first);
+    sending.await();
+    appender.doAppend(second);
+    appender.doAppend(info);
+    release.countDown();
+    appender.stop();
+
+    assertThat(sent, contains(first, second));
+    assertThat(appender.getDroppedCount(), is(1L));
+  }
+
+  @Test
+  public void testAppendILoggingEvent_Batch() throws IOException {
+    final String enc = "UTF-8";
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[0]);
+    final HttpURLConnection connection = mock(HttpURLConnection.class);
+    when(connection.getResponseCode()).thenReturn(200);
+    when(connection.getOutputStream()).thenReturn(outputStream);
+    when(connection.getInputStream()).thenReturn(inputStream);
+    final URL url = getEndpointURL(connection);
+
+    ILoggingEvent event1 = mock(ILoggingEvent.class);
+    when(event1.toString()).thenReturn("message 1");
+    ILoggingEvent event2 = mock(ILoggingEvent.class);
+    when(event2.toString()).thenReturn("message 2");
+
+    EchoLayout<ILoggingEvent> layout = new EchoLayout<ILoggingEvent>();
+    layout.setPresentationHeader("<div>");
+    layout.setPresentationFooter("</div>");
+    appender.setLayout(layout);
+    appender.setEndpointUrl(url);
+    appender.setBatchSize(2);
+    appender.start();
+    appender.doAppend(event1);
+    assertThat(outputStream.size(), is(0));
+    appender.doAppend(event2);
+    appender.stop();
+
+    final String ls = CoreConstants.LINE_SEPARATOR;
+    assertThat(new String(outputStream.toByteArray(), enc), is("format=html&source=" + URLEncoder.encode("<div>message 1" + ls + "message 2" + ls + "</div>", enc)));
+    verify(connection).getResponseCode();
+  }
+
+  @Test
+  public void testAppend_MetricsCountBatchedEvents() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+      MetricsListener listener = mock(MetricsListener.class);
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setBatchSize(5);
+      appender.addMetricsListener(listener);
+      appender.start();
+      for (int i = 0; i < 7; i++) {
+        appender.doAppend(event);
+      }
+      appender.stop();
+
+      IdobataMetrics metrics = appender.getMetrics();
+      assertThat(server.getBodies(), hasSize(2));
+      assertThat(metrics.getAppendedCount(), is(7L));
+      assertThat(metrics.getSentCount(), is(7L));
+      verify(listener).onSent(eq(5), anyInt());
+      verify(listener).onSent(eq(2), anyInt());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_BatchWithinMaxEncodedBytes() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("<b>caf\u00e9 au lait</b>");
+
+      EchoLayout<ILoggingEvent> layout = new EchoLayout<ILoggingEvent>();
+      layout.setPresentationHeader("<div class=\"log\">");
+      layout.setPresentationFooter("</div>");
+      appender.setLayout(layout);
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setBatchSize(100);
+      appender.setBatchMaxBytes(200);
+      appender.start();
+      for (int i = 0; i < 20; i++) {
+        appender.doAppend(event);
+      }
+      appender.stop();
+
+      assertThat(server.getBodies().size() > 1, is(true));
+      for (String body : server.getBodies()) {
+        assertThat(body.getBytes("UTF-8").length <= 200, is(true));
+      }
+      assertThat(appender.getMetrics().getSentCount(), is(20L));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppendILoggingEvent_BatchFlushedOnStop() throws IOException {
+    final String enc = "UTF-8";
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[0]);
+    final HttpURLConnection connection = mock(HttpURLConnection.class);
+    when(connection.getResponseCode()).thenReturn(200);
+    when(connection.getOutputStream()).thenReturn(outputStream);
+    when(connection.getInputStream()).thenReturn(inputStream);
+    final URL url = getEndpointURL(connection);
+
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.toString()).thenReturn("log message.");
+
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setEndpointUrl(url);
+    appender.setBatchSize(10);
+    appender.setLingerTime(Duration.buildBySeconds(60));
+    appender.start();
+    appender.doAppend(event);
+    assertThat(outputStream.size(), is(0));
+    appender.stop();
+
+    assertThat(new String(outputStream.toByteArray(), enc), is("format=html&source=" + URLEncoder.encode("log message." + CoreConstants.LINE_SEPARATOR, enc)));
+  }
+
+  @Test
+  public void testAppend_Aggregation() {
+    final List<ILoggingEvent> sent = new CopyOnWriteArrayList<ILoggingEvent>();
+    appender = new IdobataAppender() {
+      @Override
+      void send(ILoggingEvent eventObject) {
+        sent.add(eventObject);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setAggregationWindow(Duration.buildBySeconds(60));
+    appender.start();
+
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.getLoggerName()).thenReturn("logger");
+    when(event.getLevel()).thenReturn(Level.ERROR);
+    when(event.getMessage()).thenReturn("failed");
+    when(event.getFormattedMessage()).thenReturn("failed");
+    appender.doAppend(event);
+    appender.doAppend(event);
+    appender.doAppend(event);
+    assertThat(sent, contains(event));
+    appender.stop();
+
+    assertThat(sent, hasSize(2));
+    assertThat(sent.get(1).getFormattedMessage(), startsWith("failed (repeated 2 times in "));
+  }
+
+  @Test
+  public void testAggregation() {
+    assertThat(appender.getAggregationWindow(), is(nullValue()));
+    appender.setAggregationWindow(Duration.buildBySeconds(10));
+    assertThat(appender.getAggregationWindow().getMilliseconds(), is(10000L));
+    assertThat(appender.getAggregationMaxKeys(), is(1000));
+    appender.setAggregationMaxKeys(10);
+    assertThat(appender.getAggregationMaxKeys(), is(10));
+  }
+
+  @Test
+  public void testAppend_RateLimitPriority() {
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setRateLimit(2);
+    appender.setRateLimitPeriod(Duration.buildByMinutes(1));
+    appender.setRateLimitReservedRatio(0.5);
+    appender.start();
+
+    ILoggingEvent info = mock(ILoggingEvent.class);
+    when(info.getLevel()).thenReturn(Level.INFO);
+    ILoggingEvent error = mock(ILoggingEvent.class);
+    when(error.getLevel()).thenReturn(Level.ERROR);
+    appender.doAppend(info);
+    appender.doAppend(info);
+    appender.doAppend(error);
+    appender.doAppend(error);
+    appender.stop();
+
+    assertThat(messages, hasSize(2));
+    assertThat(messages.get(1), endsWith("<p><i>1 events were dropped by rate limiting</i></p>"));
+    assertThat(appender.getRateLimitedCount(), is(1L));
+  }
+
+  @Test
+  public void testAppend_RateLimitReportsShedEvents() throws InterruptedException {
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setRateLimit(1);
+    appender.setRateLimitPeriod(Duration.buildByMilliseconds(50));
+    appender.start();
+
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.getLevel()).thenReturn(Level.ERROR);
+    when(event.toString()).thenReturn("log message.");
+    appender.doAppend(event);
+    appender.doAppend(event);
+    appender.doAppend(event);
+    Thread.sleep(60);
+    appender.doAppend(event);
+    appender.stop();
+
+    final String ls = CoreConstants.LINE_SEPARATOR;
+    assertThat(messages, contains("log message." + ls, "log message." + ls + "<p><i>2 events were dropped by rate limiting</i></p>"));
+  }
+
+  @Test
+  public void testAppend_SamplingReportsSampledOutEvents() {
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    SamplingRule info = new SamplingRule();
+    info.setLevel(Level.INFO);
+    info.setRate(0.0);
+    appender.addSamplingRule(info);
+    SamplingRule noisy = new SamplingRule();
+    noisy.addLoggerPrefix("com.example.noisy");
+    noisy.setRate(0.0);
+    appender.addSamplingRule(noisy);
+    appender.start();
+
+    LoggerContext loggerContext = new LoggerContext();
+    for (int i = 0; i < 3; i++) {
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.INFO, "info", null, null));
+    }
+    appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.noisy.Bar"), Level.WARN, "warn", null, null));
+    assertThat(messages, hasSize(0));
+    appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.ERROR, "error", null, null));
+    appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.ERROR, "error", null, null));
+    appender.stop();
+
+    assertThat(messages, hasSize(2));
+    assertThat(messages.get(0), endsWith("<p><i>1 WARN, 3 INFO events were sampled out</i></p>"));
+    assertThat(messages.get(1), not(containsString("sampled out")));
+    assertThat(appender.getMetrics().getSampledCount(), is(4L));
+  }
+
+  @Test
+  public void testStart_InvalidSamplingRate() {
+    SamplingRule rule = new SamplingRule();
+    rule.setRate(1.5);
+    appender.addSamplingRule(rule);
+    appender.start();
+    assertThat(appender.isStarted(), is(false));
+  }
+
+  @Test
+  public void testRateLimit() {
+    assertThat(appender.getRateLimit(), is(0));
+    appender.setRateLimit(30);
+    assertThat(appender.getRateLimit(), is(30));
+    assertThat(appender.getRateLimitPeriod().getMilliseconds(), is(60000L));
+    appender.setRateLimitPeriod(Duration.buildBySeconds(1));
+    assertThat(appender.getRateLimitPeriod().getMilliseconds(), is(1000L));
+    assertThat(appender.getRateLimitBurst(), is(0));
+    appender.setRateLimitBurst(5);
+    assertThat(appender.getRateLimitBurst(), is(5));
+    assertThat(appender.getRateLimitReservedRatio(), is(0.2));
+    appender.setRateLimitReservedRatio(0.5);
+    assertThat(appender.getRateLimitReservedRatio(), is(0.5));
+    assertThat(appender.getRateLimitPriorityLevel(), is(Level.ERROR));
+    appender.setRateLimitPriorityLevel(Level.WARN);
+    assertThat(appender.getRateLimitPriorityLevel(), is(Level.WARN));
+  }
+
+  @Test
+  public void testAppend_RetryTransientFailure() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    StubIdobataServer server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        if (requests.incrementAndGet() == 1) {
+          StubIdobataServer.read(exchange.getRequestBody());
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          respond(exchange, 503, "Service Unavailable");
+          return;
+        }
+        super.handle(exchange);
+      }
+    };
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setMaxAttempts(3);
+      appender.setRetryInitialDelay(Duration.buildByMilliseconds(10));
+      appender.start();
+      final long start = System.currentTimeMillis();
+      appender.doAppend(event);
+      assertThat(System.currentTimeMillis() - start < 1000, is(true));
+      awaitSize(server.getBodies(), 1, 5000);
+      final long elapsed = System.currentTimeMillis() - start;
+      appender.stop();
+
+      assertThat(elapsed >= 1000, is(true));
+      assertThat(requests.get(), is(2));
+      assertThat(appender.getContext().getStatusManager().getCopyOfStatusList(), hasSize(0));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_RetryGivesUpAfterMaxAttempts() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.setStatus(500);
+    server.setResponseBody("Internal Server Error");
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setMaxAttempts(2);
+      appender.setRetryInitialDelay(Duration.buildByMilliseconds(10));
+      appender.start();
+      appender.doAppend(event);
+      awaitSize(server.getBodies(), 2, 5000);
+      appender.stop();
+
+      assertThat(server.getBodies(), hasSize(2));
+      List<Status> statusList = appender.getContext().getStatusManager().getCopyOfStatusList();
+      assertThat(statusList.get(statusList.size() - 1).getMessage(), is("Error posting log to Idobata:Internal Server Error"));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_CircuitBreaker() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.setStatus(500);
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setCircuitBreakerThreshold(2);
+      appender.setCircuitBreakerOpenTime(Duration.buildBySeconds(60));
+      appender.start();
+      for (int i = 0; i < 5; i++) {
+        appender.doAppend(event);
+      }
+      appender.stop();
+
+      assertThat(server.getBodies(), hasSize(2));
+      assertThat(appender.getCircuitOpenDroppedCount(), is(3L));
+      int dropErrors = 0;
+      for (Status status : appender.getContext().getStatusManager().getCopyOfStatusList()) {
+        if (status.getLevel() == Status.ERROR && status.getMessage().startsWith("Dropped log message")) {
+          dropErrors++;
+        }
+      }
+      assertThat(dropErrors, is(3));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_SpoolDeliversInOrder() throws Exception {
+    final String enc = "UTF-8";
+    final AtomicInteger requests = new AtomicInteger();
+    StubIdobataServer server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        if (requests.incrementAndGet() == 1) {
+          StubIdobataServer.read(exchange.getRequestBody());
+          respond(exchange, 503, "Service Unavailable");
+          return;
+        }
+        super.handle(exchange);
+      }
+    };
+    server.start();
+    try {
+      ILoggingEvent first = mock(ILoggingEvent.class);
+      when(first.toString()).thenReturn("first");
+      ILoggingEvent second = mock(ILoggingEvent.class);
+      when(second.toString()).thenReturn("second");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setSpoolDirectory(folder.getRoot().getPath());
+      appender.setRetryInitialDelay(Duration.buildByMilliseconds(10));
+      appender.start();
+      appender.doAppend(first);
+      appender.doAppend(second);
+      awaitSize(server.getBodies(), 2, 5000);
+      appender.stop();
+
+      assertThat(requests.get(), is(3));
+      assertThat(server.getBodies(), contains(
+          "format=html&source=" + URLEncoder.encode("first" + CoreConstants.LINE_SEPARATOR, enc),
+          "format=html&source=" + URLEncoder.encode("second" + CoreConstants.LINE_SEPARATOR, enc)));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_SpoolReplayedAfterRestart() throws Exception {
+    final String enc = "UTF-8";
+    StubIdobataServer unreachable = new StubIdobataServer();
+    unreachable.start();
+    final URL unreachableUrl = unreachable.getEndpointUrl();
+    unreachable.stop();
+
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.toString()).thenReturn("log message.");
+
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setEndpointUrl(unreachableUrl);
+    appender.setSpoolDirectory(folder.getRoot().getPath());
+    appender.setShutdownTimeout(Duration.buildByMilliseconds(200));
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    StubIdobataServer server = new StubIdobataServer();
+    server.start();
+    try {
+      IdobataAppender restarted = new IdobataAppender();
+      restarted.setContext(new ContextBase());
+      restarted.setEndpointUrl(server.getEndpointUrl());
+      restarted.setSpoolDirectory(folder.getRoot().getPath());
+      restarted.start();
+      awaitSize(server.getBodies(), 1, 5000);
+      restarted.stop();
+
+      assertThat(server.getBodies(), contains(
+          "format=html&source=" + URLEncoder.encode("log message." + CoreConstants.LINE_SEPARATOR, enc)));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testSpool() {
+    assertThat(appender.getSpoolDirectory(), is(nullValue()));
+    appender.setSpoolDirectory("spool");
+    assertThat(appender.getSpoolDirectory(), is("spool"));
+    assertThat(appender.getSpoolSegmentSize().getSize(), is(1024L * 1024));
+    appender.setSpoolSegmentSize(new FileSize(1024));
+    assertThat(appender.getSpoolSegmentSize().getSize(), is(1024L));
+    assertThat(appender.getSpoolMaxSize().getSize(), is(64L * 1024 * 1024));
+    appender.setSpoolMaxSize(new FileSize(4096));
+    assertThat(appender.getSpoolMaxSize().getSize(), is(4096L));
+    assertThat(appender.getSpoolEvictionPolicy(), is(SpoolEvictionPolicy.DROP_OLDEST));
+    appender.setSpoolEvictionPolicy(SpoolEvictionPolicy.DROP_NEWEST);
+    assertThat(appender.getSpoolEvictionPolicy(), is(SpoolEvictionPolicy.DROP_NEWEST));
+  }
+
+  @Test
+  public void testAppend_MaxPayloadBytes() throws Exception {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      message.append("message ");
+    }
+    ILoggingEvent event = new LoggingEvent("", new LoggerContext().getLogger("test"), Level.ERROR,
+        message.toString(), null, null);
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setMaxPayloadBytes(512);
+    ((IdobataLayout) appender.getLayout()).setOutputSystemProperties(false);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(messages, hasSize(1));
+    assertThat("format=html&source=".length() + FormEncoder.encodedLength(messages.get(0)) <= 512, is(true));
+    assertThat(messages.get(0), endsWith("...</b></p>"));
+  }
+
+  @Test
+  public void testAppend_MaxPayloadBytesLargeTemplate() throws Exception {
+    ILoggingEvent event = new LoggingEvent("", new LoggerContext().getLogger("test"), Level.ERROR, "message", null,
+        null);
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setMaxPayloadBytes(128);
+    IdobataLayout layout = new IdobataLayout();
+    layout.setTemplate("<p>" + new String(new char[500]).replace('\0', 'x') + " %message</p>");
+    appender.setLayout(layout);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(messages, hasSize(1));
+    assertThat("format=html&source=".length() + FormEncoder.encodedLength(messages.get(0)) <= 128, is(true));
+  }
+
+  @Test
+  public void testAppend_MaxPayloadBytesOtherLayout() {
+    ILoggingEvent event = mock(ILoggingEvent.class);
+    when(event.toString()).thenReturn("log message.");
+    final List<String> messages = new CopyOnWriteArrayList<String>();
+    appender = new IdobataAppender() {
+      @Override
+      protected void postMessage(String message, boolean html) {
+        messages.add(message);
+      }
+    };
+    appender.setContext(new ContextBase());
+    appender.setLayout(new EchoLayout<ILoggingEvent>());
+    appender.setHtml(false);
+    appender.setMaxPayloadBytes("source=".length() + 3);
+    appender.start();
+    appender.doAppend(event);
+    appender.stop();
+
+    assertThat(messages, contains("log"));
+  }
+
+  @Test
+  public void testAppend_Routes() throws Exception {
+    StubIdobataServer errors = new StubIdobataServer();
+    StubIdobataServer billing = new StubIdobataServer();
+    StubIdobataServer others = new StubIdobataServer();
+    errors.start();
+    billing.start();
+    others.start();
+    try {
+      LoggerContext loggerContext = new LoggerContext();
+      EchoLayout<ILoggingEvent> layout = spy(new EchoLayout<ILoggingEvent>());
+      appender.setLayout(layout);
+      appender.setHtml(false);
+      appender.setEndpointUrl(others.getEndpointUrl());
+      Route errorRoute = new Route();
+      errorRoute.setEndpointUrl(errors.getEndpointUrl());
+      errorRoute.setLevel(Level.ERROR);
+      appender.addRoute(errorRoute);
+      Route billingRoute = new Route();
+      billingRoute.setEndpointUrl(billing.getEndpointUrl());
+      billingRoute.addLoggerPrefix("com.example.billing");
+      appender.addRoute(billingRoute);
+      appender.start();
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.billing.Invoice"), Level.ERROR,
+          "fan out", null, null));
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.billing.Invoice"), Level.INFO,
+          "billing", null, null));
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.INFO,
+          "unmatched", null, null));
+      appender.stop();
+
+      assertThat(errors.getBodies(), hasSize(1));
+      assertThat(errors.getBodies().get(0), containsString("fan+out"));
+      assertThat(billing.getBodies(), hasSize(2));
+      assertThat(billing.getBodies().get(0), containsString("fan+out"));
+      assertThat(billing.getBodies().get(1), containsString("billing"));
+      assertThat(others.getBodies(), hasSize(1));
+      assertThat(others.getBodies().get(0), containsString("unmatched"));
+      verify(layout, times(3)).doLayout(any(ILoggingEvent.class));
+    } finally {
+      errors.stop();
+      billing.stop();
+      others.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_TooManyRequestsPausesOnlyThatRoute() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    StubIdobataServer throttled = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        StubIdobataServer.read(exchange.getRequestBody());
+        exchange.getResponseHeaders().set("Retry-After", "60");
+        respond(exchange, 429, "Too Many Requests");
+      }
+    };
+    StubIdobataServer other = new StubIdobataServer();
+    throttled.start();
+    other.start();
+    try {
+      LoggerContext loggerContext = new LoggerContext();
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setHtml(false);
+      appender.setRateLimit(10);
+      appender.setRateLimitPeriod(Duration.buildByMinutes(1));
+      Route throttledRoute = new Route();
+      throttledRoute.setEndpointUrl(throttled.getEndpointUrl());
+      appender.addRoute(throttledRoute);
+      Route otherRoute = new Route();
+      otherRoute.setEndpointUrl(other.getEndpointUrl());
+      appender.addRoute(otherRoute);
+      appender.start();
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.INFO,
+          "first", null, null));
+      final long deadline = System.currentTimeMillis() + 5000;
+      while (requests.get() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(100);
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.INFO,
+          "second", null, null));
+      appender.doAppend(new LoggingEvent("", loggerContext.getLogger("com.example.Foo"), Level.INFO,
+          "third", null, null));
+      awaitSize(other.getBodies(), 3, 5000);
+      appender.stop();
+
+      assertThat(requests.get(), is(1));
+      assertThat(other.getBodies(), hasSize(3));
+      assertThat(other.getBodies().get(2), containsString("third"));
+      assertThat(appender.getMetrics().getRateLimitedCount(), is(2L));
+    } finally {
+      throttled.stop();
+      other.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_SlowRouteDoesNotStallOthers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    StubIdobataServer slow = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.handle(exchange);
+      }
+    };
+    StubIdobataServer fast = new StubIdobataServer();
+    slow.start();
+    fast.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      Route slowRoute = new Route();
+      slowRoute.setEndpointUrl(slow.getEndpointUrl());
+      slowRoute.setMaxInFlight(2);
+      appender.addRoute(slowRoute);
+      Route fastRoute = new Route();
+      fastRoute.setEndpointUrl(fast.getEndpointUrl());
+      appender.addRoute(fastRoute);
+      appender.start();
+      for (int i = 0; i < 5; i++) {
+        appender.doAppend(event);
+      }
+      awaitSize(fast.getBodies(), 5, 5000);
+
+      assertThat(fast.getBodies(), hasSize(5));
+      assertThat(slow.getBodies(), hasSize(0));
+      release.countDown();
+      appender.stop();
+      assertThat(slow.getBodies(), hasSize(5));
+    } finally {
+      release.countDown();
+      slow.stop();
+      fast.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_VirtualThreads() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    StubIdobataServer routed = new StubIdobataServer();
+    server.start();
+    routed.start();
+    try {
+      LoggerContext loggerContext = new LoggerContext();
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setAsync(true);
+      appender.setSenderThreads(4);
+      appender.setVirtualThreads(true);
+      Route route = new Route();
+      route.setEndpointUrl(routed.getEndpointUrl());
+      route.setLevel(Level.ERROR);
+      route.setMaxInFlight(2);
+      appender.addRoute(route);
+      appender.start();
+      for (int i = 0; i < 10; i++) {
+        appender.doAppend(new LoggingEvent("", loggerContext.getLogger("test"), Level.INFO, "info", null, null));
+      }
+      for (int i = 0; i < 5; i++) {
+        appender.doAppend(new LoggingEvent("", loggerContext.getLogger("test"), Level.ERROR, "error", null, null));
+      }
+      appender.stop();
+
+      assertThat(server.getBodies(), hasSize(10));
+      assertThat(routed.getBodies(), hasSize(5));
+    } finally {
+      server.stop();
+      routed.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_RouteQueueFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    StubIdobataServer slow = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.handle(exchange);
+      }
+    };
+    slow.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      Route route = new Route();
+      route.setEndpointUrl(slow.getEndpointUrl());
+      route.setQueueSize(1);
+      appender.addRoute(route);
+      appender.start();
+      appender.doAppend(event);
+      Thread.sleep(200);
+      appender.doAppend(event);
+      appender.doAppend(event);
+      release.countDown();
+      appender.stop();
+
+      assertThat(slow.getBodies(), hasSize(2));
+      assertThat(appender.getMetrics().getQueueFullCount(), is(1L));
+    } finally {
+      release.countDown();
+      slow.stop();
+    }
+  }
+
+  @Test
+  public void testStop_FlushesQueueInParallel() throws Exception {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    StubIdobataServer server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        final int current = inFlight.incrementAndGet();
+        while (maxInFlight.get() < current) {
+          maxInFlight.compareAndSet(maxInFlight.get(), current);
+        }
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+        super.handle(exchange);
+      }
+    };
+    server.start();
+    try {
+      LoggerContext loggerContext = new LoggerContext();
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setAsync(true);
+      appender.setFlushThreads(4);
+      appender.start();
+      for (int i = 0; i < 8; i++) {
+        appender.doAppend(new LoggingEvent("", loggerContext.getLogger("test"), Level.ERROR, "error " + i, null, null));
+      }
+      while (inFlight.get() == 0) {
+        Thread.sleep(10);
+      }
+      appender.stop();
+
+      assertThat(server.getBodies(), hasSize(8));
+      assertThat(maxInFlight.get() > 1, is(true));
+      assertThat(appender.getFlushedCount(), is(7L));
+      assertThat(appender.getLostCount(), is(0L));
+      List<Status> statusList = appender.getContext().getStatusManager().getCopyOfStatusList();
+      assertThat(statusList.get(statusList.size() - 1).getMessage(), startsWith("Flushed 7 pending messages to Idobata in "));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStop_ReportsMessagesLostAtDeadline() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch received = new CountDownLatch(1);
+    StubIdobataServer server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        received.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.handle(exchange);
+      }
+    };
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setAsync(true);
+      appender.setShutdownTimeout(Duration.buildByMilliseconds(300));
+      appender.start();
+      for (int i = 0; i < 5; i++) {
+        appender.doAppend(event);
+      }
+      received.await();
+      final long start = System.currentTimeMillis();
+      appender.stop();
+
+      assertThat(System.currentTimeMillis() - start < 2000, is(true));
+      assertThat(appender.getFlushedCount(), is(0L));
+      assertThat(appender.getLostCount(), is(4L));
+      boolean reported = false;
+      for (Status status : appender.getContext().getStatusManager().getCopyOfStatusList()) {
+        reported |= status.getLevel() == Status.WARN && status.getMessage().startsWith("Flushed 0 of 4 pending messages")
+            && status.getMessage().endsWith(", 4 messages were lost");
+      }
+      assertThat(reported, is(true));
+    } finally {
+      release.countDown();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStop_ByShutdownHook() throws Exception {
+    appender.setEndpointUrl(new URL("https://idobata.io/hook/custom/token"));
+    appender.setShutdownHook(true);
+    appender.start();
+    final Thread hook = appender.getRegisteredShutdownHook();
+    assertThat(hook.getName(), is("IdobataAppender-null-shutdown"));
+
+    hook.run();
+
+    assertThat(appender.isStarted(), is(false));
+    assertThat(appender.getRegisteredShutdownHook(), is(nullValue()));
+    assertThat(Runtime.getRuntime().removeShutdownHook(hook), is(false));
+  }
+
+  @Test
+  public void testStart_RouteWithoutEndpointUrl() {
+    appender.addRoute(new Route());
+    appender.start();
+    assertThat(appender.isStarted(), is(false));
+  }
+
+  @Test
+  public void testAppend_Metrics() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+      MetricsListener listener = mock(MetricsListener.class);
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.addMetricsListener(listener);
+      appender.start();
+      appender.doAppend(event);
+      appender.doAppend(event);
+      appender.stop();
+
+      IdobataMetrics metrics = appender.getMetrics();
+      assertThat(metrics.getAppendedCount(), is(2L));
+      assertThat(metrics.getSentCount(), is(2L));
+      assertThat(metrics.getStatus2xxCount(), is(2L));
+      assertThat(metrics.getFailedCount(), is(0L));
+      assertThat(metrics.getBytesSent(), is((long) server.getBodies().get(0).length() * 2));
+      verify(listener, times(2)).onAppend();
+      verify(listener, times(2)).onPost(eq(200), anyLong());
+      verify(listener, times(2)).onSent(1, server.getBodies().get(0).length());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testAppend_MetricsOnFailure() throws Exception {
+    StubIdobataServer server = new StubIdobataServer();
+    server.setStatus(400);
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.start();
+      appender.doAppend(event);
+      appender.stop();
+
+      IdobataMetrics metrics = appender.getMetrics();
+      assertThat(metrics.getSentCount(), is(0L));
+      assertThat(metrics.getStatus4xxCount(), is(1L));
+      assertThat(metrics.getFailedCount(), is(1L));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStart_RegistersMBean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.github.fossamagna.logback.idobata:type=IdobataAppender,name=\"jmx-test\"");
+    appender.setName("jmx-test");
+    appender.setEndpointUrl(new URL("http://localhost/"));
+    appender.setJmxEnabled(true);
+    appender.start();
+    try {
+      assertThat(server.isRegistered(name), is(true));
+      assertThat(server.getAttribute(name, "AppendedCount"), is((Object) 0L));
+    } finally {
+      appender.stop();
+    }
+    assertThat(server.isRegistered(name), is(false));
+  }
+
+  @Test
+  public void testJmxEnabled() {
+    assertThat(appender.isJmxEnabled(), is(false));
+    appender.setJmxEnabled(true);
+    assertThat(appender.isJmxEnabled(), is(true));
+  }
+
+  @Test
+  public void testRetry() {
+    assertThat(appender.getMaxAttempts(), is(1));
+    appender.setMaxAttempts(5);
+    assertThat(appender.getMaxAttempts(), is(5));
+    assertThat(appender.getRetryInitialDelay().getMilliseconds(), is(1000L));
+    appender.setRetryInitialDelay(Duration.buildByMilliseconds(500));
+    assertThat(appender.getRetryInitialDelay().getMilliseconds(), is(500L));
+    assertThat(appender.getRetryMaxDelay().getMilliseconds(), is(60000L));
+    appender.setRetryMaxDelay(Duration.buildBySeconds(10));
+    assertThat(appender.getRetryMaxDelay().getMilliseconds(), is(10000L));
+    assertThat(appender.getRetryMaxAge().getMilliseconds(), is(300000L));
+    appender.setRetryMaxAge(Duration.buildByMinutes(1));
+    assertThat(appender.getRetryMaxAge().getMilliseconds(), is(60000L));
+    assertThat(appender.getMaxPendingRetries(), is(100));
+    appender.setMaxPendingRetries(10);
+    assertThat(appender.getMaxPendingRetries(), is(10));
+    assertThat(appender.getCircuitBreakerThreshold(), is(0));
+    appender.setCircuitBreakerThreshold(5);
+    assertThat(appender.getCircuitBreakerThreshold(), is(5));
+    assertThat(appender.getCircuitBreakerOpenTime().getMilliseconds(), is(30000L));
+    appender.setCircuitBreakerOpenTime(Duration.buildBySeconds(5));
+    assertThat(appender.getCircuitBreakerOpenTime().getMilliseconds(), is(5000L));
+  }
+
+  @Test
+  public void testBatch() {
+    assertThat(appender.getBatchSize(), is(1));
+    appender.setBatchSize(10);
+    assertThat(appender.getBatchSize(), is(10));
+    assertThat(appender.getBatchMaxBytes(), is(64 * 1024));
+    appender.setBatchMaxBytes(1024);
+    assertThat(appender.getBatchMaxBytes(), is(1024));
+    assertThat(appender.getLingerTime().getMilliseconds(), is(1000L));
+    appender.setLingerTime(Duration.buildByMilliseconds(200));
+    assertThat(appender.getLingerTime().getMilliseconds(), is(200L));
+  }
+
+  @Test
+  public void testAsync() {
+    assertThat(appender.isAsync(), is(false));
+    appender.setAsync(true);
+    assertThat(appender.isAsync(), is(true));
+    assertThat(appender.getQueueSize(), is(256));
+    appender.setQueueSize(16);
+    assertThat(appender.getQueueSize(), is(16));
+    assertThat(appender.getSenderThreads(), is(1));
+    appender.setSenderThreads(2);
+    assertThat(appender.getSenderThreads(), is(2));
+    assertThat(appender.getOverflowPolicy(), is(OverflowPolicy.BLOCK));
+    appender.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+    assertThat(appender.getOverflowPolicy(), is(OverflowPolicy.DROP_OLDEST));
+    assertThat(appender.getOverflowLevel(), is(Level.WARN));
+    appender.setOverflowLevel(Level.ERROR);
+    assertThat(appender.getOverflowLevel(), is(Level.ERROR));
+    assertThat(appender.getShutdownTimeout().getMilliseconds(), is(5000L));
+    appender.setShutdownTimeout(Duration.buildByMilliseconds(100));
+    assertThat(appender.getShutdownTimeout().getMilliseconds(), is(100L));
+    assertThat(appender.getFlushThreads(), is(1));
+    appender.setFlushThreads(4);
+    assertThat(appender.getFlushThreads(), is(4));
+    assertThat(appender.isShutdownHook(), is(false));
+    appender.setShutdownHook(true);
+    assertThat(appender.isShutdownHook(), is(true));
+  }
+
+  @Test
+  public void testStart_InvalidQueueSize() {
+    appender.setAsync(true);
+    appender.setQueueSize(0);
+    appender.start();
+    assertThat(appender.isStarted(), is(false));
+  }
+
+  @Test
+  public void testAppendILoggingEvent_PooledTransport() throws IOException {
+    final String enc = "UTF-8";
+    StubIdobataServer server = new StubIdobataServer();
+    server.start();
+    try {
+      ILoggingEvent event = mock(ILoggingEvent.class);
+      when(event.toString()).thenReturn("log message.");
+
+      appender.setLayout(new EchoLayout<ILoggingEvent>());
+      appender.setEndpointUrl(server.getEndpointUrl());
+      appender.setTransport(new PooledHttpTransport());
+      appender.start();
+      appender.doAppend(event);
+      appender.doAppend(event);
+      appender.stop();
+
+      final String expected = "format=html&source=" + URLEncoder.encode("log message." + CoreConstants.LINE_SEPARATOR, enc);
+      assertThat(server.getBodies(), contains(expected, expected));
+      assertThat(appender.getTransport().isStarted(), is(false));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testTransport() {
+    assertThat(appender.getTransport(), is(instanceOf(HttpURLConnectionTransport.class)));
+    appender.setTransport(new PooledHttpTransport());
+    assertThat(appender.getTransport(), is(instanceOf(PooledHttpTransport.class)));
+  }
+
   @Test
   public void testHtml() {
     assertThat(appender.isHtml(), is(true));
@@ -208,6 +1480,13 @@ public class IdobataAppenderTest {
     assertThat(appender.getLayout(), is(instanceOf(EchoLayout.class)));
   }
 
+  static void awaitSize(List<?> list, int size, long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (list.size() < size && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
   URL getEndpointURL(final HttpURLConnection connection) throws IOException {
     URLStreamHandler urlStreamHandler = new URLStreamHandler() {
       @Override
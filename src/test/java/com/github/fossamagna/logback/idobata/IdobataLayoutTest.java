@@ -1,17 +1,31 @@
 package com.github.fossamagna.logback.idobata;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -25,6 +39,7 @@ import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.util.Duration;
 
 /**
  * Test for {@link IdobataLayout}.
@@ -97,6 +112,121 @@ public class IdobataLayoutTest {
     verify(layout).getSystemProperties();
   }
 
+  @Test
+  public void testSystemPropertiesRefreshOnce() {
+    Properties properties = new Properties();
+    properties.setProperty("key-1", "value-1");
+    layout.setOutputSystemProperties(true);
+    layout.setSystemPropertiesRefreshPolicy(RefreshPolicy.ONCE);
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    StringBuilder first = new StringBuilder();
+    layout.systemProperties(first);
+    properties.setProperty("key-2", "value-2");
+    StringBuilder second = new StringBuilder();
+    layout.systemProperties(second);
+
+    assertThat(second.toString(), is(first.toString()));
+    verify(layout, times(1)).getSystemProperties();
+  }
+
+  @Test
+  public void testSystemPropertiesRefreshOnFingerprintChange() throws InterruptedException {
+    Properties properties = new Properties();
+    properties.setProperty("key-1", "value-1");
+    layout.setOutputSystemProperties(true);
+    layout.setSystemPropertiesCheckInterval(Duration.buildByMilliseconds(20));
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    StringBuilder first = new StringBuilder();
+    layout.systemProperties(first);
+    Thread.sleep(30);
+    StringBuilder second = new StringBuilder();
+    layout.systemProperties(second);
+    properties.setProperty("key-1", "value-2");
+    Thread.sleep(30);
+    StringBuilder third = new StringBuilder();
+    layout.systemProperties(third);
+
+    assertThat(second.toString(), is(first.toString()));
+    assertThat(third.toString(), containsString("<td>value-2</td>"));
+  }
+
+  @Test
+  public void testSystemPropertiesFingerprintCheckedOncePerInterval() {
+    final AtomicInteger hashes = new AtomicInteger();
+    Properties properties = new Properties() {
+      @Override
+      public synchronized int hashCode() {
+        hashes.incrementAndGet();
+        return super.hashCode();
+      }
+    };
+    properties.setProperty("key-1", "value-1");
+    layout.setOutputSystemProperties(true);
+    layout.setSystemPropertiesCheckInterval(Duration.buildByMinutes(1));
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    StringBuilder first = new StringBuilder();
+    layout.systemProperties(first);
+    properties.setProperty("key-1", "value-2");
+    StringBuilder second = new StringBuilder();
+    layout.systemProperties(second);
+    layout.systemProperties(new StringBuilder());
+
+    assertThat(second.toString(), is(first.toString()));
+    verify(layout, times(1)).getSystemProperties();
+    assertThat(hashes.get(), is(1));
+  }
+
+  @Test
+  public void testSystemPropertiesRefreshInterval() throws InterruptedException {
+    Properties properties = new Properties();
+    properties.setProperty("key-1", "value-1");
+    layout.setOutputSystemProperties(true);
+    layout.setSystemPropertiesRefreshPolicy(RefreshPolicy.INTERVAL);
+    layout.setSystemPropertiesRefreshInterval(Duration.buildByMilliseconds(20));
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    layout.systemProperties(new StringBuilder());
+    properties.setProperty("key-1", "value-2");
+    StringBuilder cached = new StringBuilder();
+    layout.systemProperties(cached);
+    Thread.sleep(30);
+    StringBuilder refreshed = new StringBuilder();
+    layout.systemProperties(refreshed);
+
+    assertThat(cached.toString(), containsString("<td>value-1</td>"));
+    assertThat(refreshed.toString(), containsString("<td>value-2</td>"));
+  }
+
+  @Test
+  public void testSystemPropertiesFilters() {
+    Properties properties = new Properties();
+    properties.setProperty("java.version", "1.8");
+    properties.setProperty("java.home", "/opt/java");
+    properties.setProperty("user.name", "alice");
+    layout.setOutputSystemProperties(true);
+    layout.addSystemPropertyInclude("java.*");
+    layout.addSystemPropertyExclude("java.home");
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    StringBuilder buffer = new StringBuilder();
+    layout.systemProperties(buffer);
+
+    final String expected = "<table style=\"table-layout: fixed; width: 100%;\"><caption>System Properties</caption><thead><tr><th>key</th><th>value</th></tr></thead><tbody><tr><td>java.version</td><td>1.8</td></tr></tbody></table>";
+    assertThat(buffer.toString(), is(expected));
+  }
+
+  @Test
+  public void testSystemPropertiesRefreshPolicy() {
+    assertThat(layout.getSystemPropertiesRefreshPolicy(), is(RefreshPolicy.FINGERPRINT));
+    layout.setSystemPropertiesRefreshPolicy(RefreshPolicy.ONCE);
+    assertThat(layout.getSystemPropertiesRefreshPolicy(), is(RefreshPolicy.ONCE));
+    assertThat(layout.getSystemPropertiesRefreshInterval().getMilliseconds(), is(60000L));
+    assertThat(layout.getSystemPropertiesCheckInterval().getMilliseconds(), is(1000L));
+  }
+
   @Test
   public void testDateFormat() {
     assertThat(layout.getDateFormat(), is(notNullValue()));
@@ -111,6 +241,60 @@ public class IdobataLayoutTest {
     assertThat(layout.toColor(Level.DEBUG), is("lightgrey"));
   }
 
+  @Test
+  public void testLevelLabelReflectsColors() {
+    layout.setColor(Level.WARN, "black");
+    layout.setBackgroundColor(Level.WARN, "yellow");
+    LoggingEvent event = new LoggingEvent("", logger, Level.WARN, "message", null, null);
+    StringBuilder buffer = new StringBuilder();
+    layout.level(event, buffer);
+    assertThat(buffer.toString(), is("<span class=\"label\" style=\"background-color: yellow; color: black;\">WARN</span>"));
+  }
+
+  @Test
+  public void testNamesCachedPerKind() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.INFO, "message", null, null);
+    event.setThreadName("<worker>");
+    String first = layout.doLayout(event);
+    assertThat(first, containsString("[&lt;worker&gt;] " + logger.getName()));
+    assertThat(layout.doLayout(event), is(first));
+    assertThat(layout.getThreadNames().size(), is(1));
+    assertThat(layout.getLoggerNames().size(), is(1));
+    assertThat(layout.threadName(event), is(sameInstance(layout.threadName(event))));
+  }
+
+  @Test
+  public void testDoLayoutConcurrently() throws Exception {
+    final int threads = 4;
+    final int events = 500;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    for (int t = 0; t < threads; t++) {
+      final long base = t * 86400000L * 365;
+      results.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          SimpleDateFormat expected = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+          expected.setTimeZone(TimeZone.getTimeZone("UTC"));
+          for (int i = 0; i < events; i++) {
+            long timestamp = base + i * 1001L;
+            LoggingEvent event = new LoggingEvent("", logger, Level.INFO, "message", null, null);
+            event.setTimeStamp(timestamp);
+            String result = layout.doLayout(event);
+            if (!result.startsWith("<p>" + expected.format(new Date(timestamp)) + " ")) {
+              return false;
+            }
+          }
+          return true;
+        }
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      assertThat(result.get(), is(true));
+    }
+    executor.shutdown();
+  }
+
   @Test
   public void testSetColorNullLevel() {
     thrown.expect(IllegalArgumentException.class);
@@ -131,10 +315,187 @@ public class IdobataLayoutTest {
     layout.setBackgroundColor(null, "lightgrey");
   }
 
+  @Test
+  public void testBatchHooks() {
+    assertThat(layout.getPresentationHeader(), is("<div>"));
+    assertThat(layout.getPresentationFooter(), is("</div>"));
+    assertThat(layout.getSeparator(), is("<hr>"));
+    layout.setSeparator("<br>");
+    assertThat(layout.getSeparator(), is("<br>"));
+  }
+
   @Test
   public void testOutputSystemProperties() {
     assertThat(layout.isOutputSystemProperties(), is(false));
     layout.setOutputSystemProperties(true);
     assertThat(layout.isOutputSystemProperties(), is(true));
   }
+
+  @Test
+  public void testStacktraceCompaction() {
+    RuntimeException e = new RuntimeException("Error");
+    e.setStackTrace(new StackTraceElement[] {
+        new StackTraceElement("Foo", "foo", "Foo.java", 1),
+        new StackTraceElement("sun.reflect.Bar", "bar", "Bar.java", 2),
+        new StackTraceElement("sun.reflect.Baz", "baz", "Baz.java", 3),
+        new StackTraceElement("Qux", "qux", "Qux.java", 4) });
+    LoggingEvent event = new LoggingEvent("", logger, Level.ERROR, "Log message", null, null);
+    event.setThrowableProxy(new ThrowableProxy(e));
+    layout.addStackTraceOmittedPackage("sun.reflect.");
+    layout.setStackTraceMaxDepth(3);
+    StringBuilder buffer = new StringBuilder();
+    layout.stacktrace(event, buffer);
+
+    final char tab = CoreConstants.TAB;
+    final String ls = CoreConstants.LINE_SEPARATOR;
+    final String expected = String.format("<pre lang=\"java\"><code>java.lang.RuntimeException: Error%s%sat Foo.foo(Foo.java:1)%s%s... 2 framework frames omitted%s%s... 1 frames truncated%s</code></pre>", ls, tab, ls, tab, ls, tab, ls);
+    assertThat(buffer.toString(), is(expected));
+  }
+
+  @Test
+  public void testStackTraceSettings() {
+    assertThat(layout.getStackTraceMaxDepth(), is(0));
+    layout.setStackTraceMaxDepth(20);
+    assertThat(layout.getStackTraceMaxDepth(), is(20));
+    assertThat(layout.getStackTraceMaxBytes(), is(0));
+    layout.setStackTraceMaxBytes(8192);
+    assertThat(layout.getStackTraceMaxBytes(), is(8192));
+    assertThat(layout.getStackTraceCacheSize(), is(256));
+    layout.setStackTraceCacheSize(0);
+    assertThat(layout.getStackTraceCacheSize(), is(0));
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_Fits() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.DEBUG, "Log message", null, null);
+    event.setTimeStamp(0);
+    assertThat(layout.doLayout(event, 100000), is(layout.doLayout(event)));
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_TruncatesMessage() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.DEBUG, repeat("message ", 100), null, null);
+    event.setTimeStamp(0);
+    LoggingEvent empty = new LoggingEvent("", logger, Level.DEBUG, "", null, null);
+    empty.setTimeStamp(0);
+    final String header = layout.doLayout(empty);
+    final int budget = FormEncoder.encodedLength(header) + 50;
+    String result = layout.doLayout(event, budget);
+
+    assertThat(FormEncoder.encodedLength(result) <= budget, is(true));
+    assertThat(result, startsWith(header.substring(0, header.indexOf("<b>")) + "<b>message message"));
+    assertThat(result, endsWith("...</b></p>"));
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_KeepsEntities() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.DEBUG, repeat("<>", 100), null, null);
+    event.setTimeStamp(0);
+    for (int extra = 10; extra < 40; extra++) {
+      String result = layout.doLayout(event, FormEncoder.encodedLength(layout.doLayout(
+          new LoggingEvent("", logger, Level.DEBUG, "", null, null))) + extra);
+      String text = result.substring(result.indexOf("<b>") + 3, result.indexOf("...</b>"));
+      assertThat(text, is(repeat("&lt;&gt;", text.length() / 8) + (text.length() % 8 == 0 ? "" : "&lt;")));
+    }
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_TruncatesStacktraceBetweenLines() {
+    RuntimeException e = new RuntimeException("Error");
+    StackTraceElement[] frames = new StackTraceElement[50];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = new StackTraceElement("Foo", "foo", "Foo.java", i);
+    }
+    e.setStackTrace(frames);
+    LoggingEvent event = new LoggingEvent("", logger, Level.ERROR, "Log message", e, null);
+    event.setTimeStamp(0);
+    String full = layout.doLayout(event);
+    String result = layout.doLayout(event, FormEncoder.encodedLength(full) / 2);
+
+    assertThat(FormEncoder.encodedLength(result) <= FormEncoder.encodedLength(full) / 2, is(true));
+    assertThat(result, containsString("<b>Log message</b>"));
+    assertThat(result, endsWith(")" + CoreConstants.LINE_SEPARATOR + "... stack trace truncated"
+        + CoreConstants.LINE_SEPARATOR + "</code></pre></p>"));
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_DropsLargeContextEntries() {
+    layout.addMdcKey("tenant");
+    layout.addMdcKey("payload");
+    layout.setContextStyle(ContextStyle.TABLE);
+    LoggingEvent event = new LoggingEvent("", logger, Level.INFO, "message", null, null);
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("tenant", "acme");
+    mdc.put("payload", new String(new char[5000]).replace('\0', '<'));
+    event.setMDCPropertyMap(mdc);
+    final int budget = 1000;
+    String result = layout.doLayout(event, budget);
+    assertThat(FormEncoder.encodedLength(result) <= budget, is(true));
+    assertThat(result, containsString("<b>message</b><table><tbody><tr><th>tenant</th><td>acme</td></tr></tbody></table>"));
+  }
+
+  @Test
+  public void testDoLayoutWithinBudget_DropsPropertyRows() {
+    Properties properties = new Properties();
+    properties.setProperty("key-1", "value-1");
+    properties.setProperty("key-2", "value-2");
+    layout.setOutputSystemProperties(true);
+    layout = spy(layout);
+    doReturn(properties).when(layout).getSystemProperties();
+    LoggingEvent event = new LoggingEvent("", logger, Level.DEBUG, "Log message", null, null);
+    event.setTimeStamp(0);
+    String full = layout.doLayout(event);
+    final int row = FormEncoder.encodedLength("<tr><td>key-2</td><td>value-2</td></tr>");
+
+    String oneRow = layout.doLayout(event, FormEncoder.encodedLength(full) - 1);
+    assertThat(oneRow, endsWith("<tbody><tr><td>key-1</td><td>value-1</td></tr></tbody></table></p>"));
+    assertThat(FormEncoder.encodedLength(oneRow), is(FormEncoder.encodedLength(full) - row));
+
+    String noTable = layout.doLayout(event, FormEncoder.encodedLength(full) - 2 * row);
+    assertThat(noTable, endsWith("<b>Log message</b></p>"));
+  }
+
+  @Test
+  public void testTemplate() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.WARN, "Log message", null, null);
+    event.setTimeStamp(0);
+    layout.setContext(context);
+    layout.setTemplate("<p>%level <i>%message</i> (%logger)</p>");
+    layout.start();
+
+    StringBuilder level = new StringBuilder();
+    layout.level(event, level);
+    assertThat(layout.doLayout(event), is("<p>" + level + " <i>Log message</i> (" + logger.getName() + ")</p>"));
+    assertThat(layout.getTemplate(), is("<p>%level <i>%message</i> (%logger)</p>"));
+  }
+
+  @Test
+  public void testInvalidTemplate() {
+    layout.setContext(context);
+    layout.setTemplate("%unknown");
+    layout.start();
+
+    assertThat(layout.isStarted(), is(false));
+    assertThat(context.getStatusManager().getCopyOfStatusList().get(0).getMessage(), is("Invalid template [%unknown]"));
+  }
+
+  @Test
+  public void testStartWithDefaultTemplate() {
+    LoggingEvent event = new LoggingEvent("", logger, Level.DEBUG, "Log message", null, null);
+    event.setTimeStamp(0);
+    final String before = layout.doLayout(event);
+    layout.setContext(context);
+    layout.start();
+
+    assertThat(layout.isStarted(), is(true));
+    assertThat(layout.doLayout(event), is(before));
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
 }
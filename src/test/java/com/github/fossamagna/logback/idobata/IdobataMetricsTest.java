@@ -0,0 +1,101 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link IdobataMetrics}.
+ */
+public class IdobataMetricsTest {
+
+  @Test
+  public void testCounters() {
+    IdobataMetrics metrics = new IdobataMetrics();
+    metrics.onAppend();
+    metrics.onAppend();
+    metrics.onDrop(DropReason.QUEUE_FULL, 1);
+    metrics.onDrop(DropReason.RATE_LIMITED, 1);
+    metrics.onDrop(DropReason.RATE_LIMITED, 1);
+    metrics.onDrop(DropReason.CIRCUIT_OPEN, 4);
+    metrics.onFailure(3);
+    metrics.onSent(5, 100);
+
+    assertThat(metrics.getAppendedCount(), is(2L));
+    assertThat(metrics.getDroppedCount(), is(7L));
+    assertThat(metrics.getQueueFullCount(), is(1L));
+    assertThat(metrics.getRateLimitedCount(), is(2L));
+    assertThat(metrics.getCircuitOpenDroppedCount(), is(4L));
+    assertThat(metrics.getSpoolFullCount(), is(0L));
+    assertThat(metrics.getSampledCount(), is(0L));
+    assertThat(metrics.getFailedCount(), is(3L));
+    assertThat(metrics.getSentCount(), is(5L));
+    assertThat(metrics.getBytesSent(), is(100L));
+  }
+
+  @Test
+  public void testStatusClasses() {
+    IdobataMetrics metrics = new IdobataMetrics();
+    metrics.onPost(200, 1000000);
+    metrics.onPost(204, 3000000);
+    metrics.onPost(302, 1000000);
+    metrics.onPost(404, 1000000);
+    metrics.onPost(503, 1000000);
+    metrics.onPost(-1, 1000000);
+
+    assertThat(metrics.getStatus2xxCount(), is(2L));
+    assertThat(metrics.getStatus3xxCount(), is(1L));
+    assertThat(metrics.getStatus4xxCount(), is(1L));
+    assertThat(metrics.getStatus5xxCount(), is(1L));
+    assertThat(metrics.getIoErrorCount(), is(1L));
+    assertThat(metrics.getPostLatencyMaxMillis(), is(3L));
+  }
+
+  @Test
+  public void testTimes() {
+    IdobataMetrics metrics = new IdobataMetrics();
+    metrics.onRender(2000);
+    metrics.onRender(4000);
+    metrics.onEncode(1000, 10);
+
+    assertThat(metrics.getRenderTimeMeanMicros(), is(3.0));
+    assertThat(metrics.getRenderTimeP99Micros(), is(4L));
+    assertThat(metrics.getEncodeTimeMeanMicros(), is(1.0));
+  }
+
+  @Test
+  public void testGauges() {
+    IdobataMetrics metrics = new IdobataMetrics();
+    assertThat(metrics.getQueueDepth(), is(0));
+    BoundedQueue<String> queue = new BoundedQueue<String>(4);
+    queue.offer("a");
+    metrics.setQueue(queue);
+    assertThat(metrics.getQueueDepth(), is(1));
+    assertThat(metrics.getSpoolSize(), is(0L));
+  }
+
+  @Test
+  public void testListeners() {
+    MetricsListener listener = mock(MetricsListener.class);
+    IdobataMetrics metrics = new IdobataMetrics();
+    metrics.addListener(listener);
+    metrics.onAppend();
+    metrics.onDrop(DropReason.SPOOL_FULL, 2);
+    metrics.onRender(1);
+    metrics.onEncode(2, 3);
+    metrics.onPost(200, 4);
+    metrics.onSent(1, 5);
+    metrics.onFailure(6);
+
+    verify(listener).onAppend();
+    verify(listener).onDrop(DropReason.SPOOL_FULL, 2);
+    verify(listener).onRender(1);
+    verify(listener).onEncode(2, 3);
+    verify(listener).onPost(200, 4);
+    verify(listener).onSent(1, 5);
+    verify(listener).onFailure(6);
+  }
+}
@@ -0,0 +1,142 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link LayoutTemplate}.
+ */
+public class LayoutTemplateTest {
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private IdobataLayout layout;
+
+  private LoggingEvent event;
+
+  @Before
+  public void setUp() {
+    layout = new IdobataLayout();
+    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    df.setTimeZone(TimeZone.getTimeZone("UTC"));
+    layout.setDateFormat(df);
+    layout.setOutputSystemProperties(false);
+    event = new LoggingEvent("", new LoggerContext().getLogger("com.example.Foo"), Level.INFO, "a < b", null, null);
+    event.setTimeStamp(0);
+  }
+
+  @Test
+  public void testPlaceholders() {
+    assertThat(render("%date|%thread|%logger|%message"),
+        is("1970-01-01T00:00:00.000+0000|" + Thread.currentThread().getName() + "|com.example.Foo|a &lt; b"));
+  }
+
+  @Test
+  public void testLiteralsAndPercent() {
+    assertThat(render("<i>100%% %message</i>"), is("<i>100% a &lt; b</i>"));
+    assertThat(render("no placeholders"), is("no placeholders"));
+    assertThat(render(""), is(""));
+  }
+
+  @Test
+  public void testMdc() {
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("user", "<alice>");
+    mdc.put("tenant", "acme");
+    event.setMDCPropertyMap(mdc);
+    assertThat(render("[%mdc{user}][%mdc{missing}]"), is("[&lt;alice&gt;][]"));
+    assertThat(render("%mdc"), is("tenant=acme, user=&lt;alice&gt;"));
+  }
+
+  @Test
+  public void testContext() {
+    event.setMDCPropertyMap(Collections.singletonMap("tenant", "acme"));
+    assertThat(render("[%context]"), is("[]"));
+    layout.addMdcKey("tenant");
+    layout.setContextStyle(ContextStyle.TABLE);
+    assertThat(render("[%context]"), is("[<table><tbody><tr><th>tenant</th><td>acme</td></tr></tbody></table>]"));
+  }
+
+  @Test
+  public void testStacktraceEmptyWithoutThrowable() {
+    assertThat(render("%message%stacktrace"), is("a &lt; b"));
+  }
+
+  @Test
+  public void testDefaultPattern() {
+    StringBuilder expected = new StringBuilder();
+    layout.doLayout(event, expected);
+    assertThat(render(LayoutTemplate.DEFAULT_PATTERN), is(expected.toString()));
+  }
+
+  @Test
+  public void testBudgetCutsMessageInPlace() {
+    LayoutTemplate template = LayoutTemplate.compile("%message [%logger]");
+    StringBuilder buffer = new StringBuilder();
+    final int budget = FormEncoder.encodedLength(" [com.example.Foo]") + FormEncoder.encodedLength("a ...");
+    template.append(layout, event, buffer, budget);
+    assertThat(buffer.toString(), is("a ... [com.example.Foo]"));
+  }
+
+  @Test
+  public void testBudgetCutsMdcBetweenEntries() {
+    Map<String, String> mdc = new HashMap<String, String>();
+    mdc.put("a", "1");
+    mdc.put("b", "2");
+    mdc.put("c", repeat('x', 1000));
+    event.setMDCPropertyMap(mdc);
+    LayoutTemplate template = LayoutTemplate.compile("[%logger] %mdc|%mdc{c}");
+    StringBuilder buffer = new StringBuilder();
+    final int budget = FormEncoder.encodedLength("[com.example.Foo] a=1, b=2|") + 10;
+    template.append(layout, event, buffer, budget);
+    assertThat(buffer.toString(), is("[com.example.Foo] a=1, b=2|"));
+    assertThat(FormEncoder.encodedLength(buffer) <= budget, is(true));
+  }
+
+  @Test
+  public void testUnknownPlaceholder() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Unknown placeholder %foo");
+    LayoutTemplate.compile("%foo");
+  }
+
+  @Test
+  public void testOptionNotAllowed() {
+    thrown.expect(IllegalArgumentException.class);
+    LayoutTemplate.compile("%message{x}");
+  }
+
+  @Test
+  public void testUnclosedOption() {
+    thrown.expect(IllegalArgumentException.class);
+    LayoutTemplate.compile("%mdc{user");
+  }
+
+  private String render(String pattern) {
+    StringBuilder buffer = new StringBuilder();
+    LayoutTemplate.compile(pattern).append(layout, event, buffer);
+    return buffer.toString();
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
@@ -0,0 +1,57 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link MessageBatcher}.
+ */
+public class MessageBatcherTest {
+
+  @Test
+  public void testAddUntilMaxCount() {
+    MessageBatcher batcher = new MessageBatcher(2, 0, 1000, 0, 0);
+    assertThat(batcher.add("a", 0), is(nullValue()));
+    assertThat(batcher.add("b", 0), contains("a", "b"));
+    assertThat(batcher.drain(), is(nullValue()));
+  }
+
+  @Test
+  public void testAddUntilMaxBytes() {
+    MessageBatcher batcher = new MessageBatcher(10, 4, 1000, 0, 0);
+    assertThat(batcher.add("abc", 0), is(nullValue()));
+    assertThat(batcher.add("de", 0), contains("abc"));
+    assertThat(batcher.add("fg", 0), contains("de", "fg"));
+  }
+
+  @Test
+  public void testAddUntilMaxEncodedBytes() {
+    // 5 bytes of overhead, each "<a>" encodes to 7 bytes and the separator " | " to 5
+    MessageBatcher batcher = new MessageBatcher(10, 25, 1000, 5, 5);
+    assertThat(batcher.add("<a>", 0), is(nullValue()));
+    assertThat(batcher.add("<a>", 0), is(nullValue()));
+    assertThat(batcher.add("<a>", 0), contains("<a>", "<a>"));
+    assertThat(batcher.drain(), contains("<a>"));
+  }
+
+  @Test
+  public void testDrainExpired() {
+    MessageBatcher batcher = new MessageBatcher(10, 0, 1000, 0, 0);
+    batcher.add("a", 100);
+    assertThat(batcher.drainExpired(1099), is(nullValue()));
+    assertThat(batcher.drainExpired(1100), contains("a"));
+    assertThat(batcher.drainExpired(5000), is(nullValue()));
+  }
+
+  @Test
+  public void testUtf8Length() {
+    assertThat(MessageBatcher.utf8Length("abc"), is(3L));
+    assertThat(MessageBatcher.utf8Length("\u00e9"), is(2L));
+    assertThat(MessageBatcher.utf8Length("\u3042"), is(3L));
+    assertThat(MessageBatcher.utf8Length("\ud83d\ude31"), is(4L));
+  }
+}
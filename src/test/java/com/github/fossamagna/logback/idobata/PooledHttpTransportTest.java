@@ -0,0 +1,265 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.util.Duration;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Test for {@link PooledHttpTransport}.
+ */
+public class PooledHttpTransportTest {
+
+  private StubIdobataServer server;
+
+  private PooledHttpTransport transport;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubIdobataServer();
+    server.start();
+    transport = new PooledHttpTransport();
+    transport.setContext(new ContextBase());
+  }
+
+  @After
+  public void tearDown() {
+    transport.stop();
+    server.stop();
+  }
+
+  @Test
+  public void testPostReusesConnection() throws IOException {
+    transport.start();
+    TransportResponse first = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+    TransportResponse second = transport.post(server.getEndpointUrl(), "source=2".getBytes("UTF-8"));
+
+    assertThat(first.getStatus(), is(200));
+    assertThat(second.getStatus(), is(200));
+    assertThat(server.getBodies(), contains("source=1", "source=2"));
+    assertThat(server.getRemotePorts(), hasSize(2));
+    assertThat(server.getRemotePorts().get(1), is(server.getRemotePorts().get(0)));
+  }
+
+  @Test
+  public void testPostChunkedErrorResponse() throws IOException {
+    server.setStatus(400);
+    server.setResponseBody("Bad Request");
+    server.setChunked(true);
+    transport.start();
+    TransportResponse response = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+
+    assertThat(response.getStatus(), is(400));
+    assertThat(response.isError(), is(true));
+    assertThat(response.getBody(), is("Bad Request"));
+    assertThat(response.getHeader("content-type"), is("text/plain; charset=UTF-8"));
+  }
+
+  @Test
+  public void testPostUnknownCharset() throws IOException {
+    server.stop();
+    server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        byte[] bytes = "caf\u00e9".getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=x-unknown");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+      }
+    };
+    server.start();
+    transport.start();
+    TransportResponse response = transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+
+    assertThat(response.getStatus(), is(200));
+    assertThat(response.getBody(), is("caf\u00e9"));
+  }
+
+  @Test
+  public void testPostNegativeContentLength() throws Exception {
+    assertInvalidResponse("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n");
+  }
+
+  @Test
+  public void testPostNegativeChunkSize() throws Exception {
+    assertInvalidResponse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-1\r\n");
+  }
+
+  @Test
+  public void testPostThroughProxy() throws IOException {
+    StubIdobataServer proxy = new StubIdobataServer();
+    proxy.start();
+    final String[] names = { "http.proxyHost", "http.proxyPort", "http.nonProxyHosts" };
+    final String[] saved = new String[names.length];
+    for (int i = 0; i < names.length; i++) {
+      saved[i] = System.getProperty(names[i]);
+    }
+    try {
+      System.setProperty("http.proxyHost", "127.0.0.1");
+      System.setProperty("http.proxyPort", String.valueOf(proxy.getEndpointUrl().getPort()));
+      System.setProperty("http.nonProxyHosts", "example.invalid");
+      transport.start();
+      // loopback addresses are never proxied, and this host only resolves through the proxy
+      URL url = new URL("http", "idobata.invalid", proxy.getEndpointUrl().getPath());
+      TransportResponse response = transport.post(url, "source=1".getBytes("UTF-8"));
+
+      assertThat(response.getStatus(), is(200));
+      assertThat(proxy.getBodies(), contains("source=1"));
+    } finally {
+      for (int i = 0; i < names.length; i++) {
+        if (saved[i] == null) {
+          System.clearProperty(names[i]);
+        } else {
+          System.setProperty(names[i], saved[i]);
+        }
+      }
+      proxy.stop();
+    }
+  }
+
+  @Test
+  public void testPostAfterKeepAliveExpired() throws Exception {
+    transport.setKeepAliveTime(Duration.buildByMilliseconds(1));
+    transport.start();
+    transport.post(server.getEndpointUrl(), "source=1".getBytes("UTF-8"));
+    Thread.sleep(10);
+    transport.post(server.getEndpointUrl(), "source=2".getBytes("UTF-8"));
+
+    assertThat(server.getBodies(), contains("source=1", "source=2"));
+    assertThat(server.getRemotePorts().get(1), is(not(server.getRemotePorts().get(0))));
+  }
+
+  @Test
+  public void testMaxInFlight() throws Exception {
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    server.stop();
+    server = new StubIdobataServer() {
+      @Override
+      void handle(HttpExchange exchange) throws IOException {
+        int current = concurrent.incrementAndGet();
+        synchronized (maxConcurrent) {
+          maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+        }
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          concurrent.decrementAndGet();
+        }
+        super.handle(exchange);
+      }
+    };
+    server.start();
+    transport.setMaxInFlight(2);
+    transport.start();
+
+    final URL url = server.getEndpointUrl();
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    List<Future<TransportResponse>> futures = new ArrayList<Future<TransportResponse>>();
+    for (int i = 0; i < 6; i++) {
+      futures.add(executor.submit(new Callable<TransportResponse>() {
+        @Override
+        public TransportResponse call() throws Exception {
+          return transport.post(url, "source=x".getBytes("UTF-8"));
+        }
+      }));
+    }
+    for (Future<TransportResponse> future : futures) {
+      assertThat(future.get().getStatus(), is(200));
+    }
+    executor.shutdown();
+
+    assertThat(server.getBodies(), hasSize(6));
+    assertThat(maxConcurrent.get() <= 2, is(true));
+  }
+
+  @Test(expected = IOException.class)
+  public void testPostNotStarted() throws IOException {
+    transport.post(server.getEndpointUrl(), new byte[0]);
+  }
+
+  @Test
+  public void testStartInvalidMaxInFlight() {
+    transport.setMaxInFlight(0);
+    transport.start();
+    assertThat(transport.isStarted(), is(false));
+  }
+
+  @Test
+  public void testKey() throws IOException {
+    assertThat(PooledHttpTransport.key(new URL("https://Idobata.io/hook/custom/a")), is("https://idobata.io:443"));
+    assertThat(PooledHttpTransport.key(new URL("http://localhost:8080/hook")), is("http://localhost:8080"));
+  }
+
+  /**
+   * Answers one request with the raw response and asserts that posting fails with an {@link IOException}.
+   */
+  private void assertInvalidResponse(final String response) throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Socket socket = serverSocket.accept();
+          try {
+            InputStream in = socket.getInputStream();
+            // the request ends with its body, whose last character is known
+            int c;
+            while ((c = in.read()) != -1 && c != 'x') {
+              continue;
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(response.getBytes("ISO-8859-1"));
+            out.flush();
+          } finally {
+            socket.close();
+          }
+        } catch (IOException e) {
+          // the test fails on the client side
+        }
+      }
+    });
+    thread.start();
+    try {
+      transport.start();
+      transport.post(new URL("http", "127.0.0.1", serverSocket.getLocalPort(), "/hook"),
+          "source=x".getBytes("UTF-8"));
+      fail("IOException expected");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      serverSocket.close();
+      thread.join(5000);
+    }
+  }
+}
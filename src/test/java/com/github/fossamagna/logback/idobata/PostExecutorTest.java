@@ -0,0 +1,115 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link PostExecutor}.
+ */
+public class PostExecutorTest {
+
+  @Test
+  public void testLimitsPostsInFlight() throws InterruptedException {
+    PostExecutor executor = new PostExecutor("test", 3, false);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(20);
+    for (int i = 0; i < 20; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          final int current = running.incrementAndGet();
+          int max;
+          while ((max = maxRunning.get()) < current && !maxRunning.compareAndSet(max, current)) {
+            continue;
+          }
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          running.decrementAndGet();
+          done.countDown();
+        }
+      });
+    }
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(maxRunning.get() <= 3, is(true));
+    assertThat(executor.shutdown(1000), is(true));
+  }
+
+  @Test
+  public void testPlatformThreads() throws InterruptedException {
+    PostExecutor executor = new PostExecutor("test-sender", 1, false);
+    final String[] name = new String[1];
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        name[0] = Thread.currentThread().getName();
+        done.countDown();
+      }
+    });
+    done.await(5, TimeUnit.SECONDS);
+    executor.shutdown(1000);
+
+    assertThat(executor.isVirtual(), is(false));
+    assertThat(name[0], is("test-sender-0"));
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    assumeTrue(PostExecutor.isVirtualThreadSupported());
+    PostExecutor executor = new PostExecutor("test-sender", 2, true);
+    final Object[] virtual = new Object[1];
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          virtual[0] = Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        } catch (Exception e) {
+          virtual[0] = e;
+        }
+        done.countDown();
+      }
+    });
+    done.await(5, TimeUnit.SECONDS);
+    executor.shutdown(1000);
+
+    assertThat(executor.isVirtual(), is(true));
+    assertThat(virtual[0], is((Object) Boolean.TRUE));
+  }
+
+  @Test
+  public void testFallsBackToPlatformThreads() {
+    PostExecutor executor = new PostExecutor("test-sender", 2, true);
+    assertThat(executor.isVirtual(), is(PostExecutor.isVirtualThreadSupported()));
+    executor.shutdown(1000);
+  }
+
+  @Test
+  public void testShutdownTimesOut() throws InterruptedException {
+    PostExecutor executor = new PostExecutor("test", 1, false);
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertThat(executor.shutdown(50), is(false));
+    release.countDown();
+  }
+}
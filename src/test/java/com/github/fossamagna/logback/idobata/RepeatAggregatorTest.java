@@ -0,0 +1,140 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link RepeatAggregator}.
+ */
+public class RepeatAggregatorTest {
+
+  private Logger logger;
+
+  @Before
+  public void setUp() {
+    logger = new LoggerContext().getLogger(RepeatAggregatorTest.class);
+  }
+
+  @Test
+  public void testAcceptSuppressesRepeats() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 100);
+    assertThat(aggregator.accept(event("failed {}", "a", null), 0), is(true));
+    assertThat(aggregator.accept(event("failed {}", "b", null), 100), is(false));
+    assertThat(aggregator.accept(event("failed {}", "c", null), 1500), is(true));
+    assertThat(aggregator.accept(event("other", null, null), 1500), is(true));
+  }
+
+  @Test
+  public void testThrowableIsPartOfKey() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 100);
+    Throwable[] failures = new Throwable[2];
+    for (int i = 0; i < failures.length; i++) {
+      failures[i] = new IllegalStateException("failure " + i);
+    }
+    assertThat(aggregator.accept(event("failed", null, failures[0]), 0), is(true));
+    assertThat(aggregator.accept(event("failed", null, new IllegalArgumentException()), 0), is(true));
+    assertThat(aggregator.accept(event("failed", null, failures[1]), 0), is(false));
+  }
+
+  @Test
+  public void testExpireReportsSummary() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 100);
+    aggregator.accept(event("failed {}", "a", null), 0);
+    aggregator.accept(event("failed {}", "b", null), 500);
+    aggregator.accept(event("failed {}", "c", null), 900);
+    aggregator.accept(event("once", null, null), 0);
+
+    assertThat(aggregator.expire(999), is(empty()));
+    List<ILoggingEvent> summaries = aggregator.expire(1000);
+    assertThat(summaries, hasSize(1));
+    assertThat(summaries.get(0).getFormattedMessage(), is("failed a (repeated 2 times in 0.9 seconds)"));
+    assertThat(summaries.get(0).getLevel(), is(Level.ERROR));
+    assertThat(summaries.get(0).getTimeStamp(), is(1000L));
+    assertThat(aggregator.size(), is(0));
+  }
+
+  @Test
+  public void testRepeatAfterWindowReportsSummary() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 100);
+    aggregator.accept(event("failed", null, null), 0);
+    aggregator.accept(event("failed", null, null), 500);
+    assertThat(aggregator.accept(event("failed", null, null), 1500), is(true));
+
+    List<ILoggingEvent> summaries = aggregator.expire(1600);
+    assertThat(summaries, hasSize(1));
+    assertThat(summaries.get(0).getFormattedMessage(), is("failed (repeated 1 times in 0.5 seconds)"));
+    assertThat(aggregator.size(), is(1));
+  }
+
+  @Test
+  public void testDrain() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 100);
+    aggregator.accept(event("failed", null, null), 0);
+    aggregator.accept(event("failed", null, null), 10);
+    assertThat(aggregator.drain(20), hasSize(1));
+    assertThat(aggregator.size(), is(0));
+  }
+
+  @Test
+  public void testMaxKeys() {
+    RepeatAggregator aggregator = new RepeatAggregator(1000, 1);
+    aggregator.accept(event("first", null, null), 0);
+    assertThat(aggregator.accept(event("second", null, null), 0), is(true));
+    assertThat(aggregator.accept(event("second", null, null), 0), is(true));
+    assertThat(aggregator.size(), is(1));
+  }
+
+  @Test
+  public void testConcurrentRepeatsAreCounted() throws Exception {
+    final RepeatAggregator aggregator = new RepeatAggregator(60000, 100);
+    final int threads = 4;
+    final int events = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < threads; t++) {
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int accepted = 0;
+          for (int i = 0; i < events; i++) {
+            if (aggregator.accept(event("failed", null, null), 0)) {
+              accepted++;
+            }
+          }
+          return accepted;
+        }
+      }));
+    }
+    int accepted = 0;
+    for (Future<Integer> result : results) {
+      accepted += result.get();
+    }
+    executor.shutdown();
+
+    assertThat(accepted, is(1));
+    List<ILoggingEvent> summaries = aggregator.drain(0);
+    assertThat(summaries.get(0).getFormattedMessage(), is("failed (repeated " + (threads * events - 1) + " times in 0.0 seconds)"));
+  }
+
+  private ILoggingEvent event(String message, Object argument, Throwable throwable) {
+    return new LoggingEvent("", logger, Level.ERROR, message, throwable, argument != null ? new Object[] { argument } : null);
+  }
+}
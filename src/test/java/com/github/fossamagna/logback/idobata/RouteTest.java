@@ -0,0 +1,82 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link Route}.
+ */
+public class RouteTest {
+
+  private final LoggerContext context = new LoggerContext();
+
+  @Test
+  public void testMatchesEverythingByDefault() {
+    Route route = new Route();
+    assertThat(route.matches(event("com.example.Foo", Level.TRACE)), is(true));
+  }
+
+  @Test
+  public void testLevel() {
+    Route route = new Route();
+    route.setLevel(Level.WARN);
+    assertThat(route.matches(event("com.example.Foo", Level.INFO)), is(false));
+    assertThat(route.matches(event("com.example.Foo", Level.WARN)), is(true));
+    assertThat(route.matches(event("com.example.Foo", Level.ERROR)), is(true));
+  }
+
+  @Test
+  public void testLoggerPrefix() {
+    Route route = new Route();
+    route.addLoggerPrefix("com.example.billing");
+    route.addLoggerPrefix("org.acme.");
+    assertThat(route.matches(event("com.example.billing", Level.INFO)), is(true));
+    assertThat(route.matches(event("com.example.billing.Invoice", Level.INFO)), is(true));
+    assertThat(route.matches(event("com.example.billingx.Invoice", Level.INFO)), is(false));
+    assertThat(route.matches(event("com.example.Foo", Level.INFO)), is(false));
+    assertThat(route.matches(event("org.acme.Bar", Level.INFO)), is(true));
+  }
+
+  @Test
+  public void testMdc() {
+    Route route = new Route();
+    route.setMdcKey("tenant");
+    assertThat(route.matches(event("com.example.Foo", Level.INFO)), is(false));
+    assertThat(route.matches(event("com.example.Foo", Level.INFO, "tenant", "a")), is(true));
+
+    route.setMdcValue("b");
+    assertThat(route.matches(event("com.example.Foo", Level.INFO, "tenant", "a")), is(false));
+    assertThat(route.matches(event("com.example.Foo", Level.INFO, "tenant", "b")), is(true));
+  }
+
+  @Test
+  public void testAllConditions() {
+    Route route = new Route();
+    route.setLevel(Level.ERROR);
+    route.addLoggerPrefix("com.example");
+    route.setMdcKey("tenant");
+    route.setMdcValue("a");
+    assertThat(route.matches(event("com.example.Foo", Level.ERROR, "tenant", "a")), is(true));
+    assertThat(route.matches(event("com.example.Foo", Level.WARN, "tenant", "a")), is(false));
+    assertThat(route.matches(event("org.acme.Foo", Level.ERROR, "tenant", "a")), is(false));
+    assertThat(route.matches(event("com.example.Foo", Level.ERROR, "tenant", "b")), is(false));
+  }
+
+  private LoggingEvent event(String loggerName, Level level) {
+    return new LoggingEvent("", context.getLogger(loggerName), level, "message", null, null);
+  }
+
+  private LoggingEvent event(String loggerName, Level level, String key, String value) {
+    LoggingEvent event = event(loggerName, level);
+    event.setMDCPropertyMap(Collections.singletonMap(key, value));
+    return event;
+  }
+}
@@ -0,0 +1,126 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Test for {@link Sampler}.
+ */
+public class SamplerTest {
+
+  private final LoggerContext context = new LoggerContext();
+
+  private final List<SamplingRule> rules = new ArrayList<SamplingRule>();
+
+  @Test
+  public void testUnmatchedEventsArePosted() {
+    rule(Level.INFO, 0.0);
+    Sampler sampler = new Sampler(rules, 16);
+    for (int i = 0; i < 100; i++) {
+      assertThat(sampler.sample(event("com.example.Foo", Level.WARN)), is(true));
+    }
+    assertThat(sampler.sample(event("com.example.Foo", Level.INFO)), is(false));
+  }
+
+  @Test
+  public void testLongestPrefixWins() {
+    rule(null, 0.0, "com.example");
+    rule(null, 1.0, "com.example.billing");
+    Sampler sampler = new Sampler(rules, 16);
+    assertThat(sampler.sample(event("com.example.Foo", Level.ERROR)), is(false));
+    assertThat(sampler.sample(event("com.example.billing.Invoice", Level.ERROR)), is(true));
+    assertThat(sampler.sample(event("org.acme.Bar", Level.ERROR)), is(true));
+  }
+
+  @Test
+  public void testRuleWithLevelWinsOverSamePrefix() {
+    rule(null, 0.0, "com.example");
+    rule(Level.ERROR, 1.0, "com.example");
+    Sampler sampler = new Sampler(rules, 16);
+    assertThat(sampler.sample(event("com.example.Foo", Level.WARN)), is(false));
+    assertThat(sampler.sample(event("com.example.Foo", Level.ERROR)), is(true));
+  }
+
+  @Test
+  public void testRate() {
+    rule(Level.INFO, 0.25);
+    Sampler sampler = new Sampler(rules, 16);
+    final LoggingEvent event = event("com.example.Foo", Level.INFO);
+    int posted = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (sampler.sample(event)) {
+        posted++;
+      }
+    }
+    assertThat(posted > 23000 && posted < 27000, is(true));
+    assertThat(sampler.takeSampledOutCounts()[2], is(100000L - posted));
+  }
+
+  @Test
+  public void testTakeSampledOutCounts() {
+    rule(Level.INFO, 0.0);
+    rule(Level.WARN, 0.0);
+    Sampler sampler = new Sampler(rules, 16);
+    sampler.sample(event("com.example.Foo", Level.INFO));
+    sampler.sample(event("com.example.Foo", Level.INFO));
+    sampler.sample(event("com.example.Foo", Level.WARN));
+    assertThat(Arrays.equals(sampler.takeSampledOutCounts(), new long[] { 0, 0, 2, 1, 0 }), is(true));
+    assertThat(Arrays.equals(sampler.takeSampledOutCounts(), new long[5]), is(true));
+  }
+
+  @Test
+  public void testCachedLoggersAreBounded() {
+    rule(Level.INFO, 0.0);
+    Sampler sampler = new Sampler(rules, 2);
+    sampler.sample(event("a", Level.INFO));
+    sampler.sample(event("a", Level.INFO));
+    assertThat(sampler.cachedLoggers(), is(1));
+    sampler.sample(event("b", Level.INFO));
+    sampler.sample(event("c", Level.INFO));
+    assertThat(sampler.cachedLoggers(), is(2));
+  }
+
+  @Test
+  public void testHotLoggerStaysCached() {
+    rule(Level.INFO, 0.0);
+    Sampler sampler = new Sampler(rules, 2);
+    for (int i = 0; i < 10; i++) {
+      sampler.sample(event("hot", Level.INFO));
+      sampler.sample(event("cold" + i, Level.INFO));
+    }
+    assertThat(sampler.cachedLoggers(), is(2));
+    assertThat(sampler.isCached("hot"), is(true));
+    assertThat(sampler.isCached("cold0"), is(false));
+  }
+
+  @Test
+  public void testThreshold() {
+    assertThat(Sampler.threshold(1.0), is(Long.MAX_VALUE));
+    assertThat(Sampler.threshold(0.0), is(0L));
+    assertThat(Sampler.threshold(0.5), is(1L << 62));
+  }
+
+  private void rule(Level level, double rate, String... loggerPrefixes) {
+    SamplingRule rule = new SamplingRule();
+    rule.setLevel(level);
+    rule.setRate(rate);
+    for (String loggerPrefix : loggerPrefixes) {
+      rule.addLoggerPrefix(loggerPrefix);
+    }
+    rules.add(rule);
+  }
+
+  private LoggingEvent event(String loggerName, Level level) {
+    return new LoggingEvent("", context.getLogger(loggerName), level, "message", null, null);
+  }
+}
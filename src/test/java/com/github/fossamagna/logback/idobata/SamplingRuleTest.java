@@ -0,0 +1,30 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link SamplingRule}.
+ */
+public class SamplingRuleTest {
+
+  @Test
+  public void testMatchLengthWithoutPrefix() {
+    SamplingRule rule = new SamplingRule();
+    assertThat(rule.matchLength("com.example.Foo"), is(0));
+    assertThat(rule.getRate(), is(1.0));
+  }
+
+  @Test
+  public void testMatchLengthOfLongestPrefix() {
+    SamplingRule rule = new SamplingRule();
+    rule.addLoggerPrefix("com.example");
+    rule.addLoggerPrefix("com.example.http");
+    assertThat(rule.matchLength("com.example.http.Client"), is("com.example.http".length()));
+    assertThat(rule.matchLength("com.example.Foo"), is("com.example".length()));
+    assertThat(rule.matchLength("com.examples.Foo"), is(-1));
+    assertThat(rule.matchLength("org.acme.Bar"), is(-1));
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.helpers.Transform;
+
+/**
+ * Test for {@link StackTraceCompactor}.
+ */
+public class StackTraceCompactorTest {
+
+  private static final String LS = CoreConstants.LINE_SEPARATOR;
+
+  private static final String TAB = "\t";
+
+  @Test
+  public void testDefaultMatchesThrowableProxyUtil() {
+    RuntimeException e = new RuntimeException("outer <b>", new IllegalStateException("inner"));
+    e.addSuppressed(new IllegalArgumentException("suppressed"));
+    ThrowableProxy tp = new ThrowableProxy(e);
+
+    assertThat(render(compactor(0, Collections.<String>emptyList(), 0, 16), tp),
+        is(Transform.escapeTags(ThrowableProxyUtil.asString(tp))));
+  }
+
+  @Test
+  public void testEscapesFrames() {
+    Throwable t = throwable("boom", frame("Foo", "<init>"));
+    String result = render(compactor(0, Collections.<String>emptyList(), 0, 16), new ThrowableProxy(t));
+    assertThat(result, is("java.lang.RuntimeException: boom" + LS + TAB + "at Foo.&lt;init&gt;(Foo.java:1)" + LS));
+  }
+
+  @Test
+  public void testMaxDepth() {
+    Throwable t = throwable("boom", frame("A", "a"), frame("B", "b"), frame("C", "c"));
+    String result = render(compactor(1, Collections.<String>emptyList(), 0, 16), new ThrowableProxy(t));
+    assertThat(result, is("java.lang.RuntimeException: boom" + LS
+        + TAB + "at A.a(A.java:1)" + LS
+        + TAB + "... 2 frames truncated" + LS));
+  }
+
+  @Test
+  public void testOmittedPackages() {
+    Throwable t = throwable("boom", frame("com.example.A", "a"),
+        frame("org.springframework.B", "b"), frame("sun.reflect.C", "c"),
+        frame("com.example.D", "d"), frame("sun.reflect.E", "e"));
+    String result = render(compactor(0, Arrays.asList("org.springframework.", "sun.reflect."), 0, 16),
+        new ThrowableProxy(t));
+    assertThat(result, is("java.lang.RuntimeException: boom" + LS
+        + TAB + "at com.example.A.a(A.java:1)" + LS
+        + TAB + "... 2 framework frames omitted" + LS
+        + TAB + "at com.example.D.d(D.java:1)" + LS
+        + TAB + "at sun.reflect.E.e(E.java:1)" + LS));
+  }
+
+  @Test
+  public void testCommonFramesOfCause() {
+    Throwable cause = throwable("inner", frame("A", "a"), frame("Main", "main"));
+    Throwable t = throwable("outer", frame("B", "b"), frame("Main", "main"));
+    t.initCause(cause);
+    String result = render(compactor(0, Collections.<String>emptyList(), 0, 16), new ThrowableProxy(t));
+    assertThat(result, is("java.lang.RuntimeException: outer" + LS
+        + TAB + "at B.b(B.java:1)" + LS
+        + TAB + "at Main.main(Main.java:1)" + LS
+        + "Caused by: java.lang.RuntimeException: inner" + LS
+        + TAB + "at A.a(A.java:1)" + LS
+        + TAB + "... 1 common frames omitted" + LS));
+  }
+
+  @Test
+  public void testMaxBytes() {
+    Throwable t = throwable("boom", frame("A", "a"), frame("B", "b"), frame("C", "c"));
+    final String header = "java.lang.RuntimeException: boom" + LS + TAB + "at A.a(A.java:1)" + LS;
+    String result = render(compactor(0, Collections.<String>emptyList(), header.length() + 1, 16),
+        new ThrowableProxy(t));
+    assertThat(result, is(header + "... stack trace truncated" + LS));
+    assertThat(result.length(), lessThanOrEqualTo(header.length() + 30));
+  }
+
+  @Test
+  public void testCacheRendersMessages() {
+    StackTraceCompactor compactor = compactor(0, Collections.<String>emptyList(), 0, 16);
+    String first = render(compactor, new ThrowableProxy(throwable("first", frame("A", "a"))));
+    String second = render(compactor, new ThrowableProxy(throwable("second", frame("A", "a"))));
+    assertThat(compactor.cacheSize(), is(1));
+    assertThat(first, containsString("first"));
+    assertThat(second, containsString("second"));
+    assertThat(second, not(containsString("first")));
+    assertThat(second, endsWith("at A.a(A.java:1)" + LS));
+  }
+
+  @Test
+  public void testCacheKeyedByRenderedFrames() {
+    StackTraceCompactor compactor = compactor(1, Collections.<String>emptyList(), 0, 16);
+    String first = render(compactor, new ThrowableProxy(throwable("boom", frame("A", "a"), frame("B", "b"))));
+    String second = render(compactor, new ThrowableProxy(throwable("boom", frame("A", "a"), frame("C", "c"))));
+    String third = render(compactor, new ThrowableProxy(throwable("boom", frame("A", "a"))));
+    assertThat(compactor.cacheSize(), is(2));
+    assertThat(second, is(first));
+    assertThat(third, is("java.lang.RuntimeException: boom" + LS + TAB + "at A.a(A.java:1)" + LS));
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    StackTraceCompactor compactor = compactor(0, Collections.<String>emptyList(), 0, 2);
+    for (int i = 0; i < 5; i++) {
+      render(compactor, new ThrowableProxy(throwable("boom", frame("A" + i, "a"))));
+    }
+    assertThat(compactor.cacheSize(), is(2));
+    assertThat(compactor(0, Collections.<String>emptyList(), 0, 0).cacheSize(), is(0));
+  }
+
+  private static StackTraceCompactor compactor(int maxDepth, List<String> omitted, int maxBytes, int cacheSize) {
+    return new StackTraceCompactor(maxDepth, omitted, maxBytes, cacheSize);
+  }
+
+  private static String render(StackTraceCompactor compactor, ThrowableProxy tp) {
+    StringBuilder buffer = new StringBuilder();
+    compactor.append(tp, buffer);
+    return buffer.toString();
+  }
+
+  private static Throwable throwable(String message, StackTraceElement... frames) {
+    RuntimeException e = new RuntimeException(message);
+    e.setStackTrace(frames);
+    return e;
+  }
+
+  private static StackTraceElement frame(String className, String methodName) {
+    String simpleName = className.substring(className.lastIndexOf('.') + 1);
+    return new StackTraceElement(className, methodName, simpleName + ".java", 1);
+  }
+}
@@ -0,0 +1,58 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link StripedCounter}.
+ */
+public class StripedCounterTest {
+
+  @Test
+  public void testAdd() {
+    StripedCounter counter = new StripedCounter();
+    assertThat(counter.sum(), is(0L));
+    counter.increment();
+    counter.add(41);
+    assertThat(counter.sum(), is(42L));
+  }
+
+  @Test
+  public void testConcurrentIncrement() throws InterruptedException {
+    final StripedCounter counter = new StripedCounter();
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < 10000; j++) {
+            counter.increment();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(counter.sum(), is(80000L));
+  }
+
+  @Test
+  public void testStripes() {
+    assertThat(StripedCounter.stripes(1), is(2));
+    assertThat(StripedCounter.stripes(3), is(8));
+    assertThat(StripedCounter.stripes(128), is(64));
+  }
+}
@@ -0,0 +1,375 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process server standing in for the Idobata webhook endpoint over HTTP/2.
+ *
+ * Connections asking for an h2c upgrade, as the java.net.http client does, are
+ * switched to HTTP/2, others are served as HTTP/1.1 with keep-alive. Only what a
+ * webhook post needs is implemented: request headers are not decoded, bodies are
+ * collected per stream, and each response is a bare status sent after
+ * {@code latencyMillis} so that concurrent streams overlap.
+ */
+class StubHttp2Server {
+
+  static final String PATH = "/hook/custom/token";
+
+  private static final byte[] PREFACE = ascii("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+  private static final int DATA = 0x0;
+
+  private static final int HEADERS = 0x1;
+
+  private static final int SETTINGS = 0x4;
+
+  private static final int PING = 0x6;
+
+  private static final int GOAWAY = 0x7;
+
+  private static final int WINDOW_UPDATE = 0x8;
+
+  private static final int END_STREAM = 0x1;
+
+  private static final int ACK = 0x1;
+
+  private static final int END_HEADERS = 0x4;
+
+  private static final int PADDED = 0x8;
+
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<byte[]>();
+
+  private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+  private final AtomicInteger streams = new AtomicInteger();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private final AtomicLong bytesReceived = new AtomicLong();
+
+  private volatile int status = 200;
+
+  private volatile long latencyMillis;
+
+  private ServerSocket serverSocket;
+
+  private ExecutorService executor;
+
+  void start() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    executor = Executors.newCachedThreadPool();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        while (!serverSocket.isClosed()) {
+          final Socket socket;
+          try {
+            socket = serverSocket.accept();
+          } catch (IOException e) {
+            return;
+          }
+          sockets.add(socket);
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                serve(socket);
+              } catch (IOException e) {
+                // connection closed by the client or the server stopping
+              } finally {
+                close(socket);
+              }
+            }
+          });
+        }
+      }
+    });
+  }
+
+  void stop() {
+    close(serverSocket);
+    for (Socket socket : sockets) {
+      close(socket);
+    }
+    executor.shutdownNow();
+  }
+
+  private void serve(Socket socket) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new CountingInputStream(socket.getInputStream())));
+    final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+    while (true) {
+      final Map<String, String> headers = new HashMap<String, String>();
+      if (readLine(in) == null) {
+        return;
+      }
+      String line;
+      while ((line = readLine(in)) != null && line.length() > 0) {
+        final int colon = line.indexOf(':');
+        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH), line.substring(colon + 1).trim());
+      }
+      final String contentLength = headers.get("content-length");
+      final byte[] body = new byte[contentLength != null ? Integer.parseInt(contentLength) : 0];
+      in.readFully(body);
+      if ("h2c".equalsIgnoreCase(headers.get("upgrade"))) {
+        out.write(ascii("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"));
+        writeFrame(out, SETTINGS, 0, 0, new byte[0]);
+        serveHttp2(in, out, body);
+        return;
+      }
+      bodies.add(body);
+      pause();
+      synchronized (out) {
+        out.write(ascii("HTTP/1.1 " + status + " Stub\r\nContent-Length: 0\r\n\r\n"));
+        out.flush();
+      }
+    }
+  }
+
+  private void serveHttp2(DataInputStream in, OutputStream out, byte[] upgradeBody) throws IOException {
+    final byte[] preface = new byte[PREFACE.length];
+    in.readFully(preface);
+    if (!Arrays.equals(preface, PREFACE)) {
+      throw new IOException("Invalid connection preface");
+    }
+    // the upgraded request is stream 1
+    onRequest(out, 1, upgradeBody);
+    final Map<Integer, ByteArrayOutputStream> requests = new HashMap<Integer, ByteArrayOutputStream>();
+    while (true) {
+      final int length;
+      try {
+        length = in.readUnsignedByte() << 16 | in.readUnsignedShort();
+      } catch (EOFException e) {
+        return;
+      }
+      final int type = in.readUnsignedByte();
+      final int flags = in.readUnsignedByte();
+      final int streamId = in.readInt() & 0x7fffffff;
+      final byte[] payload = new byte[length];
+      in.readFully(payload);
+      switch (type) {
+      case SETTINGS:
+        if ((flags & ACK) == 0) {
+          writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+        }
+        break;
+      case PING:
+        if ((flags & ACK) == 0) {
+          writeFrame(out, PING, ACK, 0, payload);
+        }
+        break;
+      case HEADERS:
+        requests.put(streamId, new ByteArrayOutputStream());
+        if ((flags & END_STREAM) != 0) {
+          onRequest(out, streamId, requests.remove(streamId).toByteArray());
+        }
+        break;
+      case DATA:
+        final int padding = (flags & PADDED) != 0 ? payload[0] & 0xff : 0;
+        final int offset = (flags & PADDED) != 0 ? 1 : 0;
+        requests.get(streamId).write(payload, offset, length - offset - padding);
+        if (length > 0) {
+          writeWindowUpdate(out, 0, length);
+        }
+        if ((flags & END_STREAM) != 0) {
+          onRequest(out, streamId, requests.remove(streamId).toByteArray());
+        } else if (length > 0) {
+          writeWindowUpdate(out, streamId, length);
+        }
+        break;
+      case GOAWAY:
+        return;
+      default:
+        // WINDOW_UPDATE, PRIORITY, RST_STREAM and CONTINUATION need no answer from a stub
+        break;
+      }
+    }
+  }
+
+  private void onRequest(final OutputStream out, final int streamId, byte[] body) {
+    bodies.add(body);
+    streams.incrementAndGet();
+    final int current = inFlight.incrementAndGet();
+    while (maxInFlight.get() < current) {
+      maxInFlight.compareAndSet(maxInFlight.get(), current);
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          pause();
+          inFlight.decrementAndGet();
+          // :status as a literal header field without indexing, name index 8 of the static table
+          final byte[] code = ascii(String.valueOf(status));
+          final byte[] block = new byte[2 + code.length];
+          block[0] = 0x08;
+          block[1] = (byte) code.length;
+          System.arraycopy(code, 0, block, 2, code.length);
+          writeFrame(out, HEADERS, END_HEADERS | END_STREAM, streamId, block);
+        } catch (IOException e) {
+          // connection closed
+        }
+      }
+    });
+  }
+
+  private void pause() throws IOException {
+    try {
+      Thread.sleep(latencyMillis);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static void writeWindowUpdate(OutputStream out, int streamId, int increment) throws IOException {
+    writeFrame(out, WINDOW_UPDATE, 0, streamId,
+        new byte[] { (byte) (increment >>> 24), (byte) (increment >>> 16), (byte) (increment >>> 8), (byte) increment });
+  }
+
+  private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload)
+      throws IOException {
+    synchronized (out) {
+      out.write(payload.length >>> 16);
+      out.write(payload.length >>> 8);
+      out.write(payload.length);
+      out.write(type);
+      out.write(flags);
+      out.write(streamId >>> 24);
+      out.write(streamId >>> 16);
+      out.write(streamId >>> 8);
+      out.write(streamId);
+      out.write(payload);
+      out.flush();
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') {
+        final int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+          line.setLength(length - 1);
+        }
+        return line.toString();
+      }
+      line.append((char) c);
+    }
+    return null;
+  }
+
+  private static byte[] ascii(String s) {
+    try {
+      return s.getBytes("ISO-8859-1");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void close(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  private static void close(ServerSocket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  URL getEndpointUrl() throws IOException {
+    return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), PATH);
+  }
+
+  /**
+   * @return the request bodies as received, compressed ones included
+   */
+  List<byte[]> getBodies() {
+    return bodies;
+  }
+
+  int getConnectionCount() {
+    return sockets.size();
+  }
+
+  /**
+   * @return the number of requests received over HTTP/2
+   */
+  int getStreamCount() {
+    return streams.get();
+  }
+
+  int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  /**
+   * @return the number of bytes read from the connections, headers and framing included
+   */
+  long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  void setStatus(int status) {
+    this.status = status;
+  }
+
+  void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  private final class CountingInputStream extends FilterInputStream {
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int c = super.read();
+      if (c != -1) {
+        bytesReceived.incrementAndGet();
+      }
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int count = super.read(b, off, len);
+      if (count > 0) {
+        bytesReceived.addAndGet(count);
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.github.fossamagna.logback.idobata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server standing in for the Idobata webhook endpoint.
+ */
+class StubIdobataServer {
+
+  static final String PATH = "/hook/custom/token";
+
+  private final List<String> bodies = new CopyOnWriteArrayList<String>();
+
+  private final List<Integer> remotePorts = new CopyOnWriteArrayList<Integer>();
+
+  private volatile int status = 200;
+
+  private volatile String responseBody = "";
+
+  private volatile boolean chunked;
+
+  private HttpServer server;
+
+  private ExecutorService executor;
+
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          StubIdobataServer.this.handle(exchange);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Handles one request, subclasses may override to inject latency or failures.
+   */
+  void handle(HttpExchange exchange) throws IOException {
+    bodies.add(read(exchange.getRequestBody()));
+    remotePorts.add(exchange.getRemoteAddress().getPort());
+    respond(exchange, status, responseBody);
+  }
+
+  void respond(HttpExchange exchange, int status, String responseBody) throws IOException {
+    byte[] bytes = responseBody.getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+    exchange.sendResponseHeaders(status, chunked ? 0 : bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+  }
+
+  URL getEndpointUrl() throws IOException {
+    return new URL("http", "127.0.0.1", server.getAddress().getPort(), PATH);
+  }
+
+  List<String> getBodies() {
+    return bodies;
+  }
+
+  List<Integer> getRemotePorts() {
+    return remotePorts;
+  }
+
+  void setStatus(int status) {
+    this.status = status;
+  }
+
+  void setResponseBody(String responseBody) {
+    this.responseBody = responseBody;
+  }
+
+  void setChunked(boolean chunked) {
+    this.chunked = chunked;
+  }
+
+  static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      body.write(buffer, 0, count);
+    }
+    return body.toString("UTF-8");
+  }
+}
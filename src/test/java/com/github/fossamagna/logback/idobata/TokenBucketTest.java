@@ -0,0 +1,71 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Test for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testBurstAndRefill() {
+    TokenBucket bucket = new TokenBucket(10, 1000, 3, 0, 0);
+    assertThat(bucket.tryAcquire(false, 0), is(true));
+    assertThat(bucket.tryAcquire(false, 0), is(true));
+    assertThat(bucket.tryAcquire(false, 0), is(true));
+    assertThat(bucket.tryAcquire(false, 0), is(false));
+    assertThat(bucket.tryAcquire(false, 99), is(false));
+    assertThat(bucket.tryAcquire(false, 100), is(true));
+    assertThat(bucket.tryAcquire(false, 100), is(false));
+  }
+
+  @Test
+  public void testReservedForPriority() {
+    TokenBucket bucket = new TokenBucket(10, 1000, 3, 1, 0);
+    assertThat(bucket.tryAcquire(false, 0), is(true));
+    assertThat(bucket.tryAcquire(false, 0), is(true));
+    assertThat(bucket.tryAcquire(false, 0), is(false));
+    assertThat(bucket.tryAcquire(true, 0), is(true));
+    assertThat(bucket.tryAcquire(true, 0), is(false));
+  }
+
+  @Test
+  public void testPauseUntil() {
+    TokenBucket bucket = new TokenBucket(10, 1000, 3, 0, 0);
+    bucket.pauseUntil(5000);
+    assertThat(bucket.tryAcquire(true, 0), is(false));
+    assertThat(bucket.tryAcquire(false, 2000), is(false));
+    assertThat(bucket.tryAcquire(true, 4800), is(false));
+    assertThat(bucket.tryAcquire(true, 4999), is(false));
+    assertThat(bucket.tryAcquire(true, 5000), is(true));
+    assertThat(bucket.tryAcquire(true, 5000), is(false));
+    assertThat(bucket.tryAcquire(false, 5100), is(true));
+  }
+
+  @Test
+  public void testPauseShorterThanBurst() {
+    // 60 permits a minute with a full burst reserved in part for priority requests
+    final long second = 1000000000L;
+    TokenBucket bucket = new TokenBucket(60, 60 * second, 60, 12, 0);
+    bucket.pauseUntil(30 * second);
+    for (long now = second; now < 30 * second; now += second) {
+      assertThat(bucket.tryAcquire(false, now), is(false));
+      assertThat(bucket.tryAcquire(true, now), is(false));
+    }
+    assertThat(bucket.tryAcquire(true, 30 * second), is(true));
+  }
+
+  @Test
+  public void testInvalidPermits() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Permits, period and burst must be positive.");
+    new TokenBucket(0, 1000, 1, 0, 0);
+  }
+}
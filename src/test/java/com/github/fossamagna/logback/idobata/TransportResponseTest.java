@@ -0,0 +1,47 @@
+package com.github.fossamagna.logback.idobata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TransportResponse}.
+ */
+public class TransportResponseTest {
+
+  @Test
+  public void testHeaderIsCaseInsensitive() {
+    TransportResponse response = new TransportResponse(200, "", Collections.singletonMap("Retry-After", "1"));
+    assertThat(response.getHeader("retry-after"), is("1"));
+    assertThat(response.getHeader("Content-Type"), is(nullValue()));
+  }
+
+  @Test
+  public void testIsError() {
+    assertThat(new TransportResponse(399, "").isError(), is(false));
+    assertThat(new TransportResponse(400, "").isError(), is(true));
+  }
+
+  @Test
+  public void testRetryAfterSeconds() {
+    TransportResponse response = new TransportResponse(429, "", Collections.singletonMap("Retry-After", "120"));
+    assertThat(response.getRetryAfterMillis(0), is(120000L));
+  }
+
+  @Test
+  public void testRetryAfterHttpDate() {
+    TransportResponse response = new TransportResponse(503, "", Collections.singletonMap("Retry-After", "Thu, 01 Jan 1970 00:00:30 GMT"));
+    assertThat(response.getRetryAfterMillis(10000), is(20000L));
+  }
+
+  @Test
+  public void testRetryAfterAbsentOrInvalid() {
+    assertThat(new TransportResponse(429, "").getRetryAfterMillis(0), is(-1L));
+    TransportResponse response = new TransportResponse(429, "", Collections.singletonMap("Retry-After", "soon"));
+    assertThat(response.getRetryAfterMillis(0), is(-1L));
+  }
+}